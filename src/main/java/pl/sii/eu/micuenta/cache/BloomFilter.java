@@ -0,0 +1,113 @@
+package pl.sii.eu.micuenta.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free Bloom filter over strings. {@link #mightContain(String)} never answers false for a string
+ * that was put, strings can not be removed.
+ */
+public class BloomFilter {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashFunctions;
+
+    private final LongAdder definiteMisses = new LongAdder();
+    private final LongAdder possibleHits = new LongAdder();
+
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Expected insertions must be positive and false positive rate between 0 and 1.");
+        }
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int wordCount = Math.toIntExact((Math.max(bits, Long.SIZE) + Long.SIZE - 1) / Long.SIZE);
+        this.words = new AtomicLongArray(wordCount);
+        this.bitCount = (long) wordCount * Long.SIZE;
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+    }
+
+    public void put(String value) {
+        long hash1 = hash(value);
+        long hash2 = mix(hash1 ^ FNV_PRIME) | 1;
+        for (int i = 0; i < hashFunctions; i++) {
+            setBit(Math.floorMod(hash1 + i * hash2, bitCount));
+        }
+    }
+
+    public boolean mightContain(String value) {
+        long hash1 = hash(value);
+        long hash2 = mix(hash1 ^ FNV_PRIME) | 1;
+        for (int i = 0; i < hashFunctions; i++) {
+            if (!isBitSet(Math.floorMod(hash1 + i * hash2, bitCount))) {
+                definiteMisses.increment();
+                return false;
+            }
+        }
+        possibleHits.increment();
+        return true;
+    }
+
+    /**
+     * False positive rate expected for the current fill of the filter.
+     */
+    public double getExpectedFalsePositiveRate() {
+        double setBitsRatio = (double) getSetBitCount() / bitCount;
+        return Math.pow(setBitsRatio, hashFunctions);
+    }
+
+    public long getApproximateSize() {
+        long setBits = getSetBitCount();
+        if (setBits == bitCount) {
+            return Long.MAX_VALUE;
+        }
+        return Math.round(-(double) bitCount / hashFunctions * Math.log(1 - (double) setBits / bitCount));
+    }
+
+    public MembershipFilterStats getStats() {
+        return new MembershipFilterStats(getApproximateSize(), bitCount, hashFunctions, words.length() * (long) Long.BYTES,
+                getExpectedFalsePositiveRate(), definiteMisses.sum(), possibleHits.sum());
+    }
+
+    private long getSetBitCount() {
+        long setBits = 0;
+        for (int i = 0; i < words.length(); i++) {
+            setBits += Long.bitCount(words.get(i));
+        }
+        return setBits;
+    }
+
+    private void setBit(long bit) {
+        int word = (int) (bit >>> 6);
+        long mask = 1L << bit;
+        long current = words.get(word);
+        while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+            current = words.get(word);
+        }
+    }
+
+    private boolean isBitSet(long bit) {
+        return (words.get((int) (bit >>> 6)) & (1L << bit)) != 0;
+    }
+
+    private static long hash(String value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,133 @@
+package pl.sii.eu.micuenta.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Size bounded LRU cache whose entries also expire after a fixed time to live.
+ * All operations lock the whole cache, entries are expected to be cheap to hand out.
+ */
+public class BoundedTtlCache<K, V> {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LongSupplier nanoClock;
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private long invalidationStamp;
+
+    public BoundedTtlCache(int maxSize, long ttlMillis) {
+        this(maxSize, ttlMillis, System::nanoTime);
+    }
+
+    BoundedTtlCache(int maxSize, long ttlMillis, LongSupplier nanoClock) {
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.nanoClock = nanoClock;
+    }
+
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.isExpired(nanoClock.getAsLong())) {
+            entries.remove(key);
+            evictions.increment();
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * Hands out the value and drops it, so it is handed out at most once.
+     */
+    public synchronized V remove(K key) {
+        V value = get(key);
+        entries.remove(key);
+        return value;
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, new Entry<>(value, nanoClock.getAsLong() + ttlNanos));
+        evictExpiredAndOverflow();
+    }
+
+    /**
+     * Stamp to take before loading a value, see {@link #putIfNotInvalidatedSince(Object, Object, long)}.
+     */
+    public synchronized long getInvalidationStamp() {
+        return invalidationStamp;
+    }
+
+    /**
+     * Puts a value loaded after taking the stamp, unless any invalidation happened meanwhile,
+     * so a slow loader can not bring back state that was already invalidated.
+     */
+    public synchronized boolean putIfNotInvalidatedSince(K key, V value, long stamp) {
+        if (stamp != invalidationStamp) {
+            return false;
+        }
+        put(key, value);
+        return true;
+    }
+
+    public synchronized void invalidate(K key) {
+        invalidationStamp++;
+        if (entries.remove(key) != null) {
+            invalidations.increment();
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        invalidationStamp++;
+        invalidations.add(entries.size());
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public CacheStats getStats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), invalidations.sum(), size());
+    }
+
+    private void evictExpiredAndOverflow() {
+        long now = nanoClock.getAsLong();
+        Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<K, Entry<V>> eldest = iterator.next();
+            if (entries.size() <= maxSize && !eldest.getValue().isExpired(now)) {
+                break;
+            }
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        private Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+}
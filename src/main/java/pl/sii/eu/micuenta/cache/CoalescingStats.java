@@ -0,0 +1,31 @@
+package pl.sii.eu.micuenta.cache;
+
+public class CoalescingStats {
+
+    private final long executions;
+    private final long coalesced;
+    private final int inFlight;
+
+    public CoalescingStats(long executions, long coalesced, int inFlight) {
+        this.executions = executions;
+        this.coalesced = coalesced;
+        this.inFlight = inFlight;
+    }
+
+    public long getExecutions() {
+        return executions;
+    }
+
+    public long getCoalesced() {
+        return coalesced;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public double getCoalescedRatio() {
+        long calls = executions + coalesced;
+        return calls == 0 ? 0.0 : (double) coalesced / calls;
+    }
+}
@@ -0,0 +1,248 @@
+package pl.sii.eu.micuenta.cache;
+
+import pl.sii.eu.micuenta.model.model_dto.CreditCard;
+import pl.sii.eu.micuenta.model.model_dto.Debt;
+import pl.sii.eu.micuenta.model.model_dto.Debtor;
+import pl.sii.eu.micuenta.model.model_dto.Payment;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Compact binary form of a debtor aggregate: amounts as long cents, dates as epoch days,
+ * creditor names and card networks as ids of a dictionary shared by all encoded aggregates.
+ * Card numbers are kept masked down to their last four digits and CVV codes are not kept at all.
+ * Amounts with more than two decimal places can not be encoded and fail with {@link ArithmeticException}.
+ */
+public class DebtorAggregateCodec {
+
+    static final int MAX_DICTIONARY_SIZE = 1 << 16;
+
+    private static final int NULL_LENGTH = -1;
+    private static final int INLINE_STRING = -1;
+    private static final long NULL_LONG = Long.MIN_VALUE;
+    private static final int NULL_DATE = Integer.MIN_VALUE;
+
+    private volatile Dictionary dictionary = new Dictionary(0);
+
+    public byte[] encode(Debtor debtor) {
+        Dictionary dictionary = this.dictionary;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeLong(out, debtor.getId());
+            writeString(out, debtor.getFirstName());
+            writeString(out, debtor.getLastName());
+            writeString(out, debtor.getSsn());
+            out.writeInt(debtor.getDebts().size());
+            for (Debt debt : debtor.getDebts()) {
+                writeDebt(out, debt, dictionary);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public Debtor decode(ByteBuffer in) {
+        Dictionary dictionary = this.dictionary;
+        Debtor debtor = new Debtor();
+        debtor.setId(readLong(in));
+        debtor.setFirstName(readString(in));
+        debtor.setLastName(readString(in));
+        debtor.setSsn(readString(in));
+        int debtCount = in.getInt();
+        Set<Debt> debts = new HashSet<>(debtCount * 2);
+        for (int i = 0; i < debtCount; i++) {
+            debts.add(readDebt(in, dictionary));
+        }
+        debtor.setDebts(debts);
+        return debtor;
+    }
+
+    public int getDictionarySize() {
+        return dictionary.values.size();
+    }
+
+    /**
+     * Changes whenever the dictionary starts over, aggregates encoded in an earlier generation can not be decoded.
+     */
+    public long getDictionaryGeneration() {
+        return dictionary.generation;
+    }
+
+    /**
+     * Once the dictionary is full, new strings are written inline. Starts an empty dictionary in that case;
+     * the caller has to make sure no aggregate encoded so far is decoded afterwards.
+     */
+    public boolean restartDictionaryIfFull() {
+        Dictionary full = dictionary;
+        if (full.values.size() < MAX_DICTIONARY_SIZE) {
+            return false;
+        }
+        dictionary = new Dictionary(full.generation + 1);
+        return true;
+    }
+
+    private static void writeDebt(DataOutputStream out, Debt debt, Dictionary dictionary) throws IOException {
+        writeLong(out, debt.getId());
+        out.writeLong(toCents(debt.getDebtAmount()));
+        writeDate(out, debt.getRepaymentDate());
+        writeString(out, debt.getUuid());
+        writeDictionaryString(out, debt.getDebtName(), dictionary);
+        out.writeInt(debt.getPayments().size());
+        for (Payment payment : debt.getPayments()) {
+            writePayment(out, payment, dictionary);
+        }
+    }
+
+    private static Debt readDebt(ByteBuffer in, Dictionary dictionary) {
+        Debt debt = new Debt();
+        debt.setId(readLong(in));
+        debt.setDebtAmount(fromCents(in.getLong()));
+        debt.setRepaymentDate(readDate(in));
+        debt.setUuid(readString(in));
+        debt.setDebtName(readDictionaryString(in, dictionary));
+        int paymentCount = in.getInt();
+        Set<Payment> payments = new HashSet<>(paymentCount * 2);
+        for (int i = 0; i < paymentCount; i++) {
+            payments.add(readPayment(in, dictionary));
+        }
+        debt.setPayments(payments);
+        return debt;
+    }
+
+    private static void writePayment(DataOutputStream out, Payment payment, Dictionary dictionary) throws IOException {
+        writeLong(out, payment.getId());
+        writeDate(out, payment.getPaymentDate());
+        out.writeLong(toCents(payment.getPaymentAmount()));
+        writeString(out, payment.getClientId());
+        CreditCard creditCard = payment.getCreditCard();
+        out.writeBoolean(creditCard != null);
+        if (creditCard != null) {
+            writeLong(out, creditCard.getId());
+            writeString(out, CreditCard.maskCcNumber(creditCard.getCcNumber()));
+            writeString(out, creditCard.getFirstName());
+            writeString(out, creditCard.getLastName());
+            writeDictionaryString(out, creditCard.getIssuingNetwork(), dictionary);
+            writeDate(out, creditCard.getExpDate());
+        }
+    }
+
+    private static Payment readPayment(ByteBuffer in, Dictionary dictionary) {
+        Payment payment = new Payment();
+        payment.setId(readLong(in));
+        payment.setPaymentDate(readDate(in));
+        payment.setPaymentAmount(fromCents(in.getLong()));
+        payment.setClientId(readString(in));
+        if (in.get() != 0) {
+            CreditCard creditCard = new CreditCard();
+            creditCard.setId(readLong(in));
+            creditCard.setCcNumber(readString(in));
+            creditCard.setFirstName(readString(in));
+            creditCard.setLastName(readString(in));
+            creditCard.setIssuingNetwork(readDictionaryString(in, dictionary));
+            creditCard.setExpDate(readDate(in));
+            payment.setCreditCard(creditCard);
+        }
+        return payment;
+    }
+
+    private static long toCents(BigDecimal amount) {
+        return amount == null ? NULL_LONG : amount.movePointRight(2).longValueExact();
+    }
+
+    private static BigDecimal fromCents(long cents) {
+        return cents == NULL_LONG ? null : BigDecimal.valueOf(cents, 2);
+    }
+
+    private static void writeLong(DataOutputStream out, Long value) throws IOException {
+        out.writeLong(value == null ? NULL_LONG : value);
+    }
+
+    private static Long readLong(ByteBuffer in) {
+        long value = in.getLong();
+        return value == NULL_LONG ? null : value;
+    }
+
+    private static void writeDate(DataOutputStream out, LocalDate date) throws IOException {
+        out.writeInt(date == null ? NULL_DATE : Math.toIntExact(date.toEpochDay()));
+    }
+
+    private static LocalDate readDate(ByteBuffer in) {
+        int epochDay = in.getInt();
+        return epochDay == NULL_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL_LENGTH);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        in.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static void writeDictionaryString(DataOutputStream out, String value, Dictionary dictionary) throws IOException {
+        Integer id = value == null ? null : dictionary.idOf(value);
+        if (id == null) {
+            out.writeInt(INLINE_STRING);
+            writeString(out, value);
+        } else {
+            out.writeInt(id);
+        }
+    }
+
+    private static String readDictionaryString(ByteBuffer in, Dictionary dictionary) {
+        int id = in.getInt();
+        return id == INLINE_STRING ? readString(in) : dictionary.values.get(id);
+    }
+
+    private static final class Dictionary {
+        private final long generation;
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private final List<String> values = new CopyOnWriteArrayList<>();
+
+        private Dictionary(long generation) {
+            this.generation = generation;
+        }
+
+        private Integer idOf(String value) {
+            Integer id = ids.get(value);
+            if (id != null) {
+                return id;
+            }
+            synchronized (values) {
+                id = ids.get(value);
+                if (id == null && values.size() < MAX_DICTIONARY_SIZE) {
+                    id = values.size();
+                    values.add(value);
+                    ids.put(value, id);
+                }
+                return id;
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package pl.sii.eu.micuenta.cache;
+
+public class MembershipFilterStats {
+
+    private final long approximateSize;
+    private final long bitCount;
+    private final int hashFunctions;
+    private final long memoryBytes;
+    private final double expectedFalsePositiveRate;
+    private final long definiteMisses;
+    private final long possibleHits;
+
+    public MembershipFilterStats(long approximateSize, long bitCount, int hashFunctions, long memoryBytes,
+                                 double expectedFalsePositiveRate, long definiteMisses, long possibleHits) {
+        this.approximateSize = approximateSize;
+        this.bitCount = bitCount;
+        this.hashFunctions = hashFunctions;
+        this.memoryBytes = memoryBytes;
+        this.expectedFalsePositiveRate = expectedFalsePositiveRate;
+        this.definiteMisses = definiteMisses;
+        this.possibleHits = possibleHits;
+    }
+
+    public long getApproximateSize() {
+        return approximateSize;
+    }
+
+    public long getBitCount() {
+        return bitCount;
+    }
+
+    public int getHashFunctions() {
+        return hashFunctions;
+    }
+
+    public long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    public double getExpectedFalsePositiveRate() {
+        return expectedFalsePositiveRate;
+    }
+
+    public long getDefiniteMisses() {
+        return definiteMisses;
+    }
+
+    public long getPossibleHits() {
+        return possibleHits;
+    }
+}
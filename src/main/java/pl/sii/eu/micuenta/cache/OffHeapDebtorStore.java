@@ -0,0 +1,241 @@
+package pl.sii.eu.micuenta.cache;
+
+import pl.sii.eu.micuenta.model.model_dto.Debtor;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps encoded debtor aggregates in direct memory segments, outside of the garbage collected heap.
+ * Only the SSN index lives on the heap, aggregates are decoded on every read.
+ * Segments are filled append only; space of replaced and invalidated entries is reclaimed
+ * when all segments are full and the store starts over with an empty index. A full string dictionary
+ * of the codec starts over together with the index. Entries dropped by such a restart, and expired entries
+ * once they are looked up, are counted as evictions.
+ */
+public class OffHeapDebtorStore {
+
+    private final int segmentSize;
+    private final int maxSegments;
+    private final long ttlNanos;
+    private final LongSupplier nanoClock;
+    private final DebtorAggregateCodec codec = new DebtorAggregateCodec();
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    private final Map<String, Slot> index = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder restarts = new LongAdder();
+    private final LongAdder decodeNanos = new LongAdder();
+    private final AtomicLong maxDecodeNanos = new AtomicLong();
+    private int currentSegment = -1;
+    private int writeOffset;
+    private long liveBytes;
+    private long invalidationStamp;
+
+    public OffHeapDebtorStore(int segmentSize, int maxSegments, long ttlMillis) {
+        this(segmentSize, maxSegments, ttlMillis, System::nanoTime);
+    }
+
+    OffHeapDebtorStore(int segmentSize, int maxSegments, long ttlMillis, LongSupplier nanoClock) {
+        if (segmentSize <= 0 || maxSegments <= 0) {
+            throw new IllegalArgumentException("Segment size and number of segments must be positive.");
+        }
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.nanoClock = nanoClock;
+    }
+
+    public Debtor get(String ssn) {
+        Slot expired;
+        lock.readLock().lock();
+        try {
+            Slot slot = index.get(ssn);
+            if (slot != null && !slot.isExpired(nanoClock.getAsLong())) {
+                hits.increment();
+                return decode(slot);
+            }
+            expired = slot;
+        } finally {
+            lock.readLock().unlock();
+        }
+        misses.increment();
+        if (expired != null) {
+            evict(ssn, expired);
+        }
+        return null;
+    }
+
+    /**
+     * Stamp to take before loading an aggregate, see {@link #putIfNotInvalidatedSince(String, Debtor, long)}.
+     */
+    public long getInvalidationStamp() {
+        lock.readLock().lock();
+        try {
+            return invalidationStamp;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stores an aggregate loaded after taking the stamp, unless any invalidation happened meanwhile.
+     * Aggregates that can not be encoded or do not fit into one segment are not stored.
+     */
+    public boolean putIfNotInvalidatedSince(String ssn, Debtor debtor, long stamp) {
+        long dictionaryGeneration = codec.getDictionaryGeneration();
+        byte[] encoded;
+        try {
+            encoded = codec.encode(debtor);
+        } catch (ArithmeticException e) {
+            rejections.increment();
+            return false;
+        }
+        if (encoded.length > segmentSize) {
+            rejections.increment();
+            return false;
+        }
+        lock.writeLock().lock();
+        try {
+            if (stamp != invalidationStamp || dictionaryGeneration != codec.getDictionaryGeneration()) {
+                return false;
+            }
+            ByteBuffer segment = segmentWithSpaceFor(encoded.length).duplicate();
+            if (dictionaryGeneration != codec.getDictionaryGeneration()) {
+                // the store has just started over with an empty dictionary, ids replace inline strings so it gets no longer
+                encoded = codec.encode(debtor);
+            }
+            segment.position(writeOffset);
+            segment.put(encoded);
+            Slot previous = index.put(ssn, new Slot(currentSegment, writeOffset, encoded.length, nanoClock.getAsLong() + ttlNanos));
+            if (previous != null) {
+                liveBytes -= previous.length;
+            }
+            liveBytes += encoded.length;
+            writeOffset += encoded.length;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void invalidate(String ssn) {
+        lock.writeLock().lock();
+        try {
+            invalidationStamp++;
+            Slot removed = index.remove(ssn);
+            if (removed != null) {
+                liveBytes -= removed.length;
+                invalidations.increment();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops all entries, allocated segments are kept and written again from the first one.
+     */
+    public void invalidateAll() {
+        lock.writeLock().lock();
+        try {
+            invalidationStamp++;
+            invalidations.add(index.size());
+            index.clear();
+            codec.restartDictionaryIfFull();
+            liveBytes = 0;
+            currentSegment = -1;
+            writeOffset = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public OffHeapStoreStats getStats() {
+        lock.readLock().lock();
+        try {
+            long decodes = hits.sum();
+            return new OffHeapStoreStats(index.size(), (long) segments.size() * segmentSize, liveBytes,
+                    decodes, misses.sum(), evictions.sum(), invalidations.sum(), rejections.sum(), restarts.sum(),
+                    codec.getDictionarySize(), decodes == 0 ? 0 : decodeNanos.sum() / decodes, maxDecodeNanos.get());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private ByteBuffer segmentWithSpaceFor(int length) {
+        if (currentSegment < 0 || writeOffset + length > segmentSize) {
+            currentSegment++;
+            writeOffset = 0;
+            if (currentSegment == segments.size()) {
+                if (segments.size() < maxSegments) {
+                    segments.add(ByteBuffer.allocateDirect(segmentSize));
+                } else {
+                    evictions.add(index.size());
+                    index.clear();
+                    codec.restartDictionaryIfFull();
+                    liveBytes = 0;
+                    currentSegment = 0;
+                    restarts.increment();
+                }
+            }
+        }
+        return segments.get(currentSegment);
+    }
+
+    private void evict(String ssn, Slot expired) {
+        lock.writeLock().lock();
+        try {
+            if (index.remove(ssn, expired)) {
+                liveBytes -= expired.length;
+                evictions.increment();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Debtor decode(Slot slot) {
+        long start = System.nanoTime();
+        ByteBuffer view = segments.get(slot.segment).duplicate();
+        view.limit(slot.offset + slot.length);
+        view.position(slot.offset);
+        Debtor debtor = codec.decode(view);
+        long elapsed = System.nanoTime() - start;
+        decodeNanos.add(elapsed);
+        maxDecodeNanos.accumulateAndGet(elapsed, Math::max);
+        return debtor;
+    }
+
+    private static final class Slot {
+        private final int segment;
+        private final int offset;
+        private final int length;
+        private final long expiresAt;
+
+        private Slot(int segment, int offset, int length, long expiresAt) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+}
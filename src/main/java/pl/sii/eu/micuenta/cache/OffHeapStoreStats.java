@@ -0,0 +1,82 @@
+package pl.sii.eu.micuenta.cache;
+
+public class OffHeapStoreStats {
+
+    private final int entries;
+    private final long reservedBytes;
+    private final long liveBytes;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long invalidations;
+    private final long rejections;
+    private final long restarts;
+    private final int dictionarySize;
+    private final long averageDecodeNanos;
+    private final long maxDecodeNanos;
+
+    public OffHeapStoreStats(int entries, long reservedBytes, long liveBytes, long hits, long misses, long evictions,
+                             long invalidations, long rejections, long restarts, int dictionarySize,
+                             long averageDecodeNanos, long maxDecodeNanos) {
+        this.entries = entries;
+        this.reservedBytes = reservedBytes;
+        this.liveBytes = liveBytes;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.invalidations = invalidations;
+        this.rejections = rejections;
+        this.restarts = restarts;
+        this.dictionarySize = dictionarySize;
+        this.averageDecodeNanos = averageDecodeNanos;
+        this.maxDecodeNanos = maxDecodeNanos;
+    }
+
+    public int getEntries() {
+        return entries;
+    }
+
+    public long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    public long getLiveBytes() {
+        return liveBytes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    public long getRejections() {
+        return rejections;
+    }
+
+    public long getRestarts() {
+        return restarts;
+    }
+
+    public int getDictionarySize() {
+        return dictionarySize;
+    }
+
+    public long getAverageDecodeNanos() {
+        return averageDecodeNanos;
+    }
+
+    public long getMaxDecodeNanos() {
+        return maxDecodeNanos;
+    }
+}
@@ -2,6 +2,7 @@ package pl.sii.eu.micuenta.conf;
 
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 import pl.sii.eu.micuenta.model.model_entity.DebtorEntity;
 import pl.sii.eu.micuenta.repository.AccountsRepository;
@@ -11,18 +12,22 @@ import javax.annotation.PostConstruct;
 @Configuration
 @ComponentScan("pl.sii.eu.micuenta")
 @EnableTransactionManagement
+@EnableScheduling
 public class AppConfig {
 
     private DataCreator dataCreator;
     private AccountsRepository accountsRepository;
+    private SchemaMigrationRunner schemaMigrationRunner;
 
-    public AppConfig(AccountsRepository accountsRepository, DataCreator dataCreator) {
+    public AppConfig(AccountsRepository accountsRepository, DataCreator dataCreator, SchemaMigrationRunner schemaMigrationRunner) {
         this.accountsRepository = accountsRepository;
         this.dataCreator = dataCreator;
+        this.schemaMigrationRunner = schemaMigrationRunner;
     }
 
     @PostConstruct
     public void init() {
+        schemaMigrationRunner.migrate();
         DebtorEntity debtorEntity = dataCreator.createDebtor();
         accountsRepository.save(debtorEntity);
     }
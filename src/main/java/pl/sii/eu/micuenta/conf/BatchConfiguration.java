@@ -0,0 +1,21 @@
+package pl.sii.eu.micuenta.conf;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ForkJoinPool;
+
+@Configuration
+public class BatchConfiguration {
+
+    public static final String BATCH_POOL = "batchPool";
+
+    /**
+     * Pool shared by portfolio wide computations, sized to the number of cores unless configured.
+     */
+    @Bean(name = BATCH_POOL, destroyMethod = "shutdownNow")
+    public ForkJoinPool batchPool(@Value("${micuenta.batch.parallelism:0}") int parallelism) {
+        return new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+}
@@ -0,0 +1,25 @@
+package pl.sii.eu.micuenta.conf;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import pl.sii.eu.micuenta.model.model_entity.CardFingerprint;
+
+/**
+ * Installs the secret behind card fingerprints. There is no default, the application does not start
+ * without {@code micuenta.card.fingerprint-key}, which is taken from {@value #ENVIRONMENT_VARIABLE}.
+ * Beans fingerprinting cards depend on this one.
+ */
+@Component(CardFingerprintKey.BEAN_NAME)
+public class CardFingerprintKey {
+
+    public static final String BEAN_NAME = "cardFingerprintKey";
+    public static final String ENVIRONMENT_VARIABLE = "MICUENTA_CARD_FINGERPRINT_KEY";
+
+    public CardFingerprintKey(@Value("${micuenta.card.fingerprint-key:}") String secret) {
+        if (secret == null || secret.trim().isEmpty()) {
+            throw new IllegalStateException("Card fingerprint key is not set, set " + ENVIRONMENT_VARIABLE
+                    + " environment variable or micuenta.card.fingerprint-key property before starting the application.");
+        }
+        CardFingerprint.configure(secret);
+    }
+}
@@ -0,0 +1,51 @@
+package pl.sii.eu.micuenta.conf;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import pl.sii.eu.micuenta.model.model_entity.CardFingerprint;
+
+import java.util.List;
+
+/**
+ * Replaces the plain SHA-256 card fingerprints written by {@link CreditCardDeduplicationMigration} with keyed
+ * fingerprints of the card number and merges rows of the same card number which are now one vault card.
+ */
+@Component
+@DependsOn(CardFingerprintKey.BEAN_NAME)
+public class CardFingerprintMigration implements SchemaMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(CardFingerprintMigration.class);
+
+    private JdbcTemplate jdbcTemplate;
+
+    public CardFingerprintMigration(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public int getVersion() {
+        return 5;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Keyed credit card fingerprints";
+    }
+
+    @Override
+    public void migrate() {
+        jdbcTemplate.execute("DROP INDEX IF EXISTS IDX_CARD_FINGERPRINT");
+
+        List<Object[]> fingerprints = jdbcTemplate.query("SELECT ID, CC_NUMBER FROM CREDIT_CARD_ENTITY",
+                (rs, rowNum) -> new Object[]{CardFingerprint.of(rs.getString("CC_NUMBER")), rs.getLong("ID")});
+        jdbcTemplate.batchUpdate("UPDATE CREDIT_CARD_ENTITY SET FINGERPRINT = ? WHERE ID = ?", fingerprints);
+        int removedCards = CreditCardDeduplicationMigration.mergeCardsByFingerprint(jdbcTemplate);
+
+        jdbcTemplate.execute("CREATE UNIQUE INDEX IF NOT EXISTS IDX_CARD_FINGERPRINT ON CREDIT_CARD_ENTITY (FINGERPRINT)");
+        logger.info("{} credit cards have been fingerprinted, {} rows of repeated card numbers have been merged.",
+                fingerprints.size(), removedCards);
+    }
+}
@@ -0,0 +1,69 @@
+package pl.sii.eu.micuenta.conf;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import pl.sii.eu.micuenta.model.model_entity.CardFingerprint;
+
+import java.util.List;
+
+/**
+ * Turns per-payment card rows into the card vault: fingerprints existing cards, points payments at the
+ * oldest row of each fingerprint, removes the duplicates and drops the one-to-one unique key on payments.
+ */
+@Component
+@DependsOn(CardFingerprintKey.BEAN_NAME)
+public class CreditCardDeduplicationMigration implements SchemaMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(CreditCardDeduplicationMigration.class);
+
+    private JdbcTemplate jdbcTemplate;
+
+    public CreditCardDeduplicationMigration(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public int getVersion() {
+        return 3;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Deduplicate credit cards by fingerprint";
+    }
+
+    @Override
+    public void migrate() {
+        jdbcTemplate.execute("ALTER TABLE CREDIT_CARD_ENTITY ADD COLUMN IF NOT EXISTS FINGERPRINT VARCHAR(64)");
+
+        List<Object[]> fingerprints = jdbcTemplate.query(
+                "SELECT ID, CC_NUMBER FROM CREDIT_CARD_ENTITY WHERE FINGERPRINT IS NULL",
+                (rs, rowNum) -> new Object[]{CardFingerprint.of(rs.getString("CC_NUMBER")), rs.getLong("ID")});
+        jdbcTemplate.batchUpdate("UPDATE CREDIT_CARD_ENTITY SET FINGERPRINT = ? WHERE ID = ?", fingerprints);
+        int removedCards = mergeCardsByFingerprint(jdbcTemplate);
+
+        List<String> oneToOneKeys = jdbcTemplate.queryForList("SELECT CONSTRAINT_NAME FROM INFORMATION_SCHEMA.CONSTRAINTS " +
+                "WHERE TABLE_NAME = 'PAYMENT_ENTITY' AND CONSTRAINT_TYPE = 'UNIQUE' AND COLUMN_LIST = 'CREDIT_CARD_ENTITY_ID'", String.class);
+        for (String oneToOneKey : oneToOneKeys) {
+            jdbcTemplate.execute("ALTER TABLE PAYMENT_ENTITY DROP CONSTRAINT " + oneToOneKey);
+        }
+
+        jdbcTemplate.execute("CREATE UNIQUE INDEX IF NOT EXISTS IDX_CARD_FINGERPRINT ON CREDIT_CARD_ENTITY (FINGERPRINT)");
+        logger.info("{} duplicated credit cards have been merged into the card vault.", removedCards);
+    }
+
+    /**
+     * Points payments at the oldest card row of each fingerprint and deletes the other rows.
+     */
+    static int mergeCardsByFingerprint(JdbcTemplate jdbcTemplate) {
+        jdbcTemplate.update("UPDATE PAYMENT_ENTITY p SET CREDIT_CARD_ENTITY_ID = (" +
+                "SELECT MIN(v.ID) FROM CREDIT_CARD_ENTITY v, CREDIT_CARD_ENTITY c " +
+                "WHERE c.ID = p.CREDIT_CARD_ENTITY_ID AND v.FINGERPRINT = c.FINGERPRINT) " +
+                "WHERE p.CREDIT_CARD_ENTITY_ID IS NOT NULL");
+        return jdbcTemplate.update("DELETE FROM CREDIT_CARD_ENTITY c WHERE c.ID > (" +
+                "SELECT MIN(v.ID) FROM CREDIT_CARD_ENTITY v WHERE v.FINGERPRINT = c.FINGERPRINT)");
+    }
+}
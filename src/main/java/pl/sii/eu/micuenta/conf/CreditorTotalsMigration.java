@@ -0,0 +1,40 @@
+package pl.sii.eu.micuenta.conf;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Tables of outstanding totals per creditor and of paid totals per payment client, maintained by
+ * {@link pl.sii.eu.micuenta.repository.CreditorTotalsStore}.
+ */
+@Component
+public class CreditorTotalsMigration implements SchemaMigration {
+
+    private static final String[] TABLES = {
+            "CREATE TABLE IF NOT EXISTS CREDITOR_TOTALS (DEBT_NAME VARCHAR(255) PRIMARY KEY, DEBTS BIGINT NOT NULL, " +
+                    "DEBT_AMOUNT DECIMAL(19, 2) NOT NULL, PAID_AMOUNT DECIMAL(19, 2) NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS CLIENT_PAYMENT_TOTALS (CLIENT_ID VARCHAR(255) PRIMARY KEY, PAYMENTS BIGINT NOT NULL, " +
+                    "PAID_AMOUNT DECIMAL(19, 2) NOT NULL)"
+    };
+
+    private JdbcTemplate jdbcTemplate;
+
+    public CreditorTotalsMigration(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public int getVersion() {
+        return 4;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Creditor and payment client totals";
+    }
+
+    @Override
+    public void migrate() {
+        jdbcTemplate.batchUpdate(TABLES);
+    }
+}
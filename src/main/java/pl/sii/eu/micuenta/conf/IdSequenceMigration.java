@@ -0,0 +1,91 @@
+package pl.sii.eu.micuenta.conf;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import pl.sii.eu.micuenta.model.model_entity.CreditCardEntity;
+import pl.sii.eu.micuenta.model.model_entity.DebtEntity;
+import pl.sii.eu.micuenta.model.model_entity.DebtorEntity;
+import pl.sii.eu.micuenta.model.model_entity.PaymentEntity;
+import pl.sii.eu.micuenta.model.model_entity.PooledSequenceGenerator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Moves rows created with IDENTITY columns over to pooled sequences. Creates a missing sequence and restarts
+ * it past the highest existing id of its table, so freshly allocated id blocks never collide with old rows.
+ * The sequence statements and the INFORMATION_SCHEMA.SEQUENCES lookup are H2 syntax, the migration refuses
+ * to run against any other database.
+ */
+@Component
+public class IdSequenceMigration implements SchemaMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdSequenceMigration.class);
+
+    private static final String DATABASE_PRODUCT_NAME = "H2";
+    private static final String CREATE_SEQUENCE = "CREATE SEQUENCE IF NOT EXISTS %s START WITH 1 INCREMENT BY %d";
+    private static final String SELECT_CURRENT_VALUE =
+            "SELECT CURRENT_VALUE FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME = ?";
+    private static final String RESTART_SEQUENCE = "ALTER SEQUENCE %s RESTART WITH %d";
+
+    private static final Map<String, String> SEQUENCES_BY_TABLE = new LinkedHashMap<>();
+
+    static {
+        SEQUENCES_BY_TABLE.put("DEBTOR_ENTITY", DebtorEntity.SEQUENCE_NAME);
+        SEQUENCES_BY_TABLE.put("DEBT_ENTITY", DebtEntity.SEQUENCE_NAME);
+        SEQUENCES_BY_TABLE.put("PAYMENT_ENTITY", PaymentEntity.SEQUENCE_NAME);
+        SEQUENCES_BY_TABLE.put("CREDIT_CARD_ENTITY", CreditCardEntity.SEQUENCE_NAME);
+    }
+
+    private JdbcTemplate jdbcTemplate;
+    private int allocationSize = PooledSequenceGenerator.DEFAULT_ALLOCATION_SIZE;
+
+    public IdSequenceMigration(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Value("${spring.jpa.properties." + PooledSequenceGenerator.ALLOCATION_SIZE_SETTING + ":"
+            + PooledSequenceGenerator.DEFAULT_ALLOCATION_SIZE + "}")
+    public void setAllocationSize(int allocationSize) {
+        this.allocationSize = allocationSize;
+    }
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Align id sequences with existing rows";
+    }
+
+    @Override
+    public void migrate() {
+        String databaseProductName = jdbcTemplate.execute(
+                (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+        if (!DATABASE_PRODUCT_NAME.equals(databaseProductName)) {
+            throw new IllegalStateException("Id sequence migration supports " + DATABASE_PRODUCT_NAME
+                    + " only, the datasource is " + databaseProductName + ".");
+        }
+        for (Map.Entry<String, String> entry : SEQUENCES_BY_TABLE.entrySet()) {
+            alignSequence(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void alignSequence(String table, String sequence) {
+        jdbcTemplate.execute(String.format(CREATE_SEQUENCE, sequence, allocationSize));
+
+        long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(ID), 0) FROM " + table, Long.class);
+        long currentValue = jdbcTemplate.queryForObject(SELECT_CURRENT_VALUE, Long.class, sequence);
+
+        if (maxId > 0 && currentValue < maxId) {
+            jdbcTemplate.execute(String.format(RESTART_SEQUENCE, sequence, maxId + 1));
+            logger.info("Sequence {} has been restarted with {} to follow existing {} rows.", sequence, maxId + 1, table);
+        }
+    }
+}
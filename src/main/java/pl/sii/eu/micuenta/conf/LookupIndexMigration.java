@@ -0,0 +1,41 @@
+package pl.sii.eu.micuenta.conf;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Indexes behind SSN/login lookups, debt UUID matching and the debtor/debt/payment joins.
+ * Same names as the entity {@code @Table} indexes, so schemas generated by Hibernate are left untouched.
+ */
+@Component
+public class LookupIndexMigration implements SchemaMigration {
+
+    private static final String[] INDEXES = {
+            "CREATE UNIQUE INDEX IF NOT EXISTS IDX_DEBTOR_SSN ON DEBTOR_ENTITY (SSN)",
+            "CREATE INDEX IF NOT EXISTS IDX_DEBTOR_LOGIN ON DEBTOR_ENTITY (SSN, FIRST_NAME, LAST_NAME)",
+            "CREATE INDEX IF NOT EXISTS IDX_DEBT_UUID ON DEBT_ENTITY (UUID)",
+            "CREATE INDEX IF NOT EXISTS IDX_DEBT_DEBTOR ON DEBT_ENTITY (DEBTOR_ENTITY_ID)",
+            "CREATE INDEX IF NOT EXISTS IDX_PAYMENT_DEBT_DATE ON PAYMENT_ENTITY (DEBT_ENTITY_ID, PAYMENT_DATE)"
+    };
+
+    private JdbcTemplate jdbcTemplate;
+
+    public LookupIndexMigration(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public int getVersion() {
+        return 2;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Lookup and foreign key indexes";
+    }
+
+    @Override
+    public void migrate() {
+        jdbcTemplate.batchUpdate(INDEXES);
+    }
+}
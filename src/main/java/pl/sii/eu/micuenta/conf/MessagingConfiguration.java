@@ -1,19 +1,37 @@
 package pl.sii.eu.micuenta.conf;
 
 import org.apache.activemq.ActiveMQConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.jms.annotation.EnableJms;
+import org.springframework.jms.config.DefaultJmsListenerContainerFactory;
+import org.springframework.util.StringUtils;
 
 @Configuration
 @EnableJms
 public class MessagingConfiguration {
 
+    public static final String TOPIC_LISTENER_CONTAINER_FACTORY = "topicListenerContainerFactory";
+
+    /**
+     * The broker URL has to be configured, the context does not start without it. Tests point it at an embedded broker.
+     */
     @Bean
-    public ActiveMQConnectionFactory activeMQConnectionFactory() {
+    public ActiveMQConnectionFactory activeMQConnectionFactory(@Value("${micuenta.jms.broker-url}") String brokerUrl) {
+        if (!StringUtils.hasText(brokerUrl)) {
+            throw new IllegalStateException("Property micuenta.jms.broker-url is empty.");
+        }
         ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory();
-        factory.setBrokerURL("tcp://ec2-34-245-25-132.eu-west-1.compute.amazonaws.com:7030");
+        factory.setBrokerURL(brokerUrl);
         return factory;
     }
-}
 
+    @Bean(name = TOPIC_LISTENER_CONTAINER_FACTORY)
+    public DefaultJmsListenerContainerFactory topicListenerContainerFactory(ActiveMQConnectionFactory activeMQConnectionFactory) {
+        DefaultJmsListenerContainerFactory factory = new DefaultJmsListenerContainerFactory();
+        factory.setConnectionFactory(activeMQConnectionFactory);
+        factory.setPubSubDomain(true);
+        return factory;
+    }
+}
@@ -0,0 +1,42 @@
+package pl.sii.eu.micuenta.conf;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import pl.sii.eu.micuenta.controller.RequestExecutor;
+
+/**
+ * Separate executors for cheap reads, payment plan computations and writes, so a slow class of endpoints
+ * can only exhaust its own threads. Snapshots of all debtors get a single thread of their own.
+ */
+@Configuration
+public class RequestExecutorConfiguration {
+
+    public static final String READ_EXECUTOR = "readRequestExecutor";
+    public static final String PLAN_EXECUTOR = "planRequestExecutor";
+    public static final String WRITE_EXECUTOR = "writeRequestExecutor";
+    public static final String SNAPSHOT_EXECUTOR = "snapshotRequestExecutor";
+
+    @Bean(name = READ_EXECUTOR, destroyMethod = "shutdown")
+    public RequestExecutor readRequestExecutor(@Value("${micuenta.executor.read.threads:16}") int threads,
+                                               @Value("${micuenta.executor.read.queue-capacity:500}") int queueCapacity) {
+        return new RequestExecutor("read", threads, queueCapacity);
+    }
+
+    @Bean(name = PLAN_EXECUTOR, destroyMethod = "shutdown")
+    public RequestExecutor planRequestExecutor(@Value("${micuenta.executor.plan.threads:8}") int threads,
+                                               @Value("${micuenta.executor.plan.queue-capacity:200}") int queueCapacity) {
+        return new RequestExecutor("plan", threads, queueCapacity);
+    }
+
+    @Bean(name = WRITE_EXECUTOR, destroyMethod = "shutdown")
+    public RequestExecutor writeRequestExecutor(@Value("${micuenta.executor.write.threads:8}") int threads,
+                                                @Value("${micuenta.executor.write.queue-capacity:100}") int queueCapacity) {
+        return new RequestExecutor("write", threads, queueCapacity);
+    }
+
+    @Bean(name = SNAPSHOT_EXECUTOR, destroyMethod = "shutdown")
+    public RequestExecutor snapshotRequestExecutor() {
+        return new RequestExecutor("snapshot", 1, 1);
+    }
+}
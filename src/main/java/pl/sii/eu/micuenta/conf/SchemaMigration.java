@@ -0,0 +1,13 @@
+package pl.sii.eu.micuenta.conf;
+
+/**
+ * Versioned schema change applied once by {@link SchemaMigrationRunner}, in ascending version order.
+ */
+public interface SchemaMigration {
+
+    int getVersion();
+
+    String getDescription();
+
+    void migrate();
+}
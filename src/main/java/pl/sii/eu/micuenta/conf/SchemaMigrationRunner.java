@@ -0,0 +1,46 @@
+package pl.sii.eu.micuenta.conf;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@Component
+public class SchemaMigrationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(SchemaMigrationRunner.class);
+
+    private JdbcTemplate jdbcTemplate;
+    private List<SchemaMigration> schemaMigrations;
+
+    public SchemaMigrationRunner(JdbcTemplate jdbcTemplate, List<SchemaMigration> schemaMigrations) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.schemaMigrations = new ArrayList<>(schemaMigrations);
+        this.schemaMigrations.sort(Comparator.comparingInt(SchemaMigration::getVersion));
+    }
+
+    public void migrate() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS SCHEMA_VERSION (VERSION INT PRIMARY KEY, " +
+                "DESCRIPTION VARCHAR(255) NOT NULL, INSTALLED_ON TIMESTAMP NOT NULL)");
+
+        Set<Integer> appliedVersions = new HashSet<>(
+                jdbcTemplate.queryForList("SELECT VERSION FROM SCHEMA_VERSION", Integer.class));
+
+        for (SchemaMigration schemaMigration : schemaMigrations) {
+            if (appliedVersions.contains(schemaMigration.getVersion())) {
+                continue;
+            }
+            logger.info("Applying schema migration {}: {}.", schemaMigration.getVersion(), schemaMigration.getDescription());
+            schemaMigration.migrate();
+            jdbcTemplate.update("INSERT INTO SCHEMA_VERSION (VERSION, DESCRIPTION, INSTALLED_ON) VALUES (?, ?, ?)",
+                    schemaMigration.getVersion(), schemaMigration.getDescription(), new Timestamp(System.currentTimeMillis()));
+        }
+    }
+}
@@ -1,24 +1,34 @@
 package pl.sii.eu.micuenta.controller;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import pl.sii.eu.micuenta.conf.DataCreator;
+import pl.sii.eu.micuenta.conf.RequestExecutorConfiguration;
 import pl.sii.eu.micuenta.model.model_dto.Debtor;
 import pl.sii.eu.micuenta.model.model_dto.form.PaymentConfirmation;
 import pl.sii.eu.micuenta.model.model_dto.form.PaymentDeclaration;
 import pl.sii.eu.micuenta.model.model_dto.form.PaymentPlan;
 import pl.sii.eu.micuenta.repository.AccountsRepository;
+import pl.sii.eu.micuenta.repository.CreditCardVault;
+import pl.sii.eu.micuenta.service.BalanceResponseCache;
 import pl.sii.eu.micuenta.service.DataDebtorService;
 import pl.sii.eu.micuenta.service.PaymentPlanService;
+import pl.sii.eu.micuenta.service.SerializedBalance;
 import pl.sii.eu.micuenta.service.UpdatePaymentService;
 
 import javax.ws.rs.core.MediaType;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 @Api(value = "AccountController",
         consumes = "debtor presence in MiCuenta application",
@@ -33,44 +43,95 @@ public class AccountController {
     private final UpdatePaymentService updatePaymentService;
     private final DataCreator dataCreator;
     private final AccountsRepository accountsRepository;
-    private ObjectMapper objectMapper;
+    private final CreditCardVault creditCardVault;
+    private final BalanceResponseCache balanceResponseCache;
+    private final RequestExecutor readExecutor;
+    private final RequestExecutor planExecutor;
+    private final RequestExecutor writeExecutor;
 
     public AccountController(DataDebtorService dataDebtorService,
                              PaymentPlanService paymentPlanService,
                              UpdatePaymentService updatePaymentService,
                              DataCreator dataCreator,
                              AccountsRepository accountsRepository,
-                             ObjectMapper objectMapper) {
+                             CreditCardVault creditCardVault,
+                             BalanceResponseCache balanceResponseCache,
+                             @Qualifier(RequestExecutorConfiguration.READ_EXECUTOR) RequestExecutor readExecutor,
+                             @Qualifier(RequestExecutorConfiguration.PLAN_EXECUTOR) RequestExecutor planExecutor,
+                             @Qualifier(RequestExecutorConfiguration.WRITE_EXECUTOR) RequestExecutor writeExecutor) {
         this.dataDebtorService = dataDebtorService;
         this.paymentPlanService = paymentPlanService;
         this.updatePaymentService = updatePaymentService;
         this.dataCreator = dataCreator;
         this.accountsRepository = accountsRepository;
-        this.objectMapper = objectMapper;
+        this.creditCardVault = creditCardVault;
+        this.balanceResponseCache = balanceResponseCache;
+        this.readExecutor = readExecutor;
+        this.planExecutor = planExecutor;
+        this.writeExecutor = writeExecutor;
     }
 
     @ApiOperation(value = "Returns: answer if debtorEntity is present in MiCuenta application")
     @ApiResponses(
             value = {
                     @ApiResponse(code = 200, message = "Debtor is found in MiCuenta"),
-                    @ApiResponse(code = 404, message = "Debtor is not found in MiCuenta")
+                    @ApiResponse(code = 404, message = "Debtor is not found in MiCuenta"),
+                    @ApiResponse(code = 503, message = "Too many requests are waiting")
             }
     )
     @RequestMapping(value = "/login", consumes = MediaType.APPLICATION_JSON, method = RequestMethod.POST)
-    public ResponseEntity<String> login(@RequestBody Debtor debtor) {
-        return dataDebtorService.validateDebtorsData(debtor);
+    public CompletableFuture<ResponseEntity<String>> login(@RequestBody Debtor debtor) {
+        return readExecutor.submit(() -> dataDebtorService.validateDebtorsData(debtor));
     }
 
-    @ApiOperation(value = "Returns: debtor with list of debts")
+    /**
+     * 304 is answered from the entity tag alone, the balance is neither loaded from the repository nor serialized
+     * while the debtor is cached.
+     */
+    @ApiOperation(value = "Returns: debtor with list of debts, or 304 when If-None-Match carries the current ETag")
     @RequestMapping(value = "/balance/{ssn}", produces = MediaType.APPLICATION_JSON, method = RequestMethod.GET)
-    public String getBalance(@PathVariable String ssn) throws JsonProcessingException {
-        return objectMapper.writeValueAsString(dataDebtorService.getDebtorBySsn(ssn));
+    public CompletableFuture<ResponseEntity<byte[]>> getBalance(@PathVariable String ssn,
+                                                                @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return readExecutor.submit(() -> {
+            if (ifNoneMatch != null) {
+                String eTag = balanceResponseCache.getETag(ssn);
+                if (EntityTags.noneMatchFails(ifNoneMatch, eTag)) {
+                    return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+                }
+            }
+            SerializedBalance balance;
+            try {
+                balance = balanceResponseCache.getBalance(ssn);
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Balance can not be serialized.", e);
+            }
+            return ResponseEntity.ok()
+                    .eTag(balance.getETag())
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                    .body(balance.getBody());
+        });
+    }
+
+    @ApiOperation(value = "Returns: debtors with lists of debts for all found ssn numbers")
+    @ApiResponses(
+            value = {
+                    @ApiResponse(code = 200, message = "Found debtors are streamed"),
+                    @ApiResponse(code = 400, message = "Too many ssn numbers are requested at once")
+            }
+    )
+    @RequestMapping(value = "/balance/batch", consumes = MediaType.APPLICATION_JSON, produces = MediaType.APPLICATION_JSON, method = RequestMethod.POST)
+    public ResponseEntity<StreamingResponseBody> getBalances(@RequestBody List<String> ssns) {
+        if (!dataDebtorService.isValidBatchRequest(ssns)) {
+            return ResponseEntity.badRequest().build();
+        }
+        StreamingResponseBody responseBody = outputStream -> dataDebtorService.writeDebtorsBySsns(ssns, outputStream);
+        return ResponseEntity.ok(responseBody);
     }
 
     @ApiOperation(value = "Returns: payment plan based on received amount")
     @RequestMapping(value = "/paymentplan", consumes = MediaType.APPLICATION_JSON, method = RequestMethod.POST)
-    public PaymentPlan getPaymentPlan(@RequestBody PaymentDeclaration paymentDeclaration) {
-        return paymentPlanService.getPaymentPlanBasedOnPaymentDeclaration(paymentDeclaration);
+    public CompletableFuture<PaymentPlan> getPaymentPlan(@RequestBody PaymentDeclaration paymentDeclaration) {
+        return planExecutor.submit(() -> paymentPlanService.getPaymentPlanBasedOnPaymentDeclaration(paymentDeclaration));
     }
 
     @ApiOperation(value = "Returns: status of success or failure of updating payments operation")
@@ -78,19 +139,29 @@ public class AccountController {
             value = {
                     @ApiResponse(code = 200, message = "List of payments for chosen debts has been updated"),
                     @ApiResponse(code = 400, message = "Payment amount is not valid"),
-                    @ApiResponse(code = 404, message = "Debt with chosen id does not exist")
+                    @ApiResponse(code = 404, message = "Debt with chosen id does not exist"),
+                    @ApiResponse(code = 503, message = "Too many requests are waiting")
             }
     )
     @RequestMapping(value = "/paymentmethods/creditcard", consumes = MediaType.APPLICATION_JSON, method = RequestMethod.POST)
-    public ResponseEntity updatePayments(@RequestBody PaymentConfirmation paymentConfirmation) {
-        return updatePaymentService.updateDebtsPaymentsBasedOnPaymentConfirmation(paymentConfirmation);
+    public CompletableFuture<ResponseEntity> updatePayments(@RequestBody PaymentConfirmation paymentConfirmation) {
+        return writeExecutor.submit(() -> updatePaymentService.updateDebtsPaymentsBasedOnPaymentConfirmation(paymentConfirmation));
     }
 
     @ApiOperation(value = "Reset database")
     @RequestMapping(value = "/reset", method = RequestMethod.DELETE)
-    public void resetData() {
-        accountsRepository.deleteAll();
-        accountsRepository.save(dataCreator.createDebtor());
+    public CompletableFuture<Void> resetData() {
+        return writeExecutor.submit(() -> {
+            accountsRepository.deleteAll();
+            creditCardVault.deleteAll();
+            accountsRepository.save(dataCreator.createDebtor());
+            return null;
+        });
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<Void> handleRejectedRequest() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
     }
 }
 
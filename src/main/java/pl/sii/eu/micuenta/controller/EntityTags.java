@@ -0,0 +1,48 @@
+package pl.sii.eu.micuenta.controller;
+
+/**
+ * If-None-Match evaluation: the header may list several entity tags, and tags are compared weakly,
+ * so W/"a" matches "a".
+ */
+final class EntityTags {
+
+    private static final String WEAK_PREFIX = "W/";
+
+    private EntityTags() {
+    }
+
+    static boolean noneMatchFails(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null || eTag == null) {
+            return false;
+        }
+        if (ifNoneMatch.trim().equals("*")) {
+            return true;
+        }
+        String opaqueTag = opaqueTag(eTag);
+        int position = 0;
+        while (position < ifNoneMatch.length()) {
+            char c = ifNoneMatch.charAt(position);
+            if (c == ',' || Character.isWhitespace(c)) {
+                position++;
+                continue;
+            }
+            int start = ifNoneMatch.startsWith(WEAK_PREFIX, position) ? position + WEAK_PREFIX.length() : position;
+            if (start >= ifNoneMatch.length() || ifNoneMatch.charAt(start) != '"') {
+                return false;
+            }
+            int end = ifNoneMatch.indexOf('"', start + 1);
+            if (end < 0) {
+                return false;
+            }
+            if (ifNoneMatch.substring(start, end + 1).equals(opaqueTag)) {
+                return true;
+            }
+            position = end + 1;
+        }
+        return false;
+    }
+
+    private static String opaqueTag(String eTag) {
+        return eTag.startsWith(WEAK_PREFIX) ? eTag.substring(WEAK_PREFIX.length()) : eTag;
+    }
+}
@@ -0,0 +1,119 @@
+package pl.sii.eu.micuenta.controller;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import pl.sii.eu.micuenta.conf.RequestExecutorConfiguration;
+import pl.sii.eu.micuenta.service.DebtorExportService;
+import pl.sii.eu.micuenta.service.DebtorSnapshotService;
+import pl.sii.eu.micuenta.service.SnapshotInProgressException;
+import pl.sii.eu.micuenta.service.SnapshotManifest;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import static pl.sii.eu.micuenta.controller.MediaTypes.APPLICATION_NDJSON;
+
+@Api(value = "ExportController",
+        produces = "all debtors with debts and payments",
+        description = "ExportController class exports all debtors and manages their snapshots")
+@RestController
+@RequestMapping("/export")
+public class ExportController {
+
+    private final DebtorExportService debtorExportService;
+    private final DebtorSnapshotService debtorSnapshotService;
+    private final RequestExecutor snapshotExecutor;
+
+    public ExportController(DebtorExportService debtorExportService,
+                            DebtorSnapshotService debtorSnapshotService,
+                            @Qualifier(RequestExecutorConfiguration.SNAPSHOT_EXECUTOR) RequestExecutor snapshotExecutor) {
+        this.debtorExportService = debtorExportService;
+        this.debtorSnapshotService = debtorSnapshotService;
+        this.snapshotExecutor = snapshotExecutor;
+    }
+
+    @ApiOperation(value = "Returns: all debtors with debts and payments as newline delimited JSON, in the order of debtor ids")
+    @RequestMapping(value = "/debtors", produces = APPLICATION_NDJSON, method = RequestMethod.GET)
+    public ResponseEntity<StreamingResponseBody> exportDebtors() {
+        StreamingResponseBody responseBody = debtorExportService::writeDebtors;
+        return ResponseEntity.ok().header(HttpHeaders.CONTENT_TYPE, APPLICATION_NDJSON).body(responseBody);
+    }
+
+    @ApiOperation(value = "Returns: manifest of the latest snapshot of all debtors")
+    @ApiResponses(
+            value = {
+                    @ApiResponse(code = 200, message = "Latest snapshot is available"),
+                    @ApiResponse(code = 404, message = "No snapshot has been created yet")
+            }
+    )
+    @RequestMapping(value = "/snapshots/latest", produces = MediaType.APPLICATION_JSON, method = RequestMethod.GET)
+    public ResponseEntity<SnapshotManifest> getLatestSnapshot() {
+        SnapshotManifest manifest = debtorSnapshotService.getLatestManifest();
+        return manifest == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(manifest);
+    }
+
+    @ApiOperation(value = "Returns: manifest of a snapshot of all debtors created now instead of waiting for the nightly one")
+    @ApiResponses(
+            value = {
+                    @ApiResponse(code = 200, message = "Snapshot has been created"),
+                    @ApiResponse(code = 409, message = "Another snapshot is being created")
+            }
+    )
+    @RequestMapping(value = "/snapshots", produces = MediaType.APPLICATION_JSON, method = RequestMethod.POST)
+    public CompletableFuture<ResponseEntity<SnapshotManifest>> createSnapshot() {
+        if (debtorSnapshotService.isCreatingSnapshot()) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.CONFLICT).build());
+        }
+        return snapshotExecutor.submit(() -> {
+            try {
+                return ResponseEntity.ok(debtorSnapshotService.createSnapshot());
+            } catch (SnapshotInProgressException e) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).build();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @ApiOperation(value = "Returns: file of the latest snapshot of all debtors, supports single byte range requests")
+    @ApiResponses(
+            value = {
+                    @ApiResponse(code = 200, message = "Whole snapshot file is sent"),
+                    @ApiResponse(code = 206, message = "Requested range of snapshot file is sent"),
+                    @ApiResponse(code = 404, message = "No snapshot has been created yet"),
+                    @ApiResponse(code = 416, message = "Requested range is outside of snapshot file")
+            }
+    )
+    @RequestMapping(value = "/snapshots/latest/file", method = RequestMethod.GET)
+    public void downloadLatestSnapshot(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        SnapshotManifest manifest = debtorSnapshotService.getLatestManifest();
+        if (manifest == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        FileRangeSender.send(debtorSnapshotService.getSnapshotFile(manifest),
+                manifest.isGzip() ? "application/gzip" : APPLICATION_NDJSON,
+                "\"" + manifest.getSha256() + "\"", request, response);
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<Void> handleRejectedRequest() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+    }
+}
@@ -0,0 +1,9 @@
+package pl.sii.eu.micuenta.controller;
+
+final class MediaTypes {
+
+    static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    private MediaTypes() {
+    }
+}
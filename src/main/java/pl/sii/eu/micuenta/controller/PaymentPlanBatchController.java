@@ -0,0 +1,66 @@
+package pl.sii.eu.micuenta.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import pl.sii.eu.micuenta.model.model_dto.form.PaymentDeclaration;
+import pl.sii.eu.micuenta.model.model_dto.form.PaymentPlanRule;
+import pl.sii.eu.micuenta.service.BatchPaymentPlanService;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static pl.sii.eu.micuenta.controller.MediaTypes.APPLICATION_NDJSON;
+
+@Api(value = "PaymentPlanBatchController",
+        consumes = "payment declarations or payment plan rule",
+        produces = "newline delimited payment plans",
+        description = "PaymentPlanBatchController class computes payment plans of many debtors at once")
+@RestController
+@RequestMapping("/paymentplan")
+public class PaymentPlanBatchController {
+
+    private final BatchPaymentPlanService batchPaymentPlanService;
+    private final ObjectMapper objectMapper;
+
+    public PaymentPlanBatchController(BatchPaymentPlanService batchPaymentPlanService, ObjectMapper objectMapper) {
+        this.batchPaymentPlanService = batchPaymentPlanService;
+        this.objectMapper = objectMapper;
+    }
+
+    @ApiOperation(value = "Returns: newline delimited payment plans, one for every newline delimited payment declaration")
+    @RequestMapping(value = "/batch", consumes = APPLICATION_NDJSON, produces = APPLICATION_NDJSON, method = RequestMethod.POST)
+    public ResponseEntity<StreamingResponseBody> getPaymentPlans(HttpServletRequest request) throws IOException {
+        InputStream paymentDeclarations = request.getInputStream();
+        StreamingResponseBody responseBody = outputStream -> batchPaymentPlanService.writePaymentPlans(
+                objectMapper.readerFor(PaymentDeclaration.class).<PaymentDeclaration>readValues(paymentDeclarations), outputStream);
+        return ResponseEntity.ok().header(HttpHeaders.CONTENT_TYPE, APPLICATION_NDJSON).body(responseBody);
+    }
+
+    @ApiOperation(value = "Returns: newline delimited payment plans of all debtors, as if every debtor paid amount of the rule")
+    @ApiResponses(
+            value = {
+                    @ApiResponse(code = 200, message = "Payment plans of all debtors are streamed"),
+                    @ApiResponse(code = 400, message = "Payment amount is not valid")
+            }
+    )
+    @RequestMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON, produces = APPLICATION_NDJSON, method = RequestMethod.POST)
+    public ResponseEntity<StreamingResponseBody> getPaymentPlansOfAllDebtors(@RequestBody PaymentPlanRule paymentPlanRule) {
+        if (!batchPaymentPlanService.isValidPaymentPlanRule(paymentPlanRule)) {
+            return ResponseEntity.badRequest().build();
+        }
+        StreamingResponseBody responseBody = outputStream -> batchPaymentPlanService.writePaymentPlans(paymentPlanRule, outputStream);
+        return ResponseEntity.ok().header(HttpHeaders.CONTENT_TYPE, APPLICATION_NDJSON).body(responseBody);
+    }
+}
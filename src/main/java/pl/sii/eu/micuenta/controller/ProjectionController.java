@@ -0,0 +1,56 @@
+package pl.sii.eu.micuenta.controller;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import pl.sii.eu.micuenta.model.model_dto.form.RepaymentProjectionRequest;
+import pl.sii.eu.micuenta.service.ProjectionFormat;
+import pl.sii.eu.micuenta.service.RepaymentProjectionService;
+
+import javax.ws.rs.core.MediaType;
+import java.util.Arrays;
+
+@Api(value = "ProjectionController",
+        consumes = "monthly payment and number of months",
+        produces = "month in which every open debt gets closed",
+        description = "ProjectionController class projects repayment of all debts")
+@RestController
+@RequestMapping("/projection")
+public class ProjectionController {
+
+    private final RepaymentProjectionService repaymentProjectionService;
+
+    public ProjectionController(RepaymentProjectionService repaymentProjectionService) {
+        this.repaymentProjectionService = repaymentProjectionService;
+    }
+
+    @ApiOperation(value = "Returns: month in which every open debt gets closed if all debtors paid the same amount monthly, as CSV or newline delimited JSON")
+    @ApiResponses(
+            value = {
+                    @ApiResponse(code = 200, message = "Projection of all debts is streamed"),
+                    @ApiResponse(code = 400, message = "Monthly payment, number of months or format is not valid")
+            }
+    )
+    @RequestMapping(consumes = MediaType.APPLICATION_JSON, method = RequestMethod.POST)
+    public ResponseEntity<StreamingResponseBody> getRepaymentProjection(@RequestBody RepaymentProjectionRequest request,
+                                                                        @RequestParam(defaultValue = "ndjson") String format) {
+        ProjectionFormat projectionFormat = Arrays.stream(ProjectionFormat.values())
+                .filter(f -> f.name().equalsIgnoreCase(format))
+                .findFirst()
+                .orElse(null);
+        if (projectionFormat == null || !repaymentProjectionService.isValidRequest(request)) {
+            return ResponseEntity.badRequest().build();
+        }
+        StreamingResponseBody responseBody = outputStream -> repaymentProjectionService.writeProjection(request, projectionFormat, outputStream);
+        return ResponseEntity.ok().header(HttpHeaders.CONTENT_TYPE, projectionFormat.getContentType()).body(responseBody);
+    }
+}
@@ -0,0 +1,77 @@
+package pl.sii.eu.micuenta.controller;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs request handling of one class of endpoints on its own fixed number of threads with a bounded queue,
+ * so the servlet container thread is released while the work waits and runs. Work submitted to a full queue
+ * is rejected right away instead of waiting for a thread.
+ */
+public class RequestExecutor {
+
+    private final String name;
+    private final int queueCapacity;
+    private final ThreadPoolExecutor executor;
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private final AtomicInteger largestQueueDepth = new AtomicInteger();
+
+    public RequestExecutor(String name, int threads, int queueCapacity) {
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, name + "-request-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Returns future completed with the result or with the exception thrown by the work as it is,
+     * or failed with {@link RejectedExecutionException} when the queue is full.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> work) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long submittedAt = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                queueWaitNanos.add(System.nanoTime() - submittedAt);
+                try {
+                    result.complete(work.get());
+                    completed.increment();
+                } catch (RuntimeException | Error e) {
+                    failed.increment();
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            result.completeExceptionally(e);
+            return result;
+        }
+        largestQueueDepth.accumulateAndGet(executor.getQueue().size(), Math::max);
+        return result;
+    }
+
+    public RequestExecutorStats getStats() {
+        long started = completed.sum() + failed.sum();
+        return new RequestExecutorStats(name, executor.getMaximumPoolSize(), executor.getActiveCount(),
+                executor.getQueue().size(), queueCapacity, largestQueueDepth.get(), completed.sum(), failed.sum(),
+                rejected.sum(), started == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(queueWaitNanos.sum() / started));
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,70 @@
+package pl.sii.eu.micuenta.controller;
+
+public class RequestExecutorStats {
+
+    private final String name;
+    private final int threads;
+    private final int activeThreads;
+    private final int queueDepth;
+    private final int queueCapacity;
+    private final int largestQueueDepth;
+    private final long completed;
+    private final long failed;
+    private final long rejected;
+    private final long averageQueueWaitMicros;
+
+    public RequestExecutorStats(String name, int threads, int activeThreads, int queueDepth, int queueCapacity,
+                                int largestQueueDepth, long completed, long failed, long rejected,
+                                long averageQueueWaitMicros) {
+        this.name = name;
+        this.threads = threads;
+        this.activeThreads = activeThreads;
+        this.queueDepth = queueDepth;
+        this.queueCapacity = queueCapacity;
+        this.largestQueueDepth = largestQueueDepth;
+        this.completed = completed;
+        this.failed = failed;
+        this.rejected = rejected;
+        this.averageQueueWaitMicros = averageQueueWaitMicros;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getActiveThreads() {
+        return activeThreads;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public int getLargestQueueDepth() {
+        return largestQueueDepth;
+    }
+
+    public long getCompleted() {
+        return completed;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public long getAverageQueueWaitMicros() {
+        return averageQueueWaitMicros;
+    }
+}
@@ -0,0 +1,159 @@
+package pl.sii.eu.micuenta.controller;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import pl.sii.eu.micuenta.cache.CacheStats;
+import pl.sii.eu.micuenta.cache.CoalescingStats;
+import pl.sii.eu.micuenta.cache.MembershipFilterStats;
+import pl.sii.eu.micuenta.cache.OffHeapStoreStats;
+import pl.sii.eu.micuenta.conf.RequestExecutorConfiguration;
+import pl.sii.eu.micuenta.jms.receiver.CacheInvalidationReceiver;
+import pl.sii.eu.micuenta.jms.receiver.InvalidationBusStats;
+import pl.sii.eu.micuenta.repository.CreditCardVault;
+import pl.sii.eu.micuenta.repository.CreditorTotals;
+import pl.sii.eu.micuenta.repository.CreditorTotalsStore;
+import pl.sii.eu.micuenta.repository.KnownSsnFilter;
+import pl.sii.eu.micuenta.service.BalanceResponseCache;
+import pl.sii.eu.micuenta.service.BatchPaymentPlanService;
+import pl.sii.eu.micuenta.service.BatchPaymentPlanStats;
+import pl.sii.eu.micuenta.service.DataDebtorService;
+import pl.sii.eu.micuenta.service.PaymentPlanService;
+import pl.sii.eu.micuenta.service.PaymentPlanStore;
+import pl.sii.eu.micuenta.service.ProjectionStats;
+import pl.sii.eu.micuenta.service.RepaymentProjectionService;
+
+import javax.ws.rs.core.MediaType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@Api(value = "StatsController",
+        produces = "runtime statistics",
+        description = "StatsController class exposes cache and performance counters")
+@RestController
+@RequestMapping("/stats")
+public class StatsController {
+
+    private final DataDebtorService dataDebtorService;
+    private final KnownSsnFilter knownSsnFilter;
+    private final BalanceResponseCache balanceResponseCache;
+    private final PaymentPlanService paymentPlanService;
+    private final CacheInvalidationReceiver cacheInvalidationReceiver;
+    private final PaymentPlanStore paymentPlanStore;
+    private final BatchPaymentPlanService batchPaymentPlanService;
+    private final RepaymentProjectionService repaymentProjectionService;
+    private final CreditorTotalsStore creditorTotalsStore;
+    private final CreditCardVault creditCardVault;
+    private final List<RequestExecutor> requestExecutors;
+
+    public StatsController(DataDebtorService dataDebtorService,
+                           KnownSsnFilter knownSsnFilter,
+                           BalanceResponseCache balanceResponseCache,
+                           PaymentPlanService paymentPlanService,
+                           CacheInvalidationReceiver cacheInvalidationReceiver,
+                           PaymentPlanStore paymentPlanStore,
+                           BatchPaymentPlanService batchPaymentPlanService,
+                           RepaymentProjectionService repaymentProjectionService,
+                           CreditorTotalsStore creditorTotalsStore,
+                           CreditCardVault creditCardVault,
+                           @Qualifier(RequestExecutorConfiguration.READ_EXECUTOR) RequestExecutor readExecutor,
+                           @Qualifier(RequestExecutorConfiguration.PLAN_EXECUTOR) RequestExecutor planExecutor,
+                           @Qualifier(RequestExecutorConfiguration.WRITE_EXECUTOR) RequestExecutor writeExecutor,
+                           @Qualifier(RequestExecutorConfiguration.SNAPSHOT_EXECUTOR) RequestExecutor snapshotExecutor) {
+        this.dataDebtorService = dataDebtorService;
+        this.knownSsnFilter = knownSsnFilter;
+        this.balanceResponseCache = balanceResponseCache;
+        this.paymentPlanService = paymentPlanService;
+        this.cacheInvalidationReceiver = cacheInvalidationReceiver;
+        this.paymentPlanStore = paymentPlanStore;
+        this.batchPaymentPlanService = batchPaymentPlanService;
+        this.repaymentProjectionService = repaymentProjectionService;
+        this.creditorTotalsStore = creditorTotalsStore;
+        this.creditCardVault = creditCardVault;
+        this.requestExecutors = Arrays.asList(readExecutor, planExecutor, writeExecutor, snapshotExecutor);
+    }
+
+    @ApiOperation(value = "Returns: hit, miss and eviction counters of debtor aggregate cache")
+    @RequestMapping(value = "/cache/debtors", produces = MediaType.APPLICATION_JSON, method = RequestMethod.GET)
+    public CacheStats getDebtorCacheStats() {
+        return dataDebtorService.getCacheStats();
+    }
+
+    @ApiOperation(value = "Returns: memory usage and decode latency of off-heap debtor store")
+    @RequestMapping(value = "/cache/debtors/off-heap", produces = MediaType.APPLICATION_JSON, method = RequestMethod.GET)
+    public OffHeapStoreStats getOffHeapDebtorStoreStats() {
+        return dataDebtorService.getOffHeapStats();
+    }
+
+    @ApiOperation(value = "Returns: memory footprint and false positive rate of known ssn filter used by login")
+    @RequestMapping(value = "/login/ssn-filter", produces = MediaType.APPLICATION_JSON, method = RequestMethod.GET)
+    public MembershipFilterStats getKnownSsnFilterStats() {
+        return knownSsnFilter.getStats();
+    }
+
+    @ApiOperation(value = "Returns: hit, miss and eviction counters of serialized balance responses")
+    @RequestMapping(value = "/cache/balances", produces = MediaType.APPLICATION_JSON, method = RequestMethod.GET)
+    public CacheStats getBalanceCacheStats() {
+        return balanceResponseCache.getStats();
+    }
+
+    @ApiOperation(value = "Returns: hit, miss and eviction counters of card vault ids looked up by card fingerprint")
+    @RequestMapping(value = "/cache/cards", produces = MediaType.APPLICATION_JSON, method = RequestMethod.GET)
+    public CacheStats getCardVaultCacheStats() {
+        return creditCardVault.getStats();
+    }
+
+    @ApiOperation(value = "Returns: number of debtor lookups executed and coalesced with a concurrent identical lookup")
+    @RequestMapping(value = "/coalescing/debtors", produces = MediaType.APPLICATION_JSON, method = RequestMethod.GET)
+    public CoalescingStats getDebtorLookupCoalescingStats() {
+        return dataDebtorService.getCoalescingStats();
+    }
+
+    @ApiOperation(value = "Returns: number of payment plans computed and coalesced with a concurrent identical computation")
+    @RequestMapping(value = "/coalescing/paymentplans", produces = MediaType.APPLICATION_JSON, method = RequestMethod.GET)
+    public CoalescingStats getPaymentPlanCoalescingStats() {
+        return paymentPlanService.getCoalescingStats();
+    }
+
+    @ApiOperation(value = "Returns: published and received cache invalidations between application nodes with their lag")
+    @RequestMapping(value = "/cache/invalidations", produces = MediaType.APPLICATION_JSON, method = RequestMethod.GET)
+    public InvalidationBusStats getCacheInvalidationStats() {
+        return cacheInvalidationReceiver.getStats();
+    }
+
+    @ApiOperation(value = "Returns: number of confirmations which found their stored payment plan and of expired plans")
+    @RequestMapping(value = "/paymentplans/store", produces = MediaType.APPLICATION_JSON, method = RequestMethod.GET)
+    public CacheStats getPaymentPlanStoreStats() {
+        return paymentPlanStore.getStats();
+    }
+
+    @ApiOperation(value = "Returns: parallelism and throughput of batch payment plan computations")
+    @RequestMapping(value = "/paymentplans/batch", produces = MediaType.APPLICATION_JSON, method = RequestMethod.GET)
+    public BatchPaymentPlanStats getBatchPaymentPlanStats() {
+        return batchPaymentPlanService.getStats();
+    }
+
+    @ApiOperation(value = "Returns: size and phase timings of the last repayment projection")
+    @RequestMapping(value = "/projection", produces = MediaType.APPLICATION_JSON, method = RequestMethod.GET)
+    public ProjectionStats getRepaymentProjectionStats() {
+        return repaymentProjectionService.getLastRunStats();
+    }
+
+    @ApiOperation(value = "Returns: outstanding totals per creditor and paid totals per payment client")
+    @RequestMapping(value = "/creditors", produces = MediaType.APPLICATION_JSON, method = RequestMethod.GET)
+    public CreditorTotals getCreditorTotals() {
+        return creditorTotalsStore.getTotals();
+    }
+
+    @ApiOperation(value = "Returns: threads, queue depth and rejected requests of read, plan and write request executors")
+    @RequestMapping(value = "/executors", produces = MediaType.APPLICATION_JSON, method = RequestMethod.GET)
+    public List<RequestExecutorStats> getRequestExecutorStats() {
+        List<RequestExecutorStats> stats = new ArrayList<>();
+        requestExecutors.forEach(executor -> stats.add(executor.getStats()));
+        return stats;
+    }
+}
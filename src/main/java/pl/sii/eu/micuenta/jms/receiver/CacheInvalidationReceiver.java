@@ -0,0 +1,57 @@
+package pl.sii.eu.micuenta.jms.receiver;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jms.annotation.JmsListener;
+import org.springframework.stereotype.Component;
+import pl.sii.eu.micuenta.conf.MessagingConfiguration;
+import pl.sii.eu.micuenta.jms.sender.CacheInvalidationSender;
+import pl.sii.eu.micuenta.repository.DebtorAggregateChangedEvent;
+
+import javax.jms.JMSException;
+import javax.jms.TextMessage;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drops cached debtor aggregates changed on other application nodes. Messages sent by this node are ignored,
+ * its caches were already invalidated when the change was made.
+ */
+@Component
+public class CacheInvalidationReceiver {
+
+    private final CacheInvalidationSender cacheInvalidationSender;
+    private final ApplicationEventPublisher eventPublisher;
+    private final LongAdder received = new LongAdder();
+    private final LongAdder ownIgnored = new LongAdder();
+    private final LongAdder lagMillis = new LongAdder();
+    private final AtomicLong maxLagMillis = new AtomicLong();
+
+    public CacheInvalidationReceiver(CacheInvalidationSender cacheInvalidationSender, ApplicationEventPublisher eventPublisher) {
+        this.cacheInvalidationSender = cacheInvalidationSender;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @JmsListener(destination = CacheInvalidationSender.TOPIC,
+            containerFactory = MessagingConfiguration.TOPIC_LISTENER_CONTAINER_FACTORY)
+    public void consume(TextMessage textMessage) throws JMSException {
+        if (cacheInvalidationSender.getNodeId().equals(textMessage.getStringProperty(CacheInvalidationSender.ORIGIN_PROPERTY))) {
+            ownIgnored.increment();
+            return;
+        }
+        String ssn = textMessage.getText();
+        eventPublisher.publishEvent(DebtorAggregateChangedEvent.fromRemoteNode(ssn == null || ssn.isEmpty() ? null : ssn));
+
+        long lag = Math.max(0, System.currentTimeMillis() - textMessage.getLongProperty(CacheInvalidationSender.SENT_AT_PROPERTY));
+        lagMillis.add(lag);
+        maxLagMillis.accumulateAndGet(lag, Math::max);
+        received.increment();
+    }
+
+    public InvalidationBusStats getStats() {
+        long receivedCount = received.sum();
+        return new InvalidationBusStats(cacheInvalidationSender.getNodeId(),
+                cacheInvalidationSender.getPublishedCount(), cacheInvalidationSender.getFailedCount(),
+                receivedCount, ownIgnored.sum(),
+                receivedCount == 0 ? 0 : lagMillis.sum() / receivedCount, maxLagMillis.get());
+    }
+}
@@ -0,0 +1,51 @@
+package pl.sii.eu.micuenta.jms.receiver;
+
+public class InvalidationBusStats {
+
+    private final String nodeId;
+    private final long published;
+    private final long publishFailures;
+    private final long received;
+    private final long ownIgnored;
+    private final long averageLagMillis;
+    private final long maxLagMillis;
+
+    public InvalidationBusStats(String nodeId, long published, long publishFailures, long received, long ownIgnored,
+                                long averageLagMillis, long maxLagMillis) {
+        this.nodeId = nodeId;
+        this.published = published;
+        this.publishFailures = publishFailures;
+        this.received = received;
+        this.ownIgnored = ownIgnored;
+        this.averageLagMillis = averageLagMillis;
+        this.maxLagMillis = maxLagMillis;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public long getPublished() {
+        return published;
+    }
+
+    public long getPublishFailures() {
+        return publishFailures;
+    }
+
+    public long getReceived() {
+        return received;
+    }
+
+    public long getOwnIgnored() {
+        return ownIgnored;
+    }
+
+    public long getAverageLagMillis() {
+        return averageLagMillis;
+    }
+
+    public long getMaxLagMillis() {
+        return maxLagMillis;
+    }
+}
@@ -0,0 +1,77 @@
+package pl.sii.eu.micuenta.jms.sender;
+
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jms.JmsException;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import pl.sii.eu.micuenta.repository.DebtorAggregateChangedEvent;
+
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Broadcasts committed debtor aggregate changes to all application nodes, so they drop their cached copies.
+ * The message body is the SSN, empty for a change of all debtors.
+ */
+@Component
+public class CacheInvalidationSender {
+
+    public static final String TOPIC = "jms.topic.cache.invalidation";
+    public static final String ORIGIN_PROPERTY = "origin";
+    public static final String SENT_AT_PROPERTY = "sentAt";
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheInvalidationSender.class);
+
+    private final JmsTemplate jmsTemplate;
+    private final String nodeId;
+    private final ActiveMQTopic topic = new ActiveMQTopic(TOPIC);
+    private final LongAdder published = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public CacheInvalidationSender(JmsTemplate jmsTemplate,
+                                   @Value("${micuenta.node-id:#{T(java.util.UUID).randomUUID().toString()}}") String nodeId) {
+        this.jmsTemplate = jmsTemplate;
+        this.nodeId = nodeId;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void afterDebtorAggregateChangeCommitted(DebtorAggregateChangedEvent event) {
+        if (event.isRemote()) {
+            return;
+        }
+        String ssn = event.isAllDebtors() ? "" : event.getSsn();
+        try {
+            jmsTemplate.send(topic, (Session session) -> {
+                TextMessage textMessage = new ActiveMQTextMessage();
+                textMessage.setText(ssn);
+                textMessage.setStringProperty(ORIGIN_PROPERTY, nodeId);
+                textMessage.setLongProperty(SENT_AT_PROPERTY, System.currentTimeMillis());
+                return textMessage;
+            });
+            published.increment();
+        } catch (JmsException e) {
+            failed.increment();
+            logger.warn("Cache invalidation of debtor {} could not be broadcast.", ssn, e);
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public long getPublishedCount() {
+        return published.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+}
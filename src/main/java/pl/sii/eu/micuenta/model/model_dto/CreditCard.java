@@ -33,6 +33,21 @@ public class CreditCard implements Serializable {
         return creditCard;
     }
 
+    /**
+     * Card number with all but the last four digits replaced by '*'.
+     */
+    public static String maskCcNumber(String ccNumber) {
+        if (ccNumber == null) {
+            return null;
+        }
+        int visibleFrom = Math.max(0, ccNumber.length() - 4);
+        StringBuilder masked = new StringBuilder(ccNumber.length());
+        for (int i = 0; i < visibleFrom; i++) {
+            masked.append('*');
+        }
+        return masked.append(ccNumber, visibleFrom, ccNumber.length()).toString();
+    }
+
     public CreditCard() {
     }
 
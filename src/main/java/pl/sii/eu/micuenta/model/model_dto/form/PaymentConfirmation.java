@@ -9,6 +9,7 @@ public class PaymentConfirmation {
     private PaymentDeclaration paymentDeclaration;
     private String clientId;
     private CreditCard creditCard;
+    private String planId;
 
     public PaymentConfirmation() {
     }
@@ -19,6 +20,11 @@ public class PaymentConfirmation {
         this.creditCard = creditCard;
     }
 
+    public PaymentConfirmation(PaymentDeclaration paymentDeclaration, String clientId, CreditCard creditCard, String planId) {
+        this(paymentDeclaration, clientId, creditCard);
+        this.planId = planId;
+    }
+
     public PaymentDeclaration getPaymentDeclaration() {
         return paymentDeclaration;
     }
@@ -43,6 +49,14 @@ public class PaymentConfirmation {
         this.creditCard = creditCard;
     }
 
+    public String getPlanId() {
+        return planId;
+    }
+
+    public void setPlanId(String planId) {
+        this.planId = planId;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -50,12 +64,13 @@ public class PaymentConfirmation {
         PaymentConfirmation that = (PaymentConfirmation) o;
         return Objects.equals(getPaymentDeclaration(), that.getPaymentDeclaration()) &&
                 Objects.equals(getClientId(), that.getClientId()) &&
-                Objects.equals(getCreditCard(), that.getCreditCard());
+                Objects.equals(getCreditCard(), that.getCreditCard()) &&
+                Objects.equals(getPlanId(), that.getPlanId());
     }
 
     @Override
     public int hashCode() {
 
-        return Objects.hash(getPaymentDeclaration(), getClientId(), getCreditCard());
+        return Objects.hash(getPaymentDeclaration(), getClientId(), getCreditCard(), getPlanId());
     }
 }
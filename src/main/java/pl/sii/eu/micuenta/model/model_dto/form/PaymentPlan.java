@@ -1,5 +1,6 @@
 package pl.sii.eu.micuenta.model.model_dto.form;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
@@ -8,6 +9,7 @@ public class PaymentPlan {
     private String message;
     private String ssn;
     private List<PlannedPayment> plannedPaymentList;
+    private String planId;
 
     public PaymentPlan() {
     }
@@ -18,6 +20,22 @@ public class PaymentPlan {
         this.plannedPaymentList = plannedPaymentList;
     }
 
+    /**
+     * Copy with its own list of planned payments, to hand one computed plan to several callers.
+     */
+    public static PaymentPlan copyOf(PaymentPlan paymentPlan) {
+        List<PlannedPayment> plannedPaymentList = null;
+        if (paymentPlan.getPlannedPaymentList() != null) {
+            plannedPaymentList = new ArrayList<>(paymentPlan.getPlannedPaymentList().size());
+            for (PlannedPayment plannedPayment : paymentPlan.getPlannedPaymentList()) {
+                plannedPaymentList.add(new PlannedPayment(plannedPayment.getUuid(), plannedPayment.getAmountOfRepaymentDebt()));
+            }
+        }
+        PaymentPlan copy = new PaymentPlan(paymentPlan.getMessage(), paymentPlan.getSsn(), plannedPaymentList);
+        copy.setPlanId(paymentPlan.getPlanId());
+        return copy;
+    }
+
     public String getMessage() {
         return message;
     }
@@ -42,6 +60,18 @@ public class PaymentPlan {
         this.plannedPaymentList = plannedPaymentList;
     }
 
+    /**
+     * Id under which the planned payments are kept for a short time, a confirmation quoting it applies them
+     * as planned. Identifies the stored copy only, so it is not part of equality.
+     */
+    public String getPlanId() {
+        return planId;
+    }
+
+    public void setPlanId(String planId) {
+        this.planId = planId;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,38 @@
+package pl.sii.eu.micuenta.model.model_dto.form;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+public class PaymentPlanRule {
+
+    private BigDecimal paymentAmount;
+
+    public PaymentPlanRule() {
+    }
+
+    public PaymentPlanRule(BigDecimal paymentAmount) {
+        this.paymentAmount = paymentAmount;
+    }
+
+    public BigDecimal getPaymentAmount() {
+        return paymentAmount;
+    }
+
+    public void setPaymentAmount(BigDecimal paymentAmount) {
+        this.paymentAmount = paymentAmount;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PaymentPlanRule)) return false;
+        PaymentPlanRule that = (PaymentPlanRule) o;
+        return Objects.equals(getPaymentAmount(), that.getPaymentAmount());
+    }
+
+    @Override
+    public int hashCode() {
+
+        return Objects.hash(getPaymentAmount());
+    }
+}
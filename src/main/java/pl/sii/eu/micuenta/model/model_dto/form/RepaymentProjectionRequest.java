@@ -0,0 +1,49 @@
+package pl.sii.eu.micuenta.model.model_dto.form;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+public class RepaymentProjectionRequest {
+
+    private BigDecimal monthlyPayment;
+    private int months;
+
+    public RepaymentProjectionRequest() {
+    }
+
+    public RepaymentProjectionRequest(BigDecimal monthlyPayment, int months) {
+        this.monthlyPayment = monthlyPayment;
+        this.months = months;
+    }
+
+    public BigDecimal getMonthlyPayment() {
+        return monthlyPayment;
+    }
+
+    public void setMonthlyPayment(BigDecimal monthlyPayment) {
+        this.monthlyPayment = monthlyPayment;
+    }
+
+    public int getMonths() {
+        return months;
+    }
+
+    public void setMonths(int months) {
+        this.months = months;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RepaymentProjectionRequest)) return false;
+        RepaymentProjectionRequest that = (RepaymentProjectionRequest) o;
+        return getMonths() == that.getMonths() &&
+                Objects.equals(getMonthlyPayment(), that.getMonthlyPayment());
+    }
+
+    @Override
+    public int hashCode() {
+
+        return Objects.hash(getMonthlyPayment(), getMonths());
+    }
+}
@@ -0,0 +1,48 @@
+package pl.sii.eu.micuenta.model.model_entity;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Objects;
+
+/**
+ * Keyed HMAC-SHA256 of a card number, so the vault can find a card without keeping a digest that could be
+ * brute forced from the small card number space. The key is installed once at startup, see
+ * {@link pl.sii.eu.micuenta.conf.CardFingerprintKey}.
+ */
+public final class CardFingerprint {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static volatile SecretKeySpec key;
+
+    private CardFingerprint() {
+    }
+
+    public static void configure(String secret) {
+        if (secret == null || secret.isEmpty()) {
+            throw new IllegalArgumentException("Card fingerprint key must not be empty.");
+        }
+        key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+    }
+
+    public static String of(String ccNumber) {
+        SecretKeySpec fingerprintKey = key;
+        if (fingerprintKey == null) {
+            throw new IllegalStateException("Card fingerprint key has not been configured.");
+        }
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(fingerprintKey);
+            byte[] digest = mac.doFinal(Objects.toString(ccNumber, "").getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available.", e);
+        }
+    }
+}
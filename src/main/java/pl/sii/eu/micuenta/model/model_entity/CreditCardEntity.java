@@ -1,21 +1,39 @@
 package pl.sii.eu.micuenta.model.model_entity;
 
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 import org.springframework.format.annotation.DateTimeFormat;
 import pl.sii.eu.micuenta.model.model_dto.CreditCard;
 
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.NamedQuery;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.Table;
 import java.io.Serializable;
 import java.time.LocalDate;
 import java.util.Objects;
 
 @Entity
+@NamedQuery(
+        name = "findCreditCardByFingerprint",
+        query = "select c from CreditCardEntity c where c.fingerprint = :fingerprint"
+)
+@Table(indexes = @Index(name = "IDX_CARD_FINGERPRINT", columnList = "fingerprint", unique = true))
 public class CreditCardEntity implements Serializable {
 
+    public static final String SEQUENCE_NAME = "CREDIT_CARD_ENTITY_SEQ";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = SEQUENCE_NAME)
+    @GenericGenerator(name = SEQUENCE_NAME, strategy = PooledSequenceGenerator.STRATEGY,
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = SEQUENCE_NAME))
     private Long id;
     private String ccNumber;
     private String cvv;
@@ -24,6 +42,8 @@ public class CreditCardEntity implements Serializable {
     private String issuingNetwork;
     @DateTimeFormat(pattern = "yyyy-MM-dd")
     private LocalDate expDate;
+    @Column(length = 64)
+    private String fingerprint;
 
     public static CreditCardEntity convertFromCreditCard(CreditCard creditCard) {
 
@@ -108,6 +128,23 @@ public class CreditCardEntity implements Serializable {
         this.expDate = expDate;
     }
 
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    @PrePersist
+    @PreUpdate
+    public void updateFingerprint() {
+        this.fingerprint = computeFingerprint();
+    }
+
+    /**
+     * Vault key of the card. Only the card number is fingerprinted, the CVV never leaves this row.
+     */
+    public String computeFingerprint() {
+        return CardFingerprint.of(ccNumber);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
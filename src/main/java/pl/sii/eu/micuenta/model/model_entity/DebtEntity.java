@@ -1,11 +1,16 @@
 package pl.sii.eu.micuenta.model.model_entity;
 
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 import org.springframework.format.annotation.DateTimeFormat;
 import pl.sii.eu.micuenta.model.model_dto.Debt;
 
 import javax.persistence.*;
 import java.io.Serializable;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.util.Collections;
 import java.util.HashSet;
@@ -13,19 +18,33 @@ import java.util.Objects;
 import java.util.Set;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "IDX_DEBT_UUID", columnList = "uuid"),
+        @Index(name = "IDX_DEBT_DEBTOR", columnList = "debtorEntity_id")
+})
 public class DebtEntity implements Serializable {
 
+    public static final String SEQUENCE_NAME = "DEBT_ENTITY_SEQ";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = SEQUENCE_NAME)
+    @GenericGenerator(name = SEQUENCE_NAME, strategy = PooledSequenceGenerator.STRATEGY,
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = SEQUENCE_NAME))
     private Long id;
     private BigDecimal debtAmount;
     @DateTimeFormat(pattern = "yyyy-MM-dd")
     private LocalDate repaymentDate;
     private String uuid;
     private String debtName;
+    // totals are only ever incremented in the database by PaymentLedgerRepository, never written back from a loaded debt
+    @Column(updatable = false)
+    private BigDecimal paidAmount = BigDecimal.ZERO.setScale(2, RoundingMode.HALF_EVEN);
+    @Column(updatable = false)
+    private BigDecimal remainingAmount;
+    private transient volatile Long remainingCents;
     @ManyToOne
     private DebtorEntity debtorEntity;
-    @OneToMany(mappedBy = "debtEntity", fetch = FetchType.EAGER, cascade = CascadeType.ALL)
+    @OneToMany(mappedBy = "debtEntity", fetch = FetchType.LAZY, cascade = CascadeType.ALL)
     private Set<PaymentEntity> paymentEntities  = Collections.emptySet();
 
     public static DebtEntity convertFromDebt(Debt debt) {
@@ -41,6 +60,7 @@ public class DebtEntity implements Serializable {
         debt.getPayments().forEach(p -> paymentEntities.add(
                 PaymentEntity.convertFromPayment(p)));
         debtEntity.setPaymentEntities(paymentEntities);
+        debtEntity.recalculatePaidAmount();
 
         return debtEntity;
     }
@@ -57,6 +77,7 @@ public class DebtEntity implements Serializable {
         for (PaymentEntity paymentEntity : this.paymentEntities) {
             paymentEntity.setDebtEntity(this);
         }
+        recalculatePaidAmount();
     }
 
     public Long getId() {
@@ -73,6 +94,8 @@ public class DebtEntity implements Serializable {
 
     public void setDebtAmount(BigDecimal debtAmount) {
         this.debtAmount = debtAmount;
+        this.remainingAmount = debtAmount == null ? null : debtAmount.subtract(paidAmount);
+        this.remainingCents = null;
     }
 
     public LocalDate getRepaymentDate() {
@@ -99,6 +122,36 @@ public class DebtEntity implements Serializable {
         this.debtName = debtName;
     }
 
+    public BigDecimal getPaidAmount() {
+        return paidAmount;
+    }
+
+    public void setPaidAmount(BigDecimal paidAmount) {
+        this.paidAmount = paidAmount;
+        this.remainingAmount = debtAmount == null ? null : debtAmount.subtract(paidAmount);
+        this.remainingCents = null;
+    }
+
+    public BigDecimal getRemainingAmount() {
+        return remainingAmount;
+    }
+
+    /**
+     * Remaining amount in cents, converted once per change of the totals. Fails with {@link ArithmeticException}
+     * when it does not fit into {@code long} cents and with {@link IllegalStateException} when the debt has no amount.
+     */
+    public long getRemainingCents() {
+        Long cents = remainingCents;
+        if (cents == null) {
+            if (remainingAmount == null) {
+                throw new IllegalStateException("Debt " + uuid + " has no remaining amount.");
+            }
+            cents = remainingAmount.setScale(2, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+            remainingCents = cents;
+        }
+        return cents;
+    }
+
     public DebtorEntity getDebtorEntity() {
         return debtorEntity;
     }
@@ -115,9 +168,40 @@ public class DebtEntity implements Serializable {
         this.paymentEntities = new HashSet<>(paymentEntities);
     }
 
-    public void addToSetOfPaymentEntities(PaymentEntity paymentEntity) {
+    /**
+     * Adds the payment and moves paid-to-date totals. When the debt was loaded without its payments
+     * (see {@link DebtorEntity#PAYMENT_UPDATE_GRAPH}) the lazy set is left uninitialized and only the totals
+     * change, the payment itself has to be persisted by the caller.
+     */
+    public boolean addToSetOfPaymentEntities(PaymentEntity paymentEntity) {
         paymentEntity.setDebtEntity(this);
-        this.paymentEntities.add(paymentEntity);
+        if (!Hibernate.isInitialized(this.paymentEntities) || this.paymentEntities.add(paymentEntity)) {
+            setPaidAmount(paidAmount.add(paymentEntity.getPaymentAmount()));
+            if (debtorEntity != null && isPaidOff()) {
+                debtorEntity.debtPaidOff(this);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * A debt without remaining amount is not valid, see {@link #getRemainingCents()}.
+     */
+    public boolean isPaidOff() {
+        return getRemainingCents() <= 0;
+    }
+
+    /**
+     * Rebuilds paid-to-date totals from the loaded payment set. Regular updates go through
+     * {@link #addToSetOfPaymentEntities(PaymentEntity)}, this is meant for freshly assembled debts.
+     */
+    public void recalculatePaidAmount() {
+        setPaidAmount(paymentEntities
+                .stream()
+                .map(PaymentEntity::getPaymentAmount)
+                .reduce(BigDecimal.ZERO, BigDecimal::add)
+                .setScale(2, RoundingMode.HALF_EVEN));
     }
 
     @Override
@@ -134,7 +218,7 @@ public class DebtEntity implements Serializable {
 
     @Override
     public int hashCode() {
-
-        return Objects.hash(getDebtAmount(), getRepaymentDate(), getUuid(), getDebtName(), getPaymentEntities());
+        // payments are left out on purpose, hashing a debt must not initialize its lazy payment set
+        return Objects.hash(getDebtAmount(), getRepaymentDate(), getUuid(), getDebtName());
     }
 }
@@ -1,11 +1,19 @@
 package pl.sii.eu.micuenta.model.model_entity;
 
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 import pl.sii.eu.micuenta.model.model_dto.Debtor;
 
 import javax.persistence.*;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
@@ -17,19 +25,57 @@ import java.util.Set;
         @NamedQuery(
                 name = "findFirstBySsnFirstNameLastName",
                 query = "select d from DebtorEntity d where d.ssn =:ssn and d.firstName =:firstName and d.lastName =:lastName"
+        ),
+        @NamedQuery(
+                name = "findAllBySsnIn",
+                query = "select distinct d from DebtorEntity d left join fetch d.debtEntities de " +
+                        "left join fetch de.paymentEntities p left join fetch p.creditCardEntity where d.ssn in :ssns"
+        ),
+        @NamedQuery(
+                name = "findAllWithDebtsBySsnIn",
+                query = "select distinct d from DebtorEntity d left join fetch d.debtEntities where d.ssn in :ssns"
+        )
+})
+@Table(indexes = {
+        @Index(name = "IDX_DEBTOR_SSN", columnList = "ssn", unique = true),
+        @Index(name = "IDX_DEBTOR_LOGIN", columnList = "ssn, firstName, lastName")
+})
+@NamedEntityGraphs({
+        @NamedEntityGraph(name = DebtorEntity.LOGIN_GRAPH),
+        @NamedEntityGraph(
+                name = DebtorEntity.BALANCE_GRAPH,
+                attributeNodes = @NamedAttributeNode(value = "debtEntities", subgraph = "debtsWithPayments"),
+                subgraphs = {
+                        @NamedSubgraph(name = "debtsWithPayments",
+                                attributeNodes = @NamedAttributeNode(value = "paymentEntities", subgraph = "paymentsWithCards")),
+                        @NamedSubgraph(name = "paymentsWithCards",
+                                attributeNodes = @NamedAttributeNode("creditCardEntity"))
+                }
+        ),
+        @NamedEntityGraph(
+                name = DebtorEntity.PAYMENT_UPDATE_GRAPH,
+                attributeNodes = @NamedAttributeNode("debtEntities")
         )
 })
 @Entity
 public class DebtorEntity implements Serializable {
 
+    public static final String LOGIN_GRAPH = "DebtorEntity.login";
+    public static final String BALANCE_GRAPH = "DebtorEntity.balance";
+    public static final String PAYMENT_UPDATE_GRAPH = "DebtorEntity.paymentUpdate";
+    public static final String SEQUENCE_NAME = "DEBTOR_ENTITY_SEQ";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = SEQUENCE_NAME)
+    @GenericGenerator(name = SEQUENCE_NAME, strategy = PooledSequenceGenerator.STRATEGY,
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = SEQUENCE_NAME))
     private Long id;
     private String firstName;
     private String lastName;
     private String ssn;
-    @OneToMany(mappedBy = "debtorEntity", fetch = FetchType.EAGER, cascade = CascadeType.ALL)
+    @OneToMany(mappedBy = "debtorEntity", fetch = FetchType.LAZY, cascade = CascadeType.ALL)
     private Set<DebtEntity> debtEntities = Collections.emptySet();
+    private transient volatile RepaymentOrder repaymentOrder;
 
     public static DebtorEntity convertFromDebtor(Debtor debtor) {
 
@@ -98,11 +144,50 @@ public class DebtorEntity implements Serializable {
 
     public void setDebtEntities(Set<DebtEntity> debtEntities) {
         this.debtEntities = new HashSet<>(debtEntities);
+        for (DebtEntity debtEntity : this.debtEntities) {
+            debtEntity.setDebtorEntity(this);
+        }
+        this.repaymentOrder = null;
     }
 
     public void addToSetOfDebtEntities(DebtEntity debtEntity) {
         debtEntity.setDebtorEntity(this);
         this.debtEntities.add(debtEntity);
+        this.repaymentOrder = null;
+    }
+
+    /**
+     * Debts which are not paid off yet, oldest repayment date first. The order is computed once per loaded
+     * aggregate and debts leave it as soon as a payment closes them, the returned list is a snapshot.
+     * The order itself is immutable and replaced as a whole, so readers need no lock.
+     */
+    public List<DebtEntity> getOpenDebtsByRepaymentDate() {
+        return new ArrayList<>(getRepaymentOrder().openDebts);
+    }
+
+    public DebtEntity findDebtEntityByUuid(String uuid) {
+        return getRepaymentOrder().debtsByUuid.get(uuid);
+    }
+
+    synchronized void debtPaidOff(DebtEntity debtEntity) {
+        RepaymentOrder order = this.repaymentOrder;
+        if (order != null) {
+            this.repaymentOrder = order.withoutOpenDebt(debtEntity);
+        }
+    }
+
+    private RepaymentOrder getRepaymentOrder() {
+        RepaymentOrder order = this.repaymentOrder;
+        if (order == null) {
+            synchronized (this) {
+                order = this.repaymentOrder;
+                if (order == null) {
+                    order = RepaymentOrder.of(debtEntities);
+                    this.repaymentOrder = order;
+                }
+            }
+        }
+        return order;
     }
 
     @Override
@@ -121,4 +206,32 @@ public class DebtorEntity implements Serializable {
 
         return Objects.hash(getFirstName(), getLastName(), getSsn(), getDebtEntities());
     }
+
+    private static final class RepaymentOrder {
+        private final List<DebtEntity> openDebts;
+        private final Map<String, DebtEntity> debtsByUuid;
+
+        private RepaymentOrder(List<DebtEntity> openDebts, Map<String, DebtEntity> debtsByUuid) {
+            this.openDebts = Collections.unmodifiableList(openDebts);
+            this.debtsByUuid = debtsByUuid;
+        }
+
+        private static RepaymentOrder of(Set<DebtEntity> debtEntities) {
+            Map<String, DebtEntity> debtsByUuid = new HashMap<>();
+            List<DebtEntity> openDebts = new ArrayList<>();
+            for (DebtEntity debtEntity : debtEntities) {
+                debtsByUuid.put(debtEntity.getUuid(), debtEntity);
+                if (!debtEntity.isPaidOff()) {
+                    openDebts.add(debtEntity);
+                }
+            }
+            openDebts.sort(Comparator.comparing(DebtEntity::getRepaymentDate));
+            return new RepaymentOrder(openDebts, Collections.unmodifiableMap(debtsByUuid));
+        }
+
+        private RepaymentOrder withoutOpenDebt(DebtEntity debtEntity) {
+            List<DebtEntity> remainingDebts = new ArrayList<>(openDebts);
+            return remainingDebts.remove(debtEntity) ? new RepaymentOrder(remainingDebts, debtsByUuid) : this;
+        }
+    }
 }
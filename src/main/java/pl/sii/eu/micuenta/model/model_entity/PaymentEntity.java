@@ -1,5 +1,8 @@
 package pl.sii.eu.micuenta.model.model_entity;
 
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 import org.springframework.format.annotation.DateTimeFormat;
 import pl.sii.eu.micuenta.model.model_dto.Payment;
 
@@ -10,16 +13,21 @@ import java.time.LocalDate;
 import java.util.Objects;
 
 @Entity
+@Table(indexes = @Index(name = "IDX_PAYMENT_DEBT_DATE", columnList = "debtEntity_id, paymentDate"))
 public class PaymentEntity implements Serializable {
 
+    public static final String SEQUENCE_NAME = "PAYMENT_ENTITY_SEQ";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = SEQUENCE_NAME)
+    @GenericGenerator(name = SEQUENCE_NAME, strategy = PooledSequenceGenerator.STRATEGY,
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = SEQUENCE_NAME))
     private Long id;
     @DateTimeFormat(pattern = "yyyy-MM-dd")
     private LocalDate paymentDate;
     private BigDecimal paymentAmount;
     private String clientId;
-    @OneToOne(cascade = CascadeType.ALL)
+    @ManyToOne(cascade = {CascadeType.PERSIST, CascadeType.MERGE})
     private CreditCardEntity creditCardEntity;
     @ManyToOne
     private DebtEntity debtEntity;
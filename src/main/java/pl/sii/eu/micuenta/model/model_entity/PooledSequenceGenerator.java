@@ -0,0 +1,33 @@
+package pl.sii.eu.micuenta.model.model_entity;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.id.enhanced.StandardOptimizerDescriptor;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Sequence based id generator with pooled-lo optimizer. One sequence call reserves a block of ids,
+ * the block size is read from the {@value #ALLOCATION_SIZE_SETTING} Hibernate setting.
+ */
+public class PooledSequenceGenerator extends SequenceStyleGenerator {
+
+    public static final String STRATEGY = "pl.sii.eu.micuenta.model.model_entity.PooledSequenceGenerator";
+    public static final String ALLOCATION_SIZE_SETTING = "micuenta.id.allocation_size";
+    public static final int DEFAULT_ALLOCATION_SIZE = 50;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        Map settings = serviceRegistry.getService(ConfigurationService.class).getSettings();
+        int allocationSize = ConfigurationHelper.getInt(ALLOCATION_SIZE_SETTING, settings, DEFAULT_ALLOCATION_SIZE);
+
+        params.setProperty(INCREMENT_PARAM, String.valueOf(allocationSize));
+        params.setProperty(OPT_PARAM, StandardOptimizerDescriptor.POOLED_LO.getExternalName());
+        super.configure(type, params, serviceRegistry);
+    }
+}
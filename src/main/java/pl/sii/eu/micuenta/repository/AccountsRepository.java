@@ -1,15 +1,53 @@
 package pl.sii.eu.micuenta.repository;
 
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import pl.sii.eu.micuenta.model.model_entity.DebtorEntity;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface AccountsRepository extends JpaRepository<DebtorEntity, Long> {
 
+    int SSN_CHUNK_SIZE = 500;
+    int STREAM_FETCH_SIZE = 500;
+
+    @EntityGraph(DebtorEntity.BALANCE_GRAPH)
     DebtorEntity findFirstBySsn(String ssn);
 
+    @EntityGraph(DebtorEntity.PAYMENT_UPDATE_GRAPH)
+    DebtorEntity findFirstForPaymentUpdateBySsn(String ssn);
+
+    @EntityGraph(DebtorEntity.LOGIN_GRAPH)
     Optional<DebtorEntity> findFirstBySsnAndFirstNameAndLastName(String ssn, String firstName, String lastName);
-}
\ No newline at end of file
+
+    /**
+     * Implementations query at most {@link #SSN_CHUNK_SIZE} SSN numbers at once.
+     */
+    @Query(name = "findAllBySsnIn")
+    List<DebtorEntity> findAllBySsnIn(@Param("ssns") Collection<String> ssns);
+
+    /**
+     * Debtors with their debts only, paid-to-date totals come from the debt columns. Payments and credit cards
+     * are not read. Implementations query at most {@link #SSN_CHUNK_SIZE} SSN numbers at once.
+     */
+    @Query(name = "findAllWithDebtsBySsnIn")
+    List<DebtorEntity> findAllWithDebtsBySsnIn(@Param("ssns") Collection<String> ssns);
+
+    /**
+     * Streams complete debtors in the order of ids from an open cursor. Has to be consumed and closed
+     * inside a transaction.
+     */
+    @Query("SELECT d FROM DebtorEntity d ORDER BY d.id")
+    @QueryHints({@QueryHint(name = "org.hibernate.fetchSize", value = "" + STREAM_FETCH_SIZE),
+            @QueryHint(name = "org.hibernate.readOnly", value = "true")})
+    Stream<DebtorEntity> streamAll();
+}
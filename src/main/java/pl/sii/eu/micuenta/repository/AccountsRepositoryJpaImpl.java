@@ -5,24 +5,39 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Repository;
+import pl.sii.eu.micuenta.model.model_entity.DebtEntity;
 import pl.sii.eu.micuenta.model.model_entity.DebtorEntity;
+import pl.sii.eu.micuenta.model.model_entity.PaymentEntity;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @Repository
 @Transactional
 public class AccountsRepositoryJpaImpl implements AccountsRepository {
+    private static final String FETCH_GRAPH_HINT = "javax.persistence.fetchgraph";
+
     @PersistenceContext
     private EntityManager em;
 
     public DebtorEntity findFirstBySsn(String ssn) {
-        return em.createNamedQuery("findFirstBySsn", DebtorEntity.class)
-                .setParameter("ssn", ssn)
-                .getSingleResult();
+        return findFirstBySsnWithGraph(ssn, DebtorEntity.BALANCE_GRAPH);
+    }
+
+    public DebtorEntity findFirstForPaymentUpdateBySsn(String ssn) {
+        return findFirstBySsnWithGraph(ssn, DebtorEntity.PAYMENT_UPDATE_GRAPH);
     }
 
     public Optional<DebtorEntity> findFirstBySsnAndFirstNameAndLastName(String ssn, String firstName, String lastName) {
@@ -30,11 +45,107 @@ public class AccountsRepositoryJpaImpl implements AccountsRepository {
                 .setParameter("ssn", ssn)
                 .setParameter("firstName", firstName)
                 .setParameter("lastName", lastName)
+                .setHint(FETCH_GRAPH_HINT, em.getEntityGraph(DebtorEntity.LOGIN_GRAPH))
                 .getResultList()
                 .stream()
                 .findFirst();
     }
 
+    private DebtorEntity findFirstBySsnWithGraph(String ssn, String graphName) {
+        return em.createNamedQuery("findFirstBySsn", DebtorEntity.class)
+                .setParameter("ssn", ssn)
+                .setHint(FETCH_GRAPH_HINT, em.getEntityGraph(graphName))
+                .getSingleResult();
+    }
+
+    public List<DebtorEntity> findAllBySsnIn(Collection<String> ssns) {
+        List<DebtorEntity> debtors = new ArrayList<>();
+        for (List<String> chunk : SsnChunks.of(ssns)) {
+            debtors.addAll(em.createNamedQuery("findAllBySsnIn", DebtorEntity.class)
+                    .setParameter("ssns", chunk)
+                    .getResultList());
+        }
+        return debtors;
+    }
+
+    public List<DebtorEntity> findAllWithDebtsBySsnIn(Collection<String> ssns) {
+        List<DebtorEntity> debtors = new ArrayList<>();
+        for (List<String> chunk : SsnChunks.of(ssns)) {
+            debtors.addAll(em.createNamedQuery("findAllWithDebtsBySsnIn", DebtorEntity.class)
+                    .setParameter("ssns", chunk)
+                    .getResultList());
+        }
+        return debtors;
+    }
+
+    /**
+     * Reads debtors page by page in the order of ids, every page with two queries: a keyset query for ids
+     * and one fetching debtors of those ids with debts, payments and credit cards. Debtors are detached before
+     * they are handed out, so the persistence context does not grow with the number of debtors.
+     * <p>
+     * Pages are read while the stream is consumed, so the caller has to consume it inside its own transaction;
+     * calling it without one fails.
+     */
+    @Transactional(Transactional.TxType.MANDATORY)
+    public Stream<DebtorEntity> streamAll() {
+        Spliterator<DebtorEntity> debtors = new Spliterators.AbstractSpliterator<DebtorEntity>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            private Iterator<DebtorEntity> page = Collections.emptyIterator();
+            private long lastId = Long.MIN_VALUE;
+            private boolean lastPage;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super DebtorEntity> action) {
+                if (!page.hasNext()) {
+                    if (lastPage) {
+                        return false;
+                    }
+                    List<DebtorEntity> next = nextPage(lastId);
+                    lastPage = next.size() < STREAM_FETCH_SIZE;
+                    if (next.isEmpty()) {
+                        return false;
+                    }
+                    lastId = next.get(next.size() - 1).getId();
+                    page = next.iterator();
+                }
+                action.accept(page.next());
+                return true;
+            }
+        };
+        return StreamSupport.stream(debtors, false);
+    }
+
+    private List<DebtorEntity> nextPage(long lastId) {
+        List<Long> ids = em.createQuery("SELECT d.id FROM DebtorEntity d WHERE d.id > :lastId ORDER BY d.id", Long.class)
+                .setParameter("lastId", lastId)
+                .setMaxResults(STREAM_FETCH_SIZE)
+                .getResultList();
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<DebtorEntity> page = em.createQuery("SELECT DISTINCT d FROM DebtorEntity d LEFT JOIN FETCH d.debtEntities de " +
+                "LEFT JOIN FETCH de.paymentEntities p LEFT JOIN FETCH p.creditCardEntity WHERE d.id IN :ids ORDER BY d.id", DebtorEntity.class)
+                .setParameter("ids", ids)
+                .setHint("org.hibernate.readOnly", true)
+                .getResultList();
+        page.forEach(this::detach);
+        return page;
+    }
+
+    /**
+     * Detaching cascades from the debtor to debts and payments, credit cards are detached one by one.
+     */
+    private void detach(DebtorEntity debtorEntity) {
+        for (DebtEntity debtEntity : debtorEntity.getDebtEntities()) {
+            for (PaymentEntity paymentEntity : debtEntity.getPaymentEntities()) {
+                if (paymentEntity.getCreditCardEntity() != null) {
+                    em.detach(paymentEntity.getCreditCardEntity());
+                }
+            }
+        }
+        em.detach(debtorEntity);
+    }
+
     @Override
     public List<DebtorEntity> findAll() {
         throw new UnsupportedOperationException();
@@ -1,68 +1,205 @@
 package pl.sii.eu.micuenta.repository;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
 import org.springframework.stereotype.Repository;
-import pl.sii.eu.micuenta.model.model_entity.CreditCardEntity;
 import pl.sii.eu.micuenta.model.model_entity.DebtEntity;
 import pl.sii.eu.micuenta.model.model_entity.DebtorEntity;
 import pl.sii.eu.micuenta.model.model_entity.PaymentEntity;
+import pl.sii.eu.micuenta.repository.mappers.DebtEntityRowMapper;
+import pl.sii.eu.micuenta.repository.mappers.DebtorEntityGraphExtractor;
 import pl.sii.eu.micuenta.repository.mappers.DebtorEntityRowMapper;
-
-import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.util.*;
+import pl.sii.eu.micuenta.repository.mappers.PaymentEntityRowMapper;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @Repository
 public class AccountsRepositoryNativeImpl implements AccountsRepository {
-    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     private NamedParameterJdbcTemplate jdbcTemplate;
+    private boolean joinedFetch = true;
 
     public AccountsRepositoryNativeImpl(NamedParameterJdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
     }
 
+    @Value("${micuenta.repository.native.joined-fetch:true}")
+    public void setJoinedFetch(boolean joinedFetch) {
+        this.joinedFetch = joinedFetch;
+    }
+
     public DebtorEntity findFirstBySsn(String ssn) {
         MapSqlParameterSource paramSource = new MapSqlParameterSource();
         paramSource.addValue("ssn", ssn);
+        if (joinedFetch) {
+            return findDebtorGraph("WHERE dr.SSN = :ssn", paramSource)
+                    .orElseThrow(() -> new EmptyResultDataAccessException(1));
+        }
         String query = "SELECT ID, FIRST_NAME, LAST_NAME, SSN FROM DEBTOR_ENTITY WHERE SSN = :ssn";
-        DebtorEntity debtorEntity = (DebtorEntity) jdbcTemplate.queryForObject(query, paramSource, new DebtorEntityRowMapper());
+        DebtorEntity debtorEntity = jdbcTemplate.queryForObject(query, paramSource, new DebtorEntityRowMapper());
         debtorEntity.setDebtEntities(this.findDebtEntityById(debtorEntity.getId()));
         return debtorEntity;
     }
 
+    /**
+     * Reads the debtor and its debts only. Paid-to-date totals come from the DEBT_ENTITY columns,
+     * payments and credit cards are not queried.
+     */
+    public DebtorEntity findFirstForPaymentUpdateBySsn(String ssn) {
+        MapSqlParameterSource paramSource = new MapSqlParameterSource();
+        paramSource.addValue("ssn", ssn);
+        String query = "SELECT ID, FIRST_NAME, LAST_NAME, SSN FROM DEBTOR_ENTITY WHERE SSN = :ssn";
+        DebtorEntity debtorEntity = jdbcTemplate.queryForObject(query, paramSource, new DebtorEntityRowMapper());
+        paramSource.addValue("id", debtorEntity.getId());
+        String debtsQuery = "SELECT ID, DEBT_AMOUNT, DEBT_NAME, REPAYMENT_DATE, UUID, PAID_AMOUNT FROM DEBT_ENTITY " +
+                "WHERE DEBTOR_ENTITY_ID = :id";
+        debtorEntity.setDebtEntities(new HashSet<>(jdbcTemplate.query(debtsQuery, paramSource, new DebtEntityRowMapper())));
+        return debtorEntity;
+    }
+
     public Optional<DebtorEntity> findFirstBySsnAndFirstNameAndLastName(String ssn, String firstName, String lastName) {
         MapSqlParameterSource paramSource = new MapSqlParameterSource();
         paramSource.addValue("ssn", ssn);
         paramSource.addValue("firstName", firstName);
         paramSource.addValue("lastName", lastName);
+        if (joinedFetch) {
+            return findDebtorGraph("WHERE dr.SSN = :ssn AND dr.FIRST_NAME = :firstName AND dr.LAST_NAME = :lastName", paramSource);
+        }
         String query = "SELECT ID, FIRST_NAME, LAST_NAME, SSN FROM DEBTOR_ENTITY " +
                 "WHERE SSN = :ssn AND FIRST_NAME = :firstName AND LAST_NAME = :lastName";
 
-        DebtorEntity debtorEntity = (DebtorEntity) jdbcTemplate.queryForObject(query, paramSource, new DebtorEntityRowMapper());
+        DebtorEntity debtorEntity = jdbcTemplate.queryForObject(query, paramSource, new DebtorEntityRowMapper());
         debtorEntity.setDebtEntities(this.findDebtEntityById(debtorEntity.getId()));
         return Optional.ofNullable(debtorEntity);
     }
 
+    public List<DebtorEntity> findAllBySsnIn(Collection<String> ssns) {
+        List<DebtorEntity> debtors = new ArrayList<>();
+        for (List<String> chunk : SsnChunks.of(ssns)) {
+            MapSqlParameterSource paramSource = new MapSqlParameterSource();
+            paramSource.addValue("ssns", chunk);
+            String query = DebtorEntityGraphExtractor.SELECT_DEBTOR_GRAPH + "WHERE dr.SSN IN (:ssns)" + DebtorEntityGraphExtractor.ORDER_BY_DEBTOR_GRAPH;
+            debtors.addAll(jdbcTemplate.query(query, paramSource, new DebtorEntityGraphExtractor()));
+        }
+        return debtors;
+    }
+
+    /**
+     * Two queries per chunk, debtors and then their debts. Paid-to-date totals come from the DEBT_ENTITY columns,
+     * payments and credit cards are not queried.
+     */
+    public List<DebtorEntity> findAllWithDebtsBySsnIn(Collection<String> ssns) {
+        List<DebtorEntity> debtors = new ArrayList<>();
+        for (List<String> chunk : SsnChunks.of(ssns)) {
+            MapSqlParameterSource paramSource = new MapSqlParameterSource();
+            paramSource.addValue("ssns", chunk);
+            String query = "SELECT ID, FIRST_NAME, LAST_NAME, SSN FROM DEBTOR_ENTITY WHERE SSN IN (:ssns)";
+            List<DebtorEntity> found = jdbcTemplate.query(query, paramSource, new DebtorEntityRowMapper());
+            if (found.isEmpty()) {
+                continue;
+            }
+            Map<Long, Set<DebtEntity>> debtsByDebtorId = new HashMap<>();
+            found.forEach(d -> debtsByDebtorId.put(d.getId(), new HashSet<>()));
+            paramSource.addValue("ids", debtsByDebtorId.keySet());
+            String debtsQuery = "SELECT ID, DEBT_AMOUNT, DEBT_NAME, REPAYMENT_DATE, UUID, PAID_AMOUNT, DEBTOR_ENTITY_ID " +
+                    "FROM DEBT_ENTITY WHERE DEBTOR_ENTITY_ID IN (:ids)";
+            DebtEntityRowMapper debtEntityRowMapper = new DebtEntityRowMapper();
+            jdbcTemplate.query(debtsQuery, paramSource, (RowCallbackHandler) rs -> debtsByDebtorId
+                    .get(rs.getLong("DEBTOR_ENTITY_ID"))
+                    .add(debtEntityRowMapper.mapRow(rs, rs.getRow())));
+            found.forEach(d -> d.setDebtEntities(debtsByDebtorId.get(d.getId())));
+            debtors.addAll(found);
+        }
+        return debtors;
+    }
+
+    /**
+     * Reads the joined debtor graph query through a forward only cursor fetching {@link #STREAM_FETCH_SIZE} rows
+     * at a time and assembles one debtor at a time, so memory does not depend on the number of debtors.
+     * Credit cards are not read, payments come without them. The connection is held until the stream is closed.
+     */
+    public Stream<DebtorEntity> streamAll() {
+        String query = DebtorEntityGraphExtractor.SELECT_DEBTOR_GRAPH_WITHOUT_CARDS + DebtorEntityGraphExtractor.ORDER_BY_DEBTOR_GRAPH;
+        JdbcTemplate template = jdbcTemplate.getJdbcTemplate();
+        DataSource dataSource = template.getDataSource();
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        PreparedStatement statement = null;
+        ResultSet rs = null;
+        try {
+            statement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(STREAM_FETCH_SIZE);
+            rs = statement.executeQuery();
+        } catch (SQLException e) {
+            JdbcUtils.closeStatement(statement);
+            DataSourceUtils.releaseConnection(connection, dataSource);
+            throw template.getExceptionTranslator().translate("streamAll", query, e);
+        }
+
+        ResultSet cursor = rs;
+        PreparedStatement cursorStatement = statement;
+        DebtorEntityGraphExtractor extractor = new DebtorEntityGraphExtractor();
+        Spliterator<DebtorEntity> debtors = new Spliterators.AbstractSpliterator<DebtorEntity>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super DebtorEntity> action) {
+                DebtorEntity debtorEntity;
+                try {
+                    debtorEntity = extractor.nextDebtor(cursor);
+                } catch (SQLException e) {
+                    throw template.getExceptionTranslator().translate("streamAll", query, e);
+                }
+                if (debtorEntity == null) {
+                    return false;
+                }
+                action.accept(debtorEntity);
+                return true;
+            }
+        };
+        return StreamSupport.stream(debtors, false).onClose(() -> {
+            JdbcUtils.closeResultSet(cursor);
+            JdbcUtils.closeStatement(cursorStatement);
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        });
+    }
+
+    private Optional<DebtorEntity> findDebtorGraph(String whereClause, MapSqlParameterSource paramSource) {
+        String query = DebtorEntityGraphExtractor.SELECT_DEBTOR_GRAPH + whereClause + DebtorEntityGraphExtractor.ORDER_BY_DEBTOR_GRAPH;
+        List<DebtorEntity> debtors = jdbcTemplate.query(query, paramSource, new DebtorEntityGraphExtractor());
+        return debtors.stream().findFirst();
+    }
+
     private Set<DebtEntity> findDebtEntityById(long id) {
         MapSqlParameterSource paramSource = new MapSqlParameterSource();
         paramSource.addValue("id", id);
-        String query = "SELECT ID, DEBT_AMOUNT, DEBT_NAME, REPAYMENT_DATE, UUID FROM DEBT_ENTITY WHERE DEBTOR_ENTITY_ID = :id";
+        String query = "SELECT ID, DEBT_AMOUNT, DEBT_NAME, REPAYMENT_DATE, UUID, PAID_AMOUNT FROM DEBT_ENTITY WHERE DEBTOR_ENTITY_ID = :id";
         Set<DebtEntity> debts = new HashSet<>();
-        List<Map<String, Object>> rows = jdbcTemplate.queryForList(query, paramSource);
-        for (Map row : rows) {
-            DebtEntity debtEntity = new DebtEntity();
-            debtEntity.setId((long) row.get("ID"));
-            debtEntity.setDebtAmount(new BigDecimal(row.get("DEBT_AMOUNT").toString()).setScale(2, RoundingMode.HALF_EVEN));
-            debtEntity.setDebtName((String) row.get("DEBT_NAME"));
-            debtEntity.setRepaymentDate(LocalDate.parse(row.get("REPAYMENT_DATE").toString(), DATE_FORMATTER));
-            debtEntity.setUuid((String) row.get("UUID"));
+        for (DebtEntity debtEntity : jdbcTemplate.query(query, paramSource, new DebtEntityRowMapper())) {
             debtEntity.setPaymentEntities(this.findPaymentEntitiesByDebtEntityId(debtEntity.getId()));
             debts.add(debtEntity);
         }
@@ -72,30 +209,8 @@ public class AccountsRepositoryNativeImpl implements AccountsRepository {
     private Set<PaymentEntity> findPaymentEntitiesByDebtEntityId(long id) {
         MapSqlParameterSource paramSource = new MapSqlParameterSource();
         paramSource.addValue("id", id);
-
-        String query = "SELECT t1.ID, t1.CLIENT_ID, t1.PAYMENT_AMOUNT, t1.PAYMENT_DATE, t2.* " +
-                "FROM PAYMENT_ENTITY t1 JOIN CREDIT_CARD_ENTITY t2 on (t1.CREDIT_CARD_ENTITY_ID=t2.ID)  " +
-                "WHERE DEBT_ENTITY_ID = :id";
-        Set<PaymentEntity> payments = new HashSet<>();
-        List<Map<String, Object>> rows = jdbcTemplate.queryForList(query, paramSource);
-        for (Map row : rows) {
-            PaymentEntity paymentEntity = new PaymentEntity();
-            paymentEntity.setId((long) row.get("ID"));
-            paymentEntity.setClientId((String) row.get("CLIENT_ID"));
-            paymentEntity.setPaymentAmount(new BigDecimal(row.get("PAYMENT_AMOUNT").toString()).setScale(2, RoundingMode.HALF_EVEN));
-            paymentEntity.setPaymentDate(LocalDate.parse(row.get("PAYMENT_DATE").toString(), DATE_FORMATTER));
-            CreditCardEntity creditCardEntity = new CreditCardEntity();
-            creditCardEntity.setId((long) row.get("ID"));
-            creditCardEntity.setCcNumber((String) row.get("CC_NUMBER"));
-            creditCardEntity.setCvv((String) row.get("CVV"));
-            creditCardEntity.setExpDate(LocalDate.parse(row.get("EXP_DATE").toString(), DATE_FORMATTER));
-            creditCardEntity.setFirstName((String) row.get("FIRST_NAME"));
-            creditCardEntity.setLastName((String) row.get("LAST_NAME"));
-            creditCardEntity.setIssuingNetwork((String) row.get("ISSUING_NETWORK"));
-            paymentEntity.setCreditCardEntity(creditCardEntity);
-            payments.add(paymentEntity);
-        }
-        return payments;
+        String query = PaymentEntityRowMapper.SELECT_PAYMENTS_WITH_CARDS + "WHERE p.DEBT_ENTITY_ID = :id";
+        return new HashSet<>(jdbcTemplate.query(query, paramSource, new PaymentEntityRowMapper()));
     }
 
     @Override
@@ -0,0 +1,28 @@
+package pl.sii.eu.micuenta.repository;
+
+import java.math.BigDecimal;
+
+public class ClientPaymentTotal {
+
+    private final String clientId;
+    private final long payments;
+    private final BigDecimal paidAmount;
+
+    public ClientPaymentTotal(String clientId, long payments, BigDecimal paidAmount) {
+        this.clientId = clientId;
+        this.payments = payments;
+        this.paidAmount = paidAmount;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public long getPayments() {
+        return payments;
+    }
+
+    public BigDecimal getPaidAmount() {
+        return paidAmount;
+    }
+}
@@ -0,0 +1,137 @@
+package pl.sii.eu.micuenta.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.sii.eu.micuenta.cache.BoundedTtlCache;
+import pl.sii.eu.micuenta.cache.CacheStats;
+import pl.sii.eu.micuenta.conf.CardFingerprintKey;
+import pl.sii.eu.micuenta.model.model_entity.CreditCardEntity;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceException;
+import javax.transaction.Transactional;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Deduplicated credit card rows keyed by card fingerprint. Fingerprint to id mappings are cached
+ * once the transaction that found or created the card has committed.
+ */
+@Repository
+@Transactional
+@DependsOn(CardFingerprintKey.BEAN_NAME)
+public class CreditCardVault {
+
+    private static final Object TRANSACTION_CARDS_KEY = new Object();
+
+    private final BoundedTtlCache<String, Long> cardIdsByFingerprint;
+    private final TransactionTemplate newTransaction;
+
+    @PersistenceContext
+    private EntityManager em;
+
+    public CreditCardVault(PlatformTransactionManager transactionManager,
+                           @Value("${micuenta.cache.card.max-size:10000}") int maxSize,
+                           @Value("${micuenta.cache.card.ttl-ms:3600000}") long ttlMillis) {
+        this.cardIdsByFingerprint = new BoundedTtlCache<>(maxSize, ttlMillis);
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Returns the managed vault card with the card number of the given one, storing it first when the card is new.
+     * New cards are committed in their own short transaction, so a concurrent payment with the same new card
+     * hits the unique fingerprint index right away and reads the stored row instead.
+     */
+    public CreditCardEntity resolve(CreditCardEntity creditCardEntity) {
+        String fingerprint = creditCardEntity.computeFingerprint();
+        Map<String, CreditCardEntity> transactionCards = getTransactionCards();
+
+        CreditCardEntity vaultCard = transactionCards.get(fingerprint);
+        if (vaultCard != null) {
+            return vaultCard;
+        }
+
+        Long cardId = cardIdsByFingerprint.get(fingerprint);
+        if (cardId == null) {
+            cardId = findCardId(fingerprint);
+        }
+        if (cardId == null) {
+            cardId = insertCard(creditCardEntity, fingerprint);
+        }
+
+        vaultCard = em.getReference(CreditCardEntity.class, cardId);
+        transactionCards.put(fingerprint, vaultCard);
+        return vaultCard;
+    }
+
+    public void deleteAll() {
+        em.createQuery("delete from CreditCardEntity").executeUpdate();
+        cardIdsByFingerprint.invalidateAll();
+    }
+
+    public CacheStats getStats() {
+        return cardIdsByFingerprint.getStats();
+    }
+
+    private Long findCardId(String fingerprint) {
+        return em.createNamedQuery("findCreditCardByFingerprint", CreditCardEntity.class)
+                .setParameter("fingerprint", fingerprint)
+                .getResultList()
+                .stream()
+                .findFirst()
+                .map(CreditCardEntity::getId)
+                .orElse(null);
+    }
+
+    private Long insertCard(CreditCardEntity creditCardEntity, String fingerprint) {
+        try {
+            return newTransaction.execute(status -> {
+                creditCardEntity.setId(null);
+                em.persist(creditCardEntity);
+                em.flush();
+                return creditCardEntity.getId();
+            });
+        } catch (DataIntegrityViolationException | PersistenceException e) {
+            Long storedId = findCardId(fingerprint);
+            if (storedId == null) {
+                throw e;
+            }
+            return storedId;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, CreditCardEntity> getTransactionCards() {
+        Map<String, CreditCardEntity> transactionCards =
+                (Map<String, CreditCardEntity>) TransactionSynchronizationManager.getResource(TRANSACTION_CARDS_KEY);
+        if (transactionCards != null) {
+            return transactionCards;
+        }
+
+        Map<String, CreditCardEntity> newTransactionCards = new HashMap<>();
+        TransactionSynchronizationManager.bindResource(TRANSACTION_CARDS_KEY, newTransactionCards);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                for (Map.Entry<String, CreditCardEntity> entry : newTransactionCards.entrySet()) {
+                    cardIdsByFingerprint.put(entry.getKey(), entry.getValue().getId());
+                }
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResource(TRANSACTION_CARDS_KEY);
+            }
+        });
+        return newTransactionCards;
+    }
+}
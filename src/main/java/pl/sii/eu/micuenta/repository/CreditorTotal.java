@@ -0,0 +1,38 @@
+package pl.sii.eu.micuenta.repository;
+
+import java.math.BigDecimal;
+
+public class CreditorTotal {
+
+    private final String debtName;
+    private final long debts;
+    private final BigDecimal debtAmount;
+    private final BigDecimal paidAmount;
+
+    public CreditorTotal(String debtName, long debts, BigDecimal debtAmount, BigDecimal paidAmount) {
+        this.debtName = debtName;
+        this.debts = debts;
+        this.debtAmount = debtAmount;
+        this.paidAmount = paidAmount;
+    }
+
+    public String getDebtName() {
+        return debtName;
+    }
+
+    public long getDebts() {
+        return debts;
+    }
+
+    public BigDecimal getDebtAmount() {
+        return debtAmount;
+    }
+
+    public BigDecimal getPaidAmount() {
+        return paidAmount;
+    }
+
+    public BigDecimal getOutstandingAmount() {
+        return debtAmount.subtract(paidAmount);
+    }
+}
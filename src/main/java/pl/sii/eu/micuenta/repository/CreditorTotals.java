@@ -0,0 +1,22 @@
+package pl.sii.eu.micuenta.repository;
+
+import java.util.List;
+
+public class CreditorTotals {
+
+    private final List<CreditorTotal> creditors;
+    private final List<ClientPaymentTotal> clients;
+
+    public CreditorTotals(List<CreditorTotal> creditors, List<ClientPaymentTotal> clients) {
+        this.creditors = creditors;
+        this.clients = clients;
+    }
+
+    public List<CreditorTotal> getCreditors() {
+        return creditors;
+    }
+
+    public List<ClientPaymentTotal> getClients() {
+        return clients;
+    }
+}
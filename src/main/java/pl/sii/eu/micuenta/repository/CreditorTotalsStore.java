@@ -0,0 +1,277 @@
+package pl.sii.eu.micuenta.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Outstanding totals per creditor ({@code DebtEntity.debtName}) and paid totals per payment client id.
+ * CREDITOR_TOTALS and CLIENT_PAYMENT_TOTALS are incremented in the transaction appending payments, reads are served
+ * from in-memory counters which get the same increments once the transaction commits.
+ * Writes of whole debtors change debts and mark the totals stale, stale totals are rebuilt from DEBT_ENTITY and
+ * PAYMENT_ENTITY on the next refresh. Every refresh reloads the counters from the tables, which also picks up
+ * payments appended by other application nodes.
+ * <p>
+ * A transaction holds the read lock of {@link #countersLock} from before its commit until its increments reached
+ * the counters, and a reload reads the tables and swaps the counters under the write lock. So every committed
+ * payment is counted exactly once: either by the tables read on reload or by an increment of the new counters.
+ */
+@Component
+public class CreditorTotalsStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(CreditorTotalsStore.class);
+
+    private static final String ADD_TO_CREDITOR = "UPDATE CREDITOR_TOTALS SET PAID_AMOUNT = PAID_AMOUNT + ? WHERE DEBT_NAME = ?";
+    private static final String INSERT_CREDITOR = "INSERT INTO CREDITOR_TOTALS (DEBT_NAME, DEBTS, DEBT_AMOUNT, PAID_AMOUNT) VALUES (?, 0, 0, ?)";
+    private static final String ADD_TO_CLIENT = "UPDATE CLIENT_PAYMENT_TOTALS SET PAYMENTS = PAYMENTS + ?, PAID_AMOUNT = PAID_AMOUNT + ? WHERE CLIENT_ID = ?";
+    private static final String INSERT_CLIENT = "INSERT INTO CLIENT_PAYMENT_TOTALS (CLIENT_ID, PAYMENTS, PAID_AMOUNT) VALUES (?, ?, ?)";
+    private static final String[] REBUILD = {
+            "DELETE FROM CREDITOR_TOTALS",
+            "INSERT INTO CREDITOR_TOTALS (DEBT_NAME, DEBTS, DEBT_AMOUNT, PAID_AMOUNT) " +
+                    "SELECT COALESCE(DEBT_NAME, ''), COUNT(*), COALESCE(SUM(DEBT_AMOUNT), 0), COALESCE(SUM(PAID_AMOUNT), 0) " +
+                    "FROM DEBT_ENTITY GROUP BY COALESCE(DEBT_NAME, '')",
+            "DELETE FROM CLIENT_PAYMENT_TOTALS",
+            "INSERT INTO CLIENT_PAYMENT_TOTALS (CLIENT_ID, PAYMENTS, PAID_AMOUNT) " +
+                    "SELECT COALESCE(CLIENT_ID, ''), COUNT(*), COALESCE(SUM(PAYMENT_AMOUNT), 0) " +
+                    "FROM PAYMENT_ENTITY GROUP BY COALESCE(CLIENT_ID, '')"
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private volatile Map<String, CreditorCounters> creditors = new ConcurrentHashMap<>();
+    private volatile Map<String, ClientCounters> clients = new ConcurrentHashMap<>();
+    private volatile boolean stale = true;
+    private final ReadWriteLock countersLock = new ReentrantReadWriteLock();
+
+    public CreditorTotalsStore(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public CreditorTotals getTotals() {
+        List<CreditorTotal> creditorTotals = new ArrayList<>();
+        creditors.forEach((debtName, counters) -> creditorTotals.add(new CreditorTotal(debtName, counters.debts.sum(),
+                toAmount(counters.debtAmount.sum()), toAmount(counters.paidAmount.sum()))));
+        List<ClientPaymentTotal> clientTotals = new ArrayList<>();
+        clients.forEach((clientId, counters) -> clientTotals.add(new ClientPaymentTotal(clientId, counters.payments.sum(),
+                toAmount(counters.paidAmount.sum()))));
+        return new CreditorTotals(creditorTotals, clientTotals);
+    }
+
+    /**
+     * Totals are marked stale once the writing transaction commits, so a rebuild running before the commit
+     * can not clear the mark without seeing the write.
+     */
+    public void markStale() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    stale = true;
+                }
+            });
+        } else {
+            stale = true;
+        }
+    }
+
+    boolean isStale() {
+        return stale;
+    }
+
+    @EventListener(ContextRefreshedEvent.class)
+    @Scheduled(fixedDelayString = "${micuenta.creditors.refresh-interval-ms:5000}")
+    public synchronized void refresh() {
+        if (stale) {
+            stale = false;
+            try {
+                transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(REBUILD));
+            } catch (RuntimeException e) {
+                stale = true;
+                throw e;
+            }
+            logger.info("Creditor totals rebuilt from debts and payments.");
+        }
+        reload();
+    }
+
+    /**
+     * Adds payments to the tables on the connection of the transaction appending them.
+     */
+    void addPayments(Connection connection, PaymentTotals paymentTotals) throws SQLException {
+        try (PreparedStatement update = connection.prepareStatement(ADD_TO_CREDITOR);
+             PreparedStatement insert = connection.prepareStatement(INSERT_CREDITOR)) {
+            for (Map.Entry<String, Long> entry : paymentTotals.paidByDebtName.entrySet()) {
+                BigDecimal paidAmount = toAmount(entry.getValue());
+                update.setBigDecimal(1, paidAmount);
+                update.setString(2, entry.getKey());
+                insert.setString(1, entry.getKey());
+                insert.setBigDecimal(2, paidAmount);
+                addToRow(update, insert, INSERT_CREDITOR);
+            }
+        }
+        try (PreparedStatement update = connection.prepareStatement(ADD_TO_CLIENT);
+             PreparedStatement insert = connection.prepareStatement(INSERT_CLIENT)) {
+            for (Map.Entry<String, Long> entry : paymentTotals.paidByClientId.entrySet()) {
+                long payments = paymentTotals.paymentsByClientId.get(entry.getKey());
+                BigDecimal paidAmount = toAmount(entry.getValue());
+                update.setLong(1, payments);
+                update.setBigDecimal(2, paidAmount);
+                update.setString(3, entry.getKey());
+                insert.setString(1, entry.getKey());
+                insert.setLong(2, payments);
+                insert.setBigDecimal(3, paidAmount);
+                addToRow(update, insert, INSERT_CLIENT);
+            }
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                private boolean locked;
+
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    countersLock.readLock().lock();
+                    locked = true;
+                }
+
+                @Override
+                public void afterCommit() {
+                    addToCounters(paymentTotals);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    if (locked) {
+                        locked = false;
+                        countersLock.readLock().unlock();
+                    }
+                }
+            });
+        } else {
+            countersLock.readLock().lock();
+            try {
+                addToCounters(paymentTotals);
+            } finally {
+                countersLock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Increments the row, or inserts it when missing. A transaction inserting the same row concurrently wins
+     * the insert, the row is then incremented.
+     */
+    private void addToRow(PreparedStatement update, PreparedStatement insert, String insertSql) throws SQLException {
+        if (update.executeUpdate() > 0) {
+            return;
+        }
+        try {
+            insert.executeUpdate();
+        } catch (SQLException e) {
+            if (!(jdbcTemplate.getExceptionTranslator().translate("addPayments", insertSql, e) instanceof DuplicateKeyException)
+                    || update.executeUpdate() == 0) {
+                throw e;
+            }
+        }
+    }
+
+    private void addToCounters(PaymentTotals paymentTotals) {
+        paymentTotals.paidByDebtName.forEach((debtName, paidCents) ->
+                creditors.computeIfAbsent(debtName, k -> new CreditorCounters()).paidAmount.add(paidCents));
+        paymentTotals.paidByClientId.forEach((clientId, paidCents) -> {
+            ClientCounters counters = clients.computeIfAbsent(clientId, k -> new ClientCounters());
+            counters.payments.add(paymentTotals.paymentsByClientId.get(clientId));
+            counters.paidAmount.add(paidCents);
+        });
+    }
+
+    private void reload() {
+        countersLock.writeLock().lock();
+        try {
+            swapCounters();
+        } finally {
+            countersLock.writeLock().unlock();
+        }
+    }
+
+    private void swapCounters() {
+        Map<String, CreditorCounters> reloadedCreditors = new ConcurrentHashMap<>();
+        jdbcTemplate.query("SELECT DEBT_NAME, DEBTS, DEBT_AMOUNT, PAID_AMOUNT FROM CREDITOR_TOTALS", (RowCallbackHandler) rs -> {
+            CreditorCounters counters = new CreditorCounters();
+            counters.debts.add(rs.getLong("DEBTS"));
+            counters.debtAmount.add(toCents(rs.getBigDecimal("DEBT_AMOUNT")));
+            counters.paidAmount.add(toCents(rs.getBigDecimal("PAID_AMOUNT")));
+            reloadedCreditors.put(rs.getString("DEBT_NAME"), counters);
+        });
+        Map<String, ClientCounters> reloadedClients = new ConcurrentHashMap<>();
+        jdbcTemplate.query("SELECT CLIENT_ID, PAYMENTS, PAID_AMOUNT FROM CLIENT_PAYMENT_TOTALS", (RowCallbackHandler) rs -> {
+            ClientCounters counters = new ClientCounters();
+            counters.payments.add(rs.getLong("PAYMENTS"));
+            counters.paidAmount.add(toCents(rs.getBigDecimal("PAID_AMOUNT")));
+            reloadedClients.put(rs.getString("CLIENT_ID"), counters);
+        });
+        creditors = reloadedCreditors;
+        clients = reloadedClients;
+    }
+
+    private static long toCents(BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+    }
+
+    private static BigDecimal toAmount(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    /**
+     * Payments appended in one transaction, summed per creditor and per client id.
+     */
+    static final class PaymentTotals {
+        private final Map<String, Long> paidByDebtName = new HashMap<>();
+        private final Map<String, Long> paidByClientId = new HashMap<>();
+        private final Map<String, Long> paymentsByClientId = new HashMap<>();
+
+        void add(String debtName, String clientId, BigDecimal paymentAmount) {
+            long paidCents = toCents(paymentAmount);
+            paidByDebtName.merge(debtName == null ? "" : debtName, paidCents, Math::addExact);
+            String client = clientId == null ? "" : clientId;
+            paidByClientId.merge(client, paidCents, Math::addExact);
+            paymentsByClientId.merge(client, 1L, Long::sum);
+        }
+    }
+
+    private static final class CreditorCounters {
+        private final LongAdder debts = new LongAdder();
+        private final LongAdder debtAmount = new LongAdder();
+        private final LongAdder paidAmount = new LongAdder();
+    }
+
+    private static final class ClientCounters {
+        private final LongAdder payments = new LongAdder();
+        private final LongAdder paidAmount = new LongAdder();
+    }
+}
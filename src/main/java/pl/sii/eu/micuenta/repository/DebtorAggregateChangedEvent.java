@@ -0,0 +1,41 @@
+package pl.sii.eu.micuenta.repository;
+
+/**
+ * Published whenever debts or payments of a debtor have been written, so cached views of the aggregate can be dropped.
+ * An event without SSN stands for a change of all debtors. Events received from other application nodes
+ * are marked as remote, so they are not broadcast again.
+ */
+public class DebtorAggregateChangedEvent {
+
+    private final String ssn;
+    private final boolean remote;
+
+    public DebtorAggregateChangedEvent(String ssn) {
+        this(ssn, false);
+    }
+
+    private DebtorAggregateChangedEvent(String ssn, boolean remote) {
+        this.ssn = ssn;
+        this.remote = remote;
+    }
+
+    public static DebtorAggregateChangedEvent allDebtors() {
+        return new DebtorAggregateChangedEvent(null);
+    }
+
+    public static DebtorAggregateChangedEvent fromRemoteNode(String ssn) {
+        return new DebtorAggregateChangedEvent(ssn, true);
+    }
+
+    public String getSsn() {
+        return ssn;
+    }
+
+    public boolean isAllDebtors() {
+        return ssn == null;
+    }
+
+    public boolean isRemote() {
+        return remote;
+    }
+}
@@ -0,0 +1,44 @@
+package pl.sii.eu.micuenta.repository;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads SSN numbers of all debtors page by page in the order of ids. Pages are separate keyset queries,
+ * so no connection is held while the consumer is busy.
+ */
+@Component
+public class DebtorSsnScanner {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public DebtorSsnScanner(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public long scan(int pageSize, SsnConsumer consumer) throws IOException {
+        long lastId = Long.MIN_VALUE;
+        long scanned = 0;
+        List<Map<String, Object>> page;
+        do {
+            page = jdbcTemplate.queryForList("SELECT ID, SSN FROM DEBTOR_ENTITY WHERE ID > :lastId ORDER BY ID LIMIT :limit",
+                    new MapSqlParameterSource("lastId", lastId).addValue("limit", pageSize));
+            for (Map<String, Object> row : page) {
+                lastId = ((Number) row.get("ID")).longValue();
+                consumer.accept((String) row.get("SSN"));
+            }
+            scanned += page.size();
+        } while (page.size() == pageSize);
+        return scanned;
+    }
+
+    @FunctionalInterface
+    public interface SsnConsumer {
+        void accept(String ssn) throws IOException;
+    }
+}
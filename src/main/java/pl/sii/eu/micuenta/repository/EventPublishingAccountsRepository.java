@@ -0,0 +1,234 @@
+package pl.sii.eu.micuenta.repository;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Repository;
+import pl.sii.eu.micuenta.model.model_entity.DebtorEntity;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Decorates the Spring Data repository. Reads always go to the delegate, so every caller gets its own entities;
+ * cached debtor views, which login, balance and payment plans read outside a transaction, live in
+ * {@link pl.sii.eu.micuenta.service.DataDebtorService}. Inside a transaction login keeps its lean query.
+ * Writes going through this repository publish {@link DebtorAggregateChangedEvent}, so cached views are dropped,
+ * and mark creditor totals stale once the write is done: right away when the delegate committed it, at commit
+ * of the surrounding transaction otherwise.
+ */
+@Repository
+@Primary
+public class EventPublishingAccountsRepository implements AccountsRepository {
+
+    private final AccountsRepository delegate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final KnownSsnFilter knownSsnFilter;
+    private final CreditorTotalsStore creditorTotalsStore;
+
+    public EventPublishingAccountsRepository(@Qualifier("accountsRepository") AccountsRepository delegate,
+                                             ApplicationEventPublisher eventPublisher,
+                                             KnownSsnFilter knownSsnFilter,
+                                             CreditorTotalsStore creditorTotalsStore) {
+        this.delegate = delegate;
+        this.eventPublisher = eventPublisher;
+        this.knownSsnFilter = knownSsnFilter;
+        this.creditorTotalsStore = creditorTotalsStore;
+    }
+
+    public DebtorEntity findFirstBySsn(String ssn) {
+        return delegate.findFirstBySsn(ssn);
+    }
+
+    public DebtorEntity findFirstForPaymentUpdateBySsn(String ssn) {
+        return delegate.findFirstForPaymentUpdateBySsn(ssn);
+    }
+
+    public Optional<DebtorEntity> findFirstBySsnAndFirstNameAndLastName(String ssn, String firstName, String lastName) {
+        return delegate.findFirstBySsnAndFirstNameAndLastName(ssn, firstName, lastName);
+    }
+
+    /**
+     * The Spring Data query takes the whole IN list, so it is chunked here.
+     */
+    public List<DebtorEntity> findAllBySsnIn(Collection<String> ssns) {
+        List<DebtorEntity> found = new ArrayList<>();
+        for (List<String> chunk : SsnChunks.of(ssns)) {
+            found.addAll(delegate.findAllBySsnIn(chunk));
+        }
+        return found;
+    }
+
+    public List<DebtorEntity> findAllWithDebtsBySsnIn(Collection<String> ssns) {
+        List<DebtorEntity> found = new ArrayList<>();
+        for (List<String> chunk : SsnChunks.of(ssns)) {
+            found.addAll(delegate.findAllWithDebtsBySsnIn(chunk));
+        }
+        return found;
+    }
+
+    public Stream<DebtorEntity> streamAll() {
+        return delegate.streamAll();
+    }
+
+    @Override
+    public List<DebtorEntity> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public List<DebtorEntity> findAll(Sort sort) {
+        return delegate.findAll(sort);
+    }
+
+    @Override
+    public List<DebtorEntity> findAllById(Iterable<Long> iterable) {
+        return delegate.findAllById(iterable);
+    }
+
+    @Override
+    public <S extends DebtorEntity> List<S> saveAll(Iterable<S> iterable) {
+        iterable.forEach(this::registerWrite);
+        List<S> saved = delegate.saveAll(iterable);
+        creditorTotalsStore.markStale();
+        return saved;
+    }
+
+    @Override
+    public void flush() {
+        delegate.flush();
+    }
+
+    @Override
+    public <S extends DebtorEntity> S saveAndFlush(S s) {
+        registerWrite(s);
+        S saved = delegate.saveAndFlush(s);
+        creditorTotalsStore.markStale();
+        return saved;
+    }
+
+    @Override
+    public void deleteInBatch(Iterable<DebtorEntity> iterable) {
+        iterable.forEach(this::invalidate);
+        delegate.deleteInBatch(iterable);
+        creditorTotalsStore.markStale();
+    }
+
+    @Override
+    public void deleteAllInBatch() {
+        invalidateAllDebtors();
+        delegate.deleteAllInBatch();
+        creditorTotalsStore.markStale();
+    }
+
+    @Override
+    public DebtorEntity getOne(Long aLong) {
+        return delegate.getOne(aLong);
+    }
+
+    @Override
+    public <S extends DebtorEntity> List<S> findAll(Example<S> example) {
+        return delegate.findAll(example);
+    }
+
+    @Override
+    public <S extends DebtorEntity> List<S> findAll(Example<S> example, Sort sort) {
+        return delegate.findAll(example, sort);
+    }
+
+    @Override
+    public Page<DebtorEntity> findAll(Pageable pageable) {
+        return delegate.findAll(pageable);
+    }
+
+    @Override
+    public <S extends DebtorEntity> S save(S s) {
+        registerWrite(s);
+        S saved = delegate.save(s);
+        creditorTotalsStore.markStale();
+        return saved;
+    }
+
+    @Override
+    public Optional<DebtorEntity> findById(Long aLong) {
+        return delegate.findById(aLong);
+    }
+
+    @Override
+    public boolean existsById(Long aLong) {
+        return delegate.existsById(aLong);
+    }
+
+    @Override
+    public long count() {
+        return delegate.count();
+    }
+
+    @Override
+    public void deleteById(Long aLong) {
+        invalidateAllDebtors();
+        delegate.deleteById(aLong);
+        creditorTotalsStore.markStale();
+    }
+
+    @Override
+    public void delete(DebtorEntity debtorEntity) {
+        invalidate(debtorEntity);
+        delegate.delete(debtorEntity);
+        creditorTotalsStore.markStale();
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends DebtorEntity> iterable) {
+        iterable.forEach(this::invalidate);
+        delegate.deleteAll(iterable);
+        creditorTotalsStore.markStale();
+    }
+
+    @Override
+    public void deleteAll() {
+        invalidateAllDebtors();
+        delegate.deleteAll();
+        creditorTotalsStore.markStale();
+    }
+
+    @Override
+    public <S extends DebtorEntity> Optional<S> findOne(Example<S> example) {
+        return delegate.findOne(example);
+    }
+
+    @Override
+    public <S extends DebtorEntity> Page<S> findAll(Example<S> example, Pageable pageable) {
+        return delegate.findAll(example, pageable);
+    }
+
+    @Override
+    public <S extends DebtorEntity> long count(Example<S> example) {
+        return delegate.count(example);
+    }
+
+    @Override
+    public <S extends DebtorEntity> boolean exists(Example<S> example) {
+        return delegate.exists(example);
+    }
+
+    private void registerWrite(DebtorEntity debtorEntity) {
+        knownSsnFilter.add(debtorEntity.getSsn());
+        invalidate(debtorEntity);
+    }
+
+    private void invalidate(DebtorEntity debtorEntity) {
+        eventPublisher.publishEvent(new DebtorAggregateChangedEvent(debtorEntity.getSsn()));
+    }
+
+    private void invalidateAllDebtors() {
+        eventPublisher.publishEvent(DebtorAggregateChangedEvent.allDebtors());
+    }
+}
@@ -0,0 +1,82 @@
+package pl.sii.eu.micuenta.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import pl.sii.eu.micuenta.cache.BloomFilter;
+import pl.sii.eu.micuenta.cache.MembershipFilterStats;
+
+/**
+ * Membership filter over SSN numbers of debtors, tells whether a login is for an SSN that probably never existed.
+ * It is rebuilt from DEBTOR_ENTITY when the context is refreshed and periodically, and extended by every debtor
+ * saved through {@link EventPublishingAccountsRepository} on this node or announced by other nodes.
+ * Debtors inserted by other means are missing until the next rebuild; logins answer a miss with 404 unless
+ * {@code micuenta.login.ssn-filter.short-circuit} is off. Deleted debtors stay in the filter until the next rebuild.
+ */
+@Component
+public class KnownSsnFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(KnownSsnFilter.class);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final long expectedDebtors;
+    private final double falsePositiveRate;
+    private volatile BloomFilter filter;
+    private volatile BloomFilter rebuiltFilter;
+
+    public KnownSsnFilter(NamedParameterJdbcTemplate jdbcTemplate,
+                          @Value("${micuenta.login.ssn-filter.expected-debtors:1000000}") long expectedDebtors,
+                          @Value("${micuenta.login.ssn-filter.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.expectedDebtors = expectedDebtors;
+        this.falsePositiveRate = falsePositiveRate;
+        this.filter = new BloomFilter(expectedDebtors, falsePositiveRate);
+    }
+
+    @EventListener(ContextRefreshedEvent.class)
+    @Scheduled(initialDelayString = "${micuenta.login.ssn-filter.rebuild-interval-ms:600000}",
+            fixedDelayString = "${micuenta.login.ssn-filter.rebuild-interval-ms:600000}")
+    public synchronized void rebuild() {
+        Long debtors = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM DEBTOR_ENTITY", new MapSqlParameterSource(), Long.class);
+        BloomFilter rebuilt = new BloomFilter(Math.max(expectedDebtors, debtors), falsePositiveRate);
+        rebuiltFilter = rebuilt;
+        jdbcTemplate.query("SELECT SSN FROM DEBTOR_ENTITY", new MapSqlParameterSource(),
+                (RowCallbackHandler) rs -> rebuilt.put(rs.getString("SSN")));
+        filter = rebuilt;
+        rebuiltFilter = null;
+        logger.info("Known SSN filter rebuilt from {} debtors.", debtors);
+    }
+
+    public void add(String ssn) {
+        if (ssn == null) {
+            return;
+        }
+        filter.put(ssn);
+        BloomFilter rebuilt = rebuiltFilter;
+        if (rebuilt != null) {
+            rebuilt.put(ssn);
+        }
+    }
+
+    @EventListener
+    public void onDebtorAggregateChanged(DebtorAggregateChangedEvent event) {
+        if (event.isRemote()) {
+            add(event.getSsn());
+        }
+    }
+
+    public boolean mightContain(String ssn) {
+        return ssn != null && filter.mightContain(ssn);
+    }
+
+    public MembershipFilterStats getStats() {
+        return filter.getStats();
+    }
+}
@@ -0,0 +1,80 @@
+package pl.sii.eu.micuenta.repository;
+
+import org.hibernate.Session;
+import org.springframework.stereotype.Repository;
+import pl.sii.eu.micuenta.model.model_entity.DebtEntity;
+import pl.sii.eu.micuenta.model.model_entity.PaymentEntity;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.transaction.Transactional;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Insert-only persistence of new payments. Writes the PAYMENT_ENTITY rows (and their cards) and bumps
+ * paid-to-date totals of the debts and of their creditors without loading or merging the debtor aggregate.
+ */
+@Repository
+@Transactional
+public class PaymentLedgerRepository {
+
+    private static final String ADD_TO_PAID_AMOUNT = "UPDATE DEBT_ENTITY SET PAID_AMOUNT = PAID_AMOUNT + ?, " +
+            "REMAINING_AMOUNT = REMAINING_AMOUNT - ? WHERE ID = ?";
+
+    @PersistenceContext
+    private EntityManager em;
+
+    private final CreditorTotalsStore creditorTotalsStore;
+
+    public PaymentLedgerRepository(CreditorTotalsStore creditorTotalsStore) {
+        this.creditorTotalsStore = creditorTotalsStore;
+    }
+
+    public PaymentEntity append(Long debtId, PaymentEntity paymentEntity) {
+        paymentEntity.setDebtEntity(em.getReference(DebtEntity.class, debtId));
+        appendAll(Collections.singletonList(paymentEntity));
+        return paymentEntity;
+    }
+
+    /**
+     * Persists payments that already point to their debts and flushes them together, so the inserts
+     * go out as one JDBC batch. Totals are incremented in the database only: the totals columns of
+     * {@link DebtEntity} are not updatable, so flushing a debt loaded in the caller's persistence context
+     * cannot overwrite increments committed by concurrent payments with its absolute values.
+     */
+    public void appendAll(List<PaymentEntity> paymentEntities) {
+        if (paymentEntities.isEmpty()) {
+            return;
+        }
+        Map<Long, BigDecimal> amountsByDebtId = new LinkedHashMap<>();
+        CreditorTotalsStore.PaymentTotals paymentTotals = new CreditorTotalsStore.PaymentTotals();
+        for (PaymentEntity paymentEntity : paymentEntities) {
+            DebtEntity debtEntity = paymentEntity.getDebtEntity();
+            paymentTotals.add(debtEntity.getDebtName(), paymentEntity.getClientId(), paymentEntity.getPaymentAmount());
+            if (!em.contains(debtEntity)) {
+                paymentEntity.setDebtEntity(em.getReference(DebtEntity.class, debtEntity.getId()));
+            }
+            em.persist(paymentEntity);
+            amountsByDebtId.merge(debtEntity.getId(), paymentEntity.getPaymentAmount(), BigDecimal::add);
+        }
+
+        em.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(ADD_TO_PAID_AMOUNT)) {
+                for (Map.Entry<Long, BigDecimal> entry : amountsByDebtId.entrySet()) {
+                    statement.setBigDecimal(1, entry.getValue());
+                    statement.setBigDecimal(2, entry.getValue());
+                    statement.setLong(3, entry.getKey());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            creditorTotalsStore.addPayments(connection, paymentTotals);
+        });
+        em.flush();
+    }
+}
@@ -0,0 +1,25 @@
+package pl.sii.eu.micuenta.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Cuts distinct SSN numbers into chunks of {@link AccountsRepository#SSN_CHUNK_SIZE}, so IN lists stay
+ * below the parameter limits of the database.
+ */
+public final class SsnChunks {
+
+    private SsnChunks() {
+    }
+
+    public static List<List<String>> of(Collection<String> ssns) {
+        List<String> distinctSsns = new ArrayList<>(new LinkedHashSet<>(ssns));
+        List<List<String>> chunks = new ArrayList<>();
+        for (int from = 0; from < distinctSsns.size(); from += AccountsRepository.SSN_CHUNK_SIZE) {
+            chunks.add(distinctSsns.subList(from, Math.min(from + AccountsRepository.SSN_CHUNK_SIZE, distinctSsns.size())));
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,52 @@
+package pl.sii.eu.micuenta.repository.mappers;
+
+import org.springframework.jdbc.core.RowMapper;
+import pl.sii.eu.micuenta.model.model_entity.DebtEntity;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/**
+ * Maps DEBT_ENTITY rows without payments, paid-to-date totals are taken from the persisted PAID_AMOUNT column. Column indexes are resolved on the first row, so use one instance per query.
+ */
+public class DebtEntityRowMapper implements RowMapper<DebtEntity> {
+
+    private int idIndex;
+    private int debtAmountIndex;
+    private int debtNameIndex;
+    private int repaymentDateIndex;
+    private int uuidIndex;
+    private int paidAmountIndex;
+    private boolean resolved;
+
+    @Override
+    public DebtEntity mapRow(ResultSet rs, int rowNum) throws SQLException {
+        if (!resolved) {
+            resolveColumns(rs);
+        }
+        DebtEntity debtEntity = new DebtEntity();
+        debtEntity.setId(rs.getLong(idIndex));
+        debtEntity.setDebtAmount(rs.getBigDecimal(debtAmountIndex).setScale(2, RoundingMode.HALF_EVEN));
+        debtEntity.setDebtName(rs.getString(debtNameIndex));
+        debtEntity.setRepaymentDate(rs.getObject(repaymentDateIndex, LocalDate.class));
+        debtEntity.setUuid(rs.getString(uuidIndex));
+        BigDecimal paidAmount = rs.getBigDecimal(paidAmountIndex);
+        if (paidAmount != null) {
+            debtEntity.setPaidAmount(paidAmount.setScale(2, RoundingMode.HALF_EVEN));
+        }
+        return debtEntity;
+    }
+
+    private void resolveColumns(ResultSet rs) throws SQLException {
+        idIndex = rs.findColumn("ID");
+        debtAmountIndex = rs.findColumn("DEBT_AMOUNT");
+        debtNameIndex = rs.findColumn("DEBT_NAME");
+        repaymentDateIndex = rs.findColumn("REPAYMENT_DATE");
+        uuidIndex = rs.findColumn("UUID");
+        paidAmountIndex = rs.findColumn("PAID_AMOUNT");
+        resolved = true;
+    }
+}
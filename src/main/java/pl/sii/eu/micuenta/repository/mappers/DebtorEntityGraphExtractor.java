@@ -0,0 +1,223 @@
+package pl.sii.eu.micuenta.repository.mappers;
+
+import org.springframework.jdbc.core.ResultSetExtractor;
+import pl.sii.eu.micuenta.model.model_entity.CreditCardEntity;
+import pl.sii.eu.micuenta.model.model_entity.DebtEntity;
+import pl.sii.eu.micuenta.model.model_entity.DebtorEntity;
+import pl.sii.eu.micuenta.model.model_entity.PaymentEntity;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Builds complete {@link DebtorEntity} graphs from one joined debtor/debt/payment/credit card query
+ * in a single pass over the ResultSet. Rows have to be ordered by debtor id and debt id. Credit card columns
+ * are optional, payments of a query without them have no credit card.
+ * Column indexes are resolved once per ResultSet, so use one instance per query.
+ */
+public class DebtorEntityGraphExtractor implements ResultSetExtractor<List<DebtorEntity>> {
+
+    public static final String SELECT_DEBTOR_GRAPH = "SELECT dr.ID AS DEBTOR_ID, dr.FIRST_NAME AS DEBTOR_FIRST_NAME, " +
+            "dr.LAST_NAME AS DEBTOR_LAST_NAME, dr.SSN AS DEBTOR_SSN, " +
+            "d.ID AS DEBT_ID, d.DEBT_AMOUNT, d.DEBT_NAME, d.REPAYMENT_DATE, d.UUID, d.PAID_AMOUNT, " +
+            "p.ID AS PAYMENT_ID, p.CLIENT_ID, p.PAYMENT_AMOUNT, p.PAYMENT_DATE, " +
+            "c.ID AS CARD_ID, c.CC_NUMBER, c.CVV, c.EXP_DATE, c.FIRST_NAME AS CARD_FIRST_NAME, " +
+            "c.LAST_NAME AS CARD_LAST_NAME, c.ISSUING_NETWORK " +
+            "FROM DEBTOR_ENTITY dr " +
+            "LEFT JOIN DEBT_ENTITY d ON (d.DEBTOR_ENTITY_ID = dr.ID) " +
+            "LEFT JOIN PAYMENT_ENTITY p ON (p.DEBT_ENTITY_ID = d.ID) " +
+            "LEFT JOIN CREDIT_CARD_ENTITY c ON (p.CREDIT_CARD_ENTITY_ID = c.ID) ";
+
+    public static final String SELECT_DEBTOR_GRAPH_WITHOUT_CARDS = "SELECT dr.ID AS DEBTOR_ID, dr.FIRST_NAME AS DEBTOR_FIRST_NAME, " +
+            "dr.LAST_NAME AS DEBTOR_LAST_NAME, dr.SSN AS DEBTOR_SSN, " +
+            "d.ID AS DEBT_ID, d.DEBT_AMOUNT, d.DEBT_NAME, d.REPAYMENT_DATE, d.UUID, d.PAID_AMOUNT, " +
+            "p.ID AS PAYMENT_ID, p.CLIENT_ID, p.PAYMENT_AMOUNT, p.PAYMENT_DATE " +
+            "FROM DEBTOR_ENTITY dr " +
+            "LEFT JOIN DEBT_ENTITY d ON (d.DEBTOR_ENTITY_ID = dr.ID) " +
+            "LEFT JOIN PAYMENT_ENTITY p ON (p.DEBT_ENTITY_ID = d.ID) ";
+
+    public static final String ORDER_BY_DEBTOR_GRAPH = " ORDER BY dr.ID, d.ID";
+
+    private int debtorIdIndex;
+    private int debtorFirstNameIndex;
+    private int debtorLastNameIndex;
+    private int debtorSsnIndex;
+    private int debtIdIndex;
+    private int debtAmountIndex;
+    private int debtNameIndex;
+    private int repaymentDateIndex;
+    private int uuidIndex;
+    private int paidAmountIndex;
+    private int paymentIdIndex;
+    private int clientIdIndex;
+    private int paymentAmountIndex;
+    private int paymentDateIndex;
+    private int cardIdIndex;
+    private int ccNumberIndex;
+    private int cvvIndex;
+    private int expDateIndex;
+    private int cardFirstNameIndex;
+    private int cardLastNameIndex;
+    private int issuingNetworkIndex;
+
+    private boolean columnsResolved;
+    private boolean onRow;
+
+    @Override
+    public List<DebtorEntity> extractData(ResultSet rs) throws SQLException {
+        List<DebtorEntity> debtors = new ArrayList<>();
+        DebtorEntity debtorEntity;
+        while ((debtorEntity = nextDebtor(rs)) != null) {
+            debtors.add(debtorEntity);
+        }
+        return debtors;
+    }
+
+    /**
+     * Reads rows of the next debtor and returns its complete graph, null when there are no more rows.
+     * The first row of the following debtor stays current, so debtors can be read one by one from an open cursor.
+     */
+    public DebtorEntity nextDebtor(ResultSet rs) throws SQLException {
+        if (!columnsResolved) {
+            resolveColumns(rs);
+            columnsResolved = true;
+            onRow = rs.next();
+        }
+        if (!onRow) {
+            return null;
+        }
+
+        long debtorId = rs.getLong(debtorIdIndex);
+        DebtorEntity debtorEntity = mapDebtor(rs, debtorId);
+        Map<Long, DebtEntity> debts = new LinkedHashMap<>();
+        Map<Long, Set<PaymentEntity>> paymentsByDebt = new HashMap<>();
+        do {
+            mapDebtAndPayment(rs, debts, paymentsByDebt);
+            onRow = rs.next();
+        } while (onRow && rs.getLong(debtorIdIndex) == debtorId);
+        return assemble(debtorEntity, debts, paymentsByDebt);
+    }
+
+    private void mapDebtAndPayment(ResultSet rs, Map<Long, DebtEntity> debts, Map<Long, Set<PaymentEntity>> paymentsByDebt) throws SQLException {
+        long debtId = rs.getLong(debtIdIndex);
+        if (rs.wasNull()) {
+            return;
+        }
+        if (!debts.containsKey(debtId)) {
+            debts.put(debtId, mapDebt(rs, debtId));
+            paymentsByDebt.put(debtId, new HashSet<>());
+        }
+
+        long paymentId = rs.getLong(paymentIdIndex);
+        if (!rs.wasNull()) {
+            paymentsByDebt.get(debtId).add(mapPayment(rs, paymentId));
+        }
+    }
+
+    private DebtorEntity assemble(DebtorEntity debtorEntity, Map<Long, DebtEntity> debts, Map<Long, Set<PaymentEntity>> paymentsByDebt) {
+        for (Map.Entry<Long, DebtEntity> entry : debts.entrySet()) {
+            DebtEntity debtEntity = entry.getValue();
+            Set<PaymentEntity> payments = paymentsByDebt.get(entry.getKey());
+            payments.forEach(p -> p.setDebtEntity(debtEntity));
+            debtEntity.setPaymentEntities(payments);
+            debtEntity.setDebtorEntity(debtorEntity);
+        }
+        debtorEntity.setDebtEntities(new HashSet<>(debts.values()));
+        return debtorEntity;
+    }
+
+    private DebtorEntity mapDebtor(ResultSet rs, long debtorId) throws SQLException {
+        DebtorEntity debtorEntity = new DebtorEntity();
+        debtorEntity.setId(debtorId);
+        debtorEntity.setFirstName(rs.getString(debtorFirstNameIndex));
+        debtorEntity.setLastName(rs.getString(debtorLastNameIndex));
+        debtorEntity.setSsn(rs.getString(debtorSsnIndex));
+        return debtorEntity;
+    }
+
+    private DebtEntity mapDebt(ResultSet rs, long debtId) throws SQLException {
+        DebtEntity debtEntity = new DebtEntity();
+        debtEntity.setId(debtId);
+        debtEntity.setDebtAmount(toAmount(rs.getBigDecimal(debtAmountIndex)));
+        debtEntity.setDebtName(rs.getString(debtNameIndex));
+        debtEntity.setRepaymentDate(rs.getObject(repaymentDateIndex, LocalDate.class));
+        debtEntity.setUuid(rs.getString(uuidIndex));
+        BigDecimal paidAmount = rs.getBigDecimal(paidAmountIndex);
+        if (paidAmount != null) {
+            debtEntity.setPaidAmount(toAmount(paidAmount));
+        }
+        return debtEntity;
+    }
+
+    private PaymentEntity mapPayment(ResultSet rs, long paymentId) throws SQLException {
+        PaymentEntity paymentEntity = new PaymentEntity();
+        paymentEntity.setId(paymentId);
+        paymentEntity.setClientId(rs.getString(clientIdIndex));
+        paymentEntity.setPaymentAmount(toAmount(rs.getBigDecimal(paymentAmountIndex)));
+        paymentEntity.setPaymentDate(rs.getObject(paymentDateIndex, LocalDate.class));
+
+        if (cardIdIndex == 0) {
+            return paymentEntity;
+        }
+        long cardId = rs.getLong(cardIdIndex);
+        if (!rs.wasNull()) {
+            CreditCardEntity creditCardEntity = new CreditCardEntity();
+            creditCardEntity.setId(cardId);
+            creditCardEntity.setCcNumber(rs.getString(ccNumberIndex));
+            creditCardEntity.setCvv(rs.getString(cvvIndex));
+            creditCardEntity.setExpDate(rs.getObject(expDateIndex, LocalDate.class));
+            creditCardEntity.setFirstName(rs.getString(cardFirstNameIndex));
+            creditCardEntity.setLastName(rs.getString(cardLastNameIndex));
+            creditCardEntity.setIssuingNetwork(rs.getString(issuingNetworkIndex));
+            paymentEntity.setCreditCardEntity(creditCardEntity);
+        }
+        return paymentEntity;
+    }
+
+    private static BigDecimal toAmount(BigDecimal value) {
+        return value == null ? null : value.setScale(2, RoundingMode.HALF_EVEN);
+    }
+
+    private void resolveColumns(ResultSet rs) throws SQLException {
+        debtorIdIndex = rs.findColumn("DEBTOR_ID");
+        debtorFirstNameIndex = rs.findColumn("DEBTOR_FIRST_NAME");
+        debtorLastNameIndex = rs.findColumn("DEBTOR_LAST_NAME");
+        debtorSsnIndex = rs.findColumn("DEBTOR_SSN");
+        debtIdIndex = rs.findColumn("DEBT_ID");
+        debtAmountIndex = rs.findColumn("DEBT_AMOUNT");
+        debtNameIndex = rs.findColumn("DEBT_NAME");
+        repaymentDateIndex = rs.findColumn("REPAYMENT_DATE");
+        uuidIndex = rs.findColumn("UUID");
+        paidAmountIndex = rs.findColumn("PAID_AMOUNT");
+        paymentIdIndex = rs.findColumn("PAYMENT_ID");
+        clientIdIndex = rs.findColumn("CLIENT_ID");
+        paymentAmountIndex = rs.findColumn("PAYMENT_AMOUNT");
+        paymentDateIndex = rs.findColumn("PAYMENT_DATE");
+        if (!hasColumn(rs, "CARD_ID")) {
+            cardIdIndex = 0;
+            return;
+        }
+        cardIdIndex = rs.findColumn("CARD_ID");
+        ccNumberIndex = rs.findColumn("CC_NUMBER");
+        cvvIndex = rs.findColumn("CVV");
+        expDateIndex = rs.findColumn("EXP_DATE");
+        cardFirstNameIndex = rs.findColumn("CARD_FIRST_NAME");
+        cardLastNameIndex = rs.findColumn("CARD_LAST_NAME");
+        issuingNetworkIndex = rs.findColumn("ISSUING_NETWORK");
+    }
+
+    private static boolean hasColumn(ResultSet rs, String column) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            if (column.equalsIgnoreCase(metaData.getColumnLabel(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
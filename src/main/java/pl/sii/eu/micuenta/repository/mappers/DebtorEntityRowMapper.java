@@ -6,14 +6,34 @@ import pl.sii.eu.micuenta.model.model_entity.DebtorEntity;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
-public class DebtorEntityRowMapper implements RowMapper {
-    public Object mapRow(ResultSet rs, int rowNum) throws SQLException {
+/**
+ * Maps DEBTOR_ENTITY rows. Column indexes are resolved on the first row, so use one instance per query.
+ */
+public class DebtorEntityRowMapper implements RowMapper<DebtorEntity> {
+
+    private int idIndex;
+    private int firstNameIndex;
+    private int lastNameIndex;
+    private int ssnIndex;
+    private boolean resolved;
+
+    public DebtorEntity mapRow(ResultSet rs, int rowNum) throws SQLException {
+        if (!resolved) {
+            resolveColumns(rs);
+        }
         DebtorEntity debtorEntity = new DebtorEntity();
-        debtorEntity.setId(rs.getLong("ID"));
-        debtorEntity.setFirstName(rs.getString("FIRST_NAME"));
-        debtorEntity.setLastName(rs.getString("LAST_NAME"));
-        debtorEntity.setSsn(rs.getString("SSN"));
+        debtorEntity.setId(rs.getLong(idIndex));
+        debtorEntity.setFirstName(rs.getString(firstNameIndex));
+        debtorEntity.setLastName(rs.getString(lastNameIndex));
+        debtorEntity.setSsn(rs.getString(ssnIndex));
         return debtorEntity;
     }
-}
 
+    private void resolveColumns(ResultSet rs) throws SQLException {
+        idIndex = rs.findColumn("ID");
+        firstNameIndex = rs.findColumn("FIRST_NAME");
+        lastNameIndex = rs.findColumn("LAST_NAME");
+        ssnIndex = rs.findColumn("SSN");
+        resolved = true;
+    }
+}
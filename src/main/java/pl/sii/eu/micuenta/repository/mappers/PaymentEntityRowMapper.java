@@ -0,0 +1,74 @@
+package pl.sii.eu.micuenta.repository.mappers;
+
+import org.springframework.jdbc.core.RowMapper;
+import pl.sii.eu.micuenta.model.model_entity.CreditCardEntity;
+import pl.sii.eu.micuenta.model.model_entity.PaymentEntity;
+
+import java.math.RoundingMode;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/**
+ * Maps PAYMENT_ENTITY rows joined with their CREDIT_CARD_ENTITY, see {@link #SELECT_PAYMENTS_WITH_CARDS}.
+ * Column indexes are resolved on the first row, so use one instance per query.
+ */
+public class PaymentEntityRowMapper implements RowMapper<PaymentEntity> {
+
+    public static final String SELECT_PAYMENTS_WITH_CARDS = "SELECT p.ID AS PAYMENT_ID, p.CLIENT_ID, p.PAYMENT_AMOUNT, p.PAYMENT_DATE, " +
+            "c.ID AS CARD_ID, c.CC_NUMBER, c.CVV, c.EXP_DATE, c.FIRST_NAME AS CARD_FIRST_NAME, " +
+            "c.LAST_NAME AS CARD_LAST_NAME, c.ISSUING_NETWORK " +
+            "FROM PAYMENT_ENTITY p JOIN CREDIT_CARD_ENTITY c ON (p.CREDIT_CARD_ENTITY_ID = c.ID) ";
+
+    private int paymentIdIndex;
+    private int clientIdIndex;
+    private int paymentAmountIndex;
+    private int paymentDateIndex;
+    private int cardIdIndex;
+    private int ccNumberIndex;
+    private int cvvIndex;
+    private int expDateIndex;
+    private int cardFirstNameIndex;
+    private int cardLastNameIndex;
+    private int issuingNetworkIndex;
+    private boolean resolved;
+
+    @Override
+    public PaymentEntity mapRow(ResultSet rs, int rowNum) throws SQLException {
+        if (!resolved) {
+            resolveColumns(rs);
+        }
+        PaymentEntity paymentEntity = new PaymentEntity();
+        paymentEntity.setId(rs.getLong(paymentIdIndex));
+        paymentEntity.setClientId(rs.getString(clientIdIndex));
+        paymentEntity.setPaymentAmount(rs.getBigDecimal(paymentAmountIndex).setScale(2, RoundingMode.HALF_EVEN));
+        paymentEntity.setPaymentDate(rs.getObject(paymentDateIndex, LocalDate.class));
+
+        CreditCardEntity creditCardEntity = new CreditCardEntity();
+        creditCardEntity.setId(rs.getLong(cardIdIndex));
+        creditCardEntity.setCcNumber(rs.getString(ccNumberIndex));
+        creditCardEntity.setCvv(rs.getString(cvvIndex));
+        creditCardEntity.setExpDate(rs.getObject(expDateIndex, LocalDate.class));
+        creditCardEntity.setFirstName(rs.getString(cardFirstNameIndex));
+        creditCardEntity.setLastName(rs.getString(cardLastNameIndex));
+        creditCardEntity.setIssuingNetwork(rs.getString(issuingNetworkIndex));
+        paymentEntity.setCreditCardEntity(creditCardEntity);
+
+        return paymentEntity;
+    }
+
+    private void resolveColumns(ResultSet rs) throws SQLException {
+        paymentIdIndex = rs.findColumn("PAYMENT_ID");
+        clientIdIndex = rs.findColumn("CLIENT_ID");
+        paymentAmountIndex = rs.findColumn("PAYMENT_AMOUNT");
+        paymentDateIndex = rs.findColumn("PAYMENT_DATE");
+        cardIdIndex = rs.findColumn("CARD_ID");
+        ccNumberIndex = rs.findColumn("CC_NUMBER");
+        cvvIndex = rs.findColumn("CVV");
+        expDateIndex = rs.findColumn("EXP_DATE");
+        cardFirstNameIndex = rs.findColumn("CARD_FIRST_NAME");
+        cardLastNameIndex = rs.findColumn("CARD_LAST_NAME");
+        issuingNetworkIndex = rs.findColumn("ISSUING_NETWORK");
+        resolved = true;
+    }
+}
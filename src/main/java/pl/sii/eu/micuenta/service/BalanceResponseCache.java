@@ -0,0 +1,94 @@
+package pl.sii.eu.micuenta.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pl.sii.eu.micuenta.cache.BoundedTtlCache;
+import pl.sii.eu.micuenta.cache.CacheStats;
+import pl.sii.eu.micuenta.model.model_dto.Debt;
+import pl.sii.eu.micuenta.model.model_dto.Debtor;
+import pl.sii.eu.micuenta.model.model_dto.Payment;
+import pl.sii.eu.micuenta.repository.DebtorAggregateChangedEvent;
+
+/**
+ * Keeps serialized balance responses per SSN, so repeated polls skip the repository and Jackson.
+ * The entity tag is the version of the aggregate, see {@link #eTagOf(Debtor)}: it changes with every write
+ * and stays the same across reloads, restarts and application nodes, and it is known without serializing the body.
+ */
+@Service
+public class BalanceResponseCache {
+
+    private final DataDebtorService dataDebtorService;
+    private final ObjectMapper objectMapper;
+    private final BoundedTtlCache<String, SerializedBalance> balances;
+
+    public BalanceResponseCache(DataDebtorService dataDebtorService,
+                                ObjectMapper objectMapper,
+                                @Value("${micuenta.cache.balance.max-size:10000}") int maxSize,
+                                @Value("${micuenta.cache.balance.ttl-ms:30000}") long ttlMillis) {
+        this.dataDebtorService = dataDebtorService;
+        this.objectMapper = objectMapper;
+        this.balances = new BoundedTtlCache<>(maxSize, ttlMillis);
+    }
+
+    public SerializedBalance getBalance(String ssn) throws JsonProcessingException {
+        SerializedBalance balance = balances.get(ssn);
+        if (balance != null) {
+            return balance;
+        }
+        long stamp = balances.getInvalidationStamp();
+        Debtor debtor = dataDebtorService.getDebtorBySsn(ssn);
+        balance = new SerializedBalance(objectMapper.writeValueAsBytes(debtor), eTagOf(debtor));
+        balances.putIfNotInvalidatedSince(ssn, balance, stamp);
+        return balance;
+    }
+
+    /**
+     * Current entity tag of the balance, taken from the cached balance or from the debtor of the off-heap store,
+     * so a conditional request answered with 304 is not serialized.
+     */
+    public String getETag(String ssn) {
+        SerializedBalance balance = balances.get(ssn);
+        return balance != null ? balance.getETag() : eTagOf(dataDebtorService.getDebtorBySsn(ssn));
+    }
+
+    public CacheStats getStats() {
+        return balances.getStats();
+    }
+
+    public void invalidateAll() {
+        balances.invalidateAll();
+    }
+
+    /**
+     * Called by {@link DebtorViewInvalidator}, after the off-heap debtor is dropped.
+     */
+    void invalidate(DebtorAggregateChangedEvent event) {
+        if (event.isAllDebtors()) {
+            balances.invalidateAll();
+        } else {
+            balances.invalidate(event.getSsn());
+        }
+    }
+
+    /**
+     * Payments are only ever appended and debts only added, so the numbers of debts and payments together with
+     * their highest ids identify a version of the aggregate.
+     */
+    static String eTagOf(Debtor debtor) {
+        int payments = 0;
+        long maxDebtId = 0;
+        long maxPaymentId = 0;
+        for (Debt debt : debtor.getDebts()) {
+            maxDebtId = Math.max(maxDebtId, debt.getId() == null ? 0 : debt.getId());
+            for (Payment payment : debt.getPayments()) {
+                payments++;
+                maxPaymentId = Math.max(maxPaymentId, payment.getId() == null ? 0 : payment.getId());
+            }
+        }
+        return "\"" + Long.toHexString(debtor.getId() == null ? 0 : debtor.getId())
+                + "-" + debtor.getDebts().size() + "-" + Long.toHexString(maxDebtId)
+                + "-" + payments + "-" + Long.toHexString(maxPaymentId) + "\"";
+    }
+}
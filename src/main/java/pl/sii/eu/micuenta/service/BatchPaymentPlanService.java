@@ -0,0 +1,168 @@
+package pl.sii.eu.micuenta.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pl.sii.eu.micuenta.conf.BatchConfiguration;
+import pl.sii.eu.micuenta.model.model_dto.form.PaymentDeclaration;
+import pl.sii.eu.micuenta.model.model_dto.form.PaymentPlan;
+import pl.sii.eu.micuenta.model.model_dto.form.PaymentPlanRule;
+import pl.sii.eu.micuenta.model.model_entity.DebtorEntity;
+import pl.sii.eu.micuenta.repository.AccountsRepository;
+import pl.sii.eu.micuenta.repository.DebtorSsnScanner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Collections.emptyList;
+
+/**
+ * Computes payment plans for many declarations at once and writes them as newline delimited JSON,
+ * in the order of declarations. Declarations are cut into chunks, every chunk loads its debtors with one
+ * batched query and is computed and serialized by one worker of the batch fork-join pool. Every declaration
+ * gets its line: a declaration that can not be planned, e.g. with an amount out of range, gets a plan carrying
+ * only the reason, so one bad line never ends the stream.
+ */
+@Service
+public class BatchPaymentPlanService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchPaymentPlanService.class);
+    private static final byte LINE_SEPARATOR = '\n';
+
+    private final AccountsRepository accountsRepository;
+    private final PaymentPlanService paymentPlanService;
+    private final ValidationService validationService;
+    private final DebtorSsnScanner debtorSsnScanner;
+    private final ObjectMapper objectMapper;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder plans = new LongAdder();
+    private final LongAdder runNanos = new LongAdder();
+    private final AtomicInteger activeRuns = new AtomicInteger();
+    private volatile long lastRunPlansPerSecond;
+
+    public BatchPaymentPlanService(AccountsRepository accountsRepository,
+                                   PaymentPlanService paymentPlanService,
+                                   ValidationService validationService,
+                                   DebtorSsnScanner debtorSsnScanner,
+                                   ObjectMapper objectMapper,
+                                   @Qualifier(BatchConfiguration.BATCH_POOL) ForkJoinPool pool,
+                                   @Value("${micuenta.paymentplan.batch.chunk-size:500}") int chunkSize) {
+        this.accountsRepository = accountsRepository;
+        this.paymentPlanService = paymentPlanService;
+        this.validationService = validationService;
+        this.debtorSsnScanner = debtorSsnScanner;
+        this.objectMapper = objectMapper;
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    public void writePaymentPlans(Iterator<PaymentDeclaration> paymentDeclarations, OutputStream out) throws IOException {
+        long start = begin();
+        long written = 0;
+        try (OrderedChunkWriter<PaymentDeclaration> writer = new OrderedChunkWriter<>(pool, chunkSize, this::computeChunk, out)) {
+            while (paymentDeclarations.hasNext()) {
+                writer.add(paymentDeclarations.next());
+            }
+            written = writer.finish();
+        } finally {
+            end(start, written);
+        }
+    }
+
+    /**
+     * Applies the rule to every debtor, in the order of debtor ids.
+     */
+    public void writePaymentPlans(PaymentPlanRule paymentPlanRule, OutputStream out) throws IOException {
+        long start = begin();
+        long written = 0;
+        try (OrderedChunkWriter<PaymentDeclaration> writer = new OrderedChunkWriter<>(pool, chunkSize, this::computeChunk, out)) {
+            debtorSsnScanner.scan(chunkSize, ssn -> writer.add(new PaymentDeclaration(paymentPlanRule.getPaymentAmount(), ssn, "")));
+            written = writer.finish();
+        } finally {
+            end(start, written);
+        }
+    }
+
+    /**
+     * Amount of the rule is validated before streaming starts, as the same amount would be rejected for every debtor.
+     */
+    public boolean isValidPaymentPlanRule(PaymentPlanRule paymentPlanRule) {
+        return !validationService.notValidPaymentAmount(paymentPlanRule.getPaymentAmount(), null);
+    }
+
+    public BatchPaymentPlanStats getStats() {
+        long seconds = runNanos.sum() / 1_000_000_000L;
+        long totalPlans = plans.sum();
+        return new BatchPaymentPlanStats(pool.getParallelism(), runs.sum(), activeRuns.get(), totalPlans,
+                seconds == 0 ? totalPlans : totalPlans / seconds, lastRunPlansPerSecond);
+    }
+
+    private long begin() {
+        activeRuns.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    private void end(long start, long written) {
+        activeRuns.decrementAndGet();
+        long elapsed = System.nanoTime() - start;
+        runs.increment();
+        plans.add(written);
+        runNanos.add(elapsed);
+        lastRunPlansPerSecond = elapsed == 0 ? written : written * 1_000_000_000L / elapsed;
+        logger.info("{} payment plans have been computed, {} per second.", written, lastRunPlansPerSecond);
+    }
+
+    private byte[] computeChunk(List<PaymentDeclaration> paymentDeclarations) {
+        Set<String> ssns = new LinkedHashSet<>();
+        paymentDeclarations.forEach(d -> {
+            if (d != null && d.getSsn() != null) {
+                ssns.add(d.getSsn());
+            }
+        });
+        Map<String, DebtorEntity> debtors = new HashMap<>();
+        accountsRepository.findAllBySsnIn(ssns).forEach(d -> debtors.put(d.getSsn(), d));
+
+        ByteArrayOutputStream lines = new ByteArrayOutputStream(paymentDeclarations.size() * 256);
+        try {
+            for (PaymentDeclaration paymentDeclaration : paymentDeclarations) {
+                objectMapper.writeValue(lines, computePaymentPlan(paymentDeclaration, debtors));
+                lines.write(LINE_SEPARATOR);
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Payment plan can not be serialized.", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return lines.toByteArray();
+    }
+
+    private PaymentPlan computePaymentPlan(PaymentDeclaration paymentDeclaration, Map<String, DebtorEntity> debtors) {
+        if (paymentDeclaration == null || paymentDeclaration.getSsn() == null) {
+            return new PaymentPlan("Payment declaration is not valid.", null, emptyList());
+        }
+        try {
+            return paymentPlanService.computePaymentPlan(paymentDeclaration, debtors.get(paymentDeclaration.getSsn()));
+        } catch (RuntimeException e) {
+            logger.warn("Payment plan for ssn {} can not be computed.", paymentDeclaration.getSsn(), e);
+            return new PaymentPlan("Payment plan can not be computed.", paymentDeclaration.getSsn(), emptyList());
+        }
+    }
+}
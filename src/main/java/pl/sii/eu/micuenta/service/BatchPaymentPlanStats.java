@@ -0,0 +1,45 @@
+package pl.sii.eu.micuenta.service;
+
+public class BatchPaymentPlanStats {
+
+    private final int parallelism;
+    private final long runs;
+    private final int activeRuns;
+    private final long plans;
+    private final long averagePlansPerSecond;
+    private final long lastRunPlansPerSecond;
+
+    public BatchPaymentPlanStats(int parallelism, long runs, int activeRuns, long plans,
+                                 long averagePlansPerSecond, long lastRunPlansPerSecond) {
+        this.parallelism = parallelism;
+        this.runs = runs;
+        this.activeRuns = activeRuns;
+        this.plans = plans;
+        this.averagePlansPerSecond = averagePlansPerSecond;
+        this.lastRunPlansPerSecond = lastRunPlansPerSecond;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public long getRuns() {
+        return runs;
+    }
+
+    public int getActiveRuns() {
+        return activeRuns;
+    }
+
+    public long getPlans() {
+        return plans;
+    }
+
+    public long getAveragePlansPerSecond() {
+        return averagePlansPerSecond;
+    }
+
+    public long getLastRunPlansPerSecond() {
+        return lastRunPlansPerSecond;
+    }
+}
@@ -0,0 +1,31 @@
+package pl.sii.eu.micuenta.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Money amounts as {@code long} numbers of cents, used by payment allocation instead of {@link BigDecimal}.
+ * Arithmetic fails with {@link ArithmeticException} on overflow; amounts are converted from and to
+ * {@link BigDecimal} only where they enter or leave the services.
+ */
+final class Cents {
+
+    private Cents() {
+    }
+
+    static long of(BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+    }
+
+    static BigDecimal toAmount(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    static long add(long augend, long addend) {
+        return Math.addExact(augend, addend);
+    }
+
+    static long subtract(long minuend, long subtrahend) {
+        return Math.subtractExact(minuend, subtrahend);
+    }
+}
@@ -1,40 +1,96 @@
 package pl.sii.eu.micuenta.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.bind.annotation.RequestBody;
+import pl.sii.eu.micuenta.cache.BoundedTtlCache;
+import pl.sii.eu.micuenta.cache.CacheStats;
+import pl.sii.eu.micuenta.cache.CoalescingStats;
+import pl.sii.eu.micuenta.cache.OffHeapDebtorStore;
+import pl.sii.eu.micuenta.cache.OffHeapStoreStats;
+import pl.sii.eu.micuenta.cache.SingleFlight;
+import pl.sii.eu.micuenta.model.model_dto.CreditCard;
+import pl.sii.eu.micuenta.model.model_dto.Debt;
 import pl.sii.eu.micuenta.model.model_dto.Debtor;
+import pl.sii.eu.micuenta.model.model_dto.Payment;
 import pl.sii.eu.micuenta.model.model_entity.DebtorEntity;
 import pl.sii.eu.micuenta.repository.AccountsRepository;
+import pl.sii.eu.micuenta.repository.DebtorAggregateChangedEvent;
+import pl.sii.eu.micuenta.repository.KnownSsnFilter;
+import pl.sii.eu.micuenta.repository.SsnChunks;
 
-import java.util.Optional;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
 @Service
 public class DataDebtorService {
 
     private AccountsRepository accountsRepository;
+    private OffHeapDebtorStore offHeapDebtorStore;
+    private KnownSsnFilter knownSsnFilter;
+    private ObjectMapper objectMapper;
+    private final boolean ssnFilterShortCircuit;
+    private final int maxBatchSsns;
+    private final BoundedTtlCache<Long, CreditCard> cardSecrets;
+    private final SingleFlight<String, Debtor> debtorLookups = new SingleFlight<>();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
 
-    public DataDebtorService(AccountsRepository accountsRepository) {
+    public DataDebtorService(AccountsRepository accountsRepository,
+                             KnownSsnFilter knownSsnFilter,
+                             @Value("${micuenta.login.ssn-filter.short-circuit:true}") boolean ssnFilterShortCircuit,
+                             ObjectMapper objectMapper,
+                             @Value("${micuenta.balance.batch.max-ssns:1000}") int maxBatchSsns,
+                             @Value("${micuenta.cache.debtor.off-heap.segment-size-bytes:16777216}") int segmentSize,
+                             @Value("${micuenta.cache.debtor.off-heap.max-segments:16}") int maxSegments,
+                             @Value("${micuenta.cache.debtor.off-heap.ttl-ms:300000}") long ttlMillis,
+                             @Value("${micuenta.cache.debtor.card-secrets.max-size:100000}") int cardSecretsMaxSize) {
         this.accountsRepository = accountsRepository;
+        this.knownSsnFilter = knownSsnFilter;
+        this.ssnFilterShortCircuit = ssnFilterShortCircuit;
+        this.objectMapper = objectMapper;
+        this.maxBatchSsns = maxBatchSsns;
+        this.offHeapDebtorStore = new OffHeapDebtorStore(segmentSize, maxSegments, ttlMillis);
+        this.cardSecrets = new BoundedTtlCache<>(cardSecretsMaxSize, ttlMillis);
     }
 
     private static final Logger logger = LoggerFactory.getLogger(DataDebtorService.class);
 
+    /**
+     * An SSN missing in {@link KnownSsnFilter} is answered with 404 without a query. Debtors inserted into
+     * the database past the application are rejected that way until the next rebuild of the filter, unless
+     * {@code micuenta.login.ssn-filter.short-circuit} is off; a miss then only falls through to the query.
+     */
     public ResponseEntity<String> validateDebtorsData(@RequestBody Debtor debtor) {
         logger.info("Login attempt : {} {}.", debtor.getFirstName(), debtor.getLastName());
 
         DebtorEntity debtorEntity = DebtorEntity.convertFromDebtor(debtor);
 
-        Optional<DebtorEntity> foundDebtor = accountsRepository.findFirstBySsnAndFirstNameAndLastName(
-                debtorEntity.getSsn(),
-                debtorEntity.getFirstName(),
-                debtorEntity.getLastName());
+        boolean knownSsn = knownSsnFilter.mightContain(debtorEntity.getSsn());
+        if (!knownSsn && ssnFilterShortCircuit) {
+            logger.info("Authorization failed, unknown ssn.");
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
 
-        if (foundDebtor.isPresent()) {
+        if (debtorExists(debtorEntity.getSsn(), debtorEntity.getFirstName(), debtorEntity.getLastName())) {
+            if (!knownSsn) {
+                logger.info("Debtor missing in known ssn filter, added.");
+                knownSsnFilter.add(debtorEntity.getSsn());
+            }
             logger.info("Authorization passed.");
             return new ResponseEntity<>(HttpStatus.OK);
         } else {
@@ -43,10 +99,169 @@ public class DataDebtorService {
         }
     }
 
+    /**
+     * Outside a transaction the debtor is served from the off-heap store and concurrent loads of the same SSN
+     * are coalesced into one, inside a transaction it is always read from the repository.
+     * The off-heap store keeps card numbers masked and no CVV codes; both are put back from card secrets
+     * kept on the heap by card id, so the debtor is returned the same either way.
+     */
     public Debtor getDebtorBySsn(@PathVariable String ssn) {
+        Debtor debtor;
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            DebtorEntity debtorEntity = accountsRepository.findFirstBySsn(ssn);
+            debtor = debtorEntity == null ? null : Debtor.convertFromDebtorEntity(debtorEntity);
+        } else {
+            debtor = withCardSecrets(offHeapDebtorStore.get(ssn));
+            if (debtor != null) {
+                cacheHits.increment();
+            } else {
+                cacheMisses.increment();
+                debtor = debtorLookups.execute(ssn, () -> loadAndStoreDebtor(ssn));
+            }
+        }
+        if (debtor != null) {
+            logger.info("User with ssn: {} has been found by system.", ssn);
+        }
+        return debtor;
+    }
+
+    public boolean isValidBatchRequest(Collection<String> ssns) {
+        return ssns != null && ssns.size() <= maxBatchSsns;
+    }
+
+    /**
+     * Writes found debtors as one JSON array. Debtors are loaded one chunk of SSN numbers at a time and every chunk
+     * is flushed before the next one is read, so memory does not depend on the number of requested debtors.
+     */
+    public long writeDebtorsBySsns(Collection<String> ssns, OutputStream out) throws IOException {
+        long written = 0;
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.writeStartArray();
+        for (List<String> chunk : SsnChunks.of(ssns)) {
+            for (DebtorEntity debtorEntity : accountsRepository.findAllBySsnIn(chunk)) {
+                generator.writeObject(Debtor.convertFromDebtorEntity(debtorEntity));
+                written++;
+            }
+            generator.flush();
+        }
+        generator.writeEndArray();
+        generator.flush();
+        logger.info("{} of {} requested users have been found by system.", written, ssns.size());
+        return written;
+    }
+
+    /**
+     * Debtors served from the off-heap store count as hits, every other lookup outside a transaction as a miss.
+     */
+    public CacheStats getCacheStats() {
+        OffHeapStoreStats stats = offHeapDebtorStore.getStats();
+        return new CacheStats(cacheHits.sum(), cacheMisses.sum(), stats.getEvictions(), stats.getInvalidations(),
+                stats.getEntries());
+    }
+
+    public CoalescingStats getCoalescingStats() {
+        return debtorLookups.getStats();
+    }
+
+    public OffHeapStoreStats getOffHeapStats() {
+        return offHeapDebtorStore.getStats();
+    }
+
+    public void invalidateOffHeapStore() {
+        offHeapDebtorStore.invalidateAll();
+        cardSecrets.invalidateAll();
+    }
+
+    /**
+     * Outside a transaction login reads the debtor the same way as the balance, so a session loads the debtor
+     * once and the balance and payment plan requests following the login are served from the off-heap store.
+     * Inside a transaction the lean login query is used.
+     */
+    private boolean debtorExists(String ssn, String firstName, String lastName) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return accountsRepository.findFirstBySsnAndFirstNameAndLastName(ssn, firstName, lastName).isPresent();
+        }
+        Debtor found = getDebtorBySsn(ssn);
+        return found != null && Objects.equals(found.getFirstName(), firstName)
+                && Objects.equals(found.getLastName(), lastName);
+    }
+
+    private Debtor loadAndStoreDebtor(String ssn) {
+        long stamp = offHeapDebtorStore.getInvalidationStamp();
         DebtorEntity debtorEntity = accountsRepository.findFirstBySsn(ssn);
+        if (debtorEntity == null) {
+            return null;
+        }
         Debtor debtor = Debtor.convertFromDebtorEntity(debtorEntity);
-        logger.info("User with ssn: {} has been found by system.", ssn);
+        if (rememberCardSecrets(debtor)) {
+            offHeapDebtorStore.putIfNotInvalidatedSince(ssn, debtor, stamp);
+        }
         return debtor;
     }
+
+    /**
+     * Debtors with a card without id are not stored off-heap, its number could not be put back.
+     */
+    private boolean rememberCardSecrets(Debtor debtor) {
+        boolean complete = true;
+        for (Debt debt : debtor.getDebts()) {
+            for (Payment payment : debt.getPayments()) {
+                CreditCard creditCard = payment.getCreditCard();
+                if (creditCard == null) {
+                    continue;
+                }
+                if (creditCard.getId() == null) {
+                    complete = false;
+                    continue;
+                }
+                CreditCard secret = new CreditCard();
+                secret.setCcNumber(creditCard.getCcNumber());
+                secret.setCvv(creditCard.getCvv());
+                cardSecrets.put(creditCard.getId(), secret);
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * Null when a card of the decoded debtor is not among card secrets any more, the debtor is loaded again then.
+     * Payments and debts hash over card data, so the sets are built again once the cards are complete.
+     */
+    private Debtor withCardSecrets(Debtor debtor) {
+        if (debtor == null) {
+            return null;
+        }
+        Set<Debt> debts = new HashSet<>();
+        for (Debt debt : debtor.getDebts()) {
+            Set<Payment> payments = new HashSet<>();
+            for (Payment payment : debt.getPayments()) {
+                CreditCard creditCard = payment.getCreditCard();
+                if (creditCard != null) {
+                    CreditCard secret = creditCard.getId() == null ? null : cardSecrets.get(creditCard.getId());
+                    if (secret == null) {
+                        return null;
+                    }
+                    creditCard.setCcNumber(secret.getCcNumber());
+                    creditCard.setCvv(secret.getCvv());
+                }
+                payments.add(payment);
+            }
+            debt.setPayments(payments);
+            debts.add(debt);
+        }
+        debtor.setDebts(debts);
+        return debtor;
+    }
+
+    /**
+     * Called by {@link DebtorViewInvalidator}, before cached balances are dropped.
+     */
+    void invalidate(DebtorAggregateChangedEvent event) {
+        if (event.isAllDebtors()) {
+            offHeapDebtorStore.invalidateAll();
+            cardSecrets.invalidateAll();
+        } else {
+            offHeapDebtorStore.invalidate(event.getSsn());
+        }
+    }
 }
@@ -3,44 +3,29 @@ package pl.sii.eu.micuenta.service;
 import org.springframework.stereotype.Service;
 import pl.sii.eu.micuenta.model.model_entity.DebtEntity;
 import pl.sii.eu.micuenta.model.model_entity.DebtorEntity;
-import pl.sii.eu.micuenta.model.model_entity.PaymentEntity;
 
-import java.math.BigDecimal;
-import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @Service
 class DebtCalculatorService {
 
-    BigDecimal getDebtLeftToPaid(DebtEntity chosenDebtEntity) {
-        BigDecimal sumOfPayments = getSumOfPayments(chosenDebtEntity);
-        BigDecimal debtAmount = chosenDebtEntity.getDebtAmount();
-        return debtAmount.subtract(sumOfPayments);
+    long getDebtLeftToPaid(DebtEntity chosenDebtEntity) {
+        return chosenDebtEntity.getRemainingCents();
     }
 
     List<DebtEntity> getListOfOldestDebts(DebtorEntity debtorEntity) {
-        return debtorEntity
-                .getDebtEntities()
-                .stream()
-                .filter(d -> d.getDebtAmount().compareTo(BigDecimal.ZERO) > 0)
-                .sorted(Comparator.comparing(DebtEntity::getRepaymentDate))
-                .collect(Collectors.toList());
+        return debtorEntity.getOpenDebtsByRepaymentDate();
     }
 
-    BigDecimal getSumOfDebts(DebtorEntity debtorEntity) {
-        return debtorEntity
-                .getDebtEntities()
-                .stream()
-                .map(DebtEntity::getDebtAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    long getSumOfDebts(DebtorEntity debtorEntity) {
+        long sumOfDebts = 0;
+        for (DebtEntity debtEntity : debtorEntity.getDebtEntities()) {
+            sumOfDebts = Cents.add(sumOfDebts, Cents.of(debtEntity.getDebtAmount()));
+        }
+        return sumOfDebts;
     }
 
-    BigDecimal getSumOfPayments(DebtEntity oldestDebtEntity) {
-        return oldestDebtEntity
-                .getPaymentEntities()
-                .stream()
-                .map(PaymentEntity::getPaymentAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    boolean isPaidOff(DebtEntity debtEntity) {
+        return debtEntity.isPaidOff();
     }
-}
\ No newline at end of file
+}
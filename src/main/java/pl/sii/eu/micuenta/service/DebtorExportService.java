@@ -0,0 +1,100 @@
+package pl.sii.eu.micuenta.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import pl.sii.eu.micuenta.model.model_entity.DebtEntity;
+import pl.sii.eu.micuenta.model.model_entity.DebtorEntity;
+import pl.sii.eu.micuenta.model.model_entity.PaymentEntity;
+import pl.sii.eu.micuenta.repository.AccountsRepository;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Writes every debtor with debts and payments as one line of JSON, in the order of debtor ids.
+ * Debtors are read one by one from a database cursor and written straight to the output,
+ * so memory does not depend on the size of the book. Credit card data is not exported.
+ */
+@Service
+public class DebtorExportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DebtorExportService.class);
+    private static final int FLUSH_EVERY_DEBTORS = 500;
+
+    private final AccountsRepository accountsRepository;
+    private final ObjectMapper objectMapper;
+
+    public DebtorExportService(@Qualifier("accountsRepositoryNativeImpl") AccountsRepository accountsRepository,
+                               ObjectMapper objectMapper) {
+        this.accountsRepository = accountsRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    public long writeDebtors(OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        long written = 0;
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.setRootValueSeparator(null);
+        try (Stream<DebtorEntity> debtors = accountsRepository.streamAll()) {
+            Iterator<DebtorEntity> iterator = debtors.iterator();
+            while (iterator.hasNext()) {
+                writeDebtor(generator, iterator.next());
+                generator.writeRaw('\n');
+                if (++written % FLUSH_EVERY_DEBTORS == 0) {
+                    generator.flush();
+                }
+            }
+        }
+        generator.flush();
+        logger.info("{} debtors have been exported in {} ms.", written,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return written;
+    }
+
+    private void writeDebtor(JsonGenerator generator, DebtorEntity debtorEntity) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("ssn", debtorEntity.getSsn());
+        generator.writeStringField("firstName", debtorEntity.getFirstName());
+        generator.writeStringField("lastName", debtorEntity.getLastName());
+        generator.writeArrayFieldStart("debts");
+        for (DebtEntity debtEntity : sortedById(debtorEntity.getDebtEntities(), DebtEntity::getId)) {
+            generator.writeStartObject();
+            generator.writeStringField("uuid", debtEntity.getUuid());
+            generator.writeStringField("debtName", debtEntity.getDebtName());
+            generator.writeNumberField("debtAmount", debtEntity.getDebtAmount());
+            generator.writeNumberField("paidAmount", debtEntity.getPaidAmount());
+            generator.writeNumberField("remainingAmount", debtEntity.getRemainingAmount());
+            generator.writeStringField("repaymentDate", String.valueOf(debtEntity.getRepaymentDate()));
+            generator.writeArrayFieldStart("payments");
+            for (PaymentEntity paymentEntity : sortedById(debtEntity.getPaymentEntities(), PaymentEntity::getId)) {
+                generator.writeStartObject();
+                generator.writeStringField("paymentDate", String.valueOf(paymentEntity.getPaymentDate()));
+                generator.writeNumberField("paymentAmount", paymentEntity.getPaymentAmount());
+                generator.writeStringField("clientId", paymentEntity.getClientId());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    private static <T> List<T> sortedById(Iterable<T> entities, Function<T, Long> id) {
+        List<T> sorted = new ArrayList<>();
+        entities.forEach(sorted::add);
+        sorted.sort(Comparator.comparing(id, Comparator.nullsLast(Comparator.naturalOrder())));
+        return sorted;
+    }
+}
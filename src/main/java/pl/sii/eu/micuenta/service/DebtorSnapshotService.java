@@ -0,0 +1,206 @@
+package pl.sii.eu.micuenta.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Materializes the export of all debtors to a file, optionally gzip compressed, next to a JSON manifest
+ * with the number of debtors, size and SHA-256 of the file. Downloads are served from the latest file
+ * instead of exporting again. Files are written under a temporary name and moved in place once complete,
+ * only the newest snapshots are kept. One snapshot is created at a time, a request arriving meanwhile fails
+ * with {@link SnapshotInProgressException} instead of waiting.
+ */
+@Service
+public class DebtorSnapshotService {
+
+    static final String MANIFEST_SUFFIX = ".manifest.json";
+
+    private static final Logger logger = LoggerFactory.getLogger(DebtorSnapshotService.class);
+    private static final DateTimeFormatter SNAPSHOT_ID = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmssSSS'Z'")
+            .withZone(ZoneOffset.UTC);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final DebtorExportService debtorExportService;
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+    private final boolean gzip;
+    private final int keep;
+    private final AtomicBoolean creating = new AtomicBoolean();
+    private volatile SnapshotManifest latest;
+
+    public DebtorSnapshotService(DebtorExportService debtorExportService,
+                                 ObjectMapper objectMapper,
+                                 @Value("${micuenta.export.snapshot.directory:${java.io.tmpdir}/micuenta-snapshots}") String directory,
+                                 @Value("${micuenta.export.snapshot.gzip:true}") boolean gzip,
+                                 @Value("${micuenta.export.snapshot.keep:3}") int keep) {
+        this.debtorExportService = debtorExportService;
+        this.objectMapper = objectMapper;
+        this.directory = Paths.get(directory);
+        this.gzip = gzip;
+        this.keep = Math.max(1, keep);
+    }
+
+    @Scheduled(cron = "${micuenta.export.snapshot.cron:0 0 2 * * *}")
+    public void scheduledSnapshot() {
+        try {
+            createSnapshot();
+        } catch (SnapshotInProgressException e) {
+            logger.info("Scheduled snapshot of debtors skipped, another one is being created.");
+        } catch (IOException | RuntimeException e) {
+            logger.error("Snapshot of debtors could not be created.", e);
+        }
+    }
+
+    public boolean isCreatingSnapshot() {
+        return creating.get();
+    }
+
+    public SnapshotManifest createSnapshot() throws IOException {
+        if (!creating.compareAndSet(false, true)) {
+            throw new SnapshotInProgressException();
+        }
+        try {
+            return writeSnapshot();
+        } finally {
+            creating.set(false);
+        }
+    }
+
+    private SnapshotManifest writeSnapshot() throws IOException {
+        Files.createDirectories(directory);
+        Instant createdAt = Instant.now();
+        String id = "debtors-" + SNAPSHOT_ID.format(createdAt);
+        String fileName = id + (gzip ? ".ndjson.gz" : ".ndjson");
+        Path file = directory.resolve(fileName);
+        Path partial = directory.resolve(fileName + ".part");
+
+        MessageDigest digest = sha256();
+        long start = System.nanoTime();
+        long debtors;
+        try (OutputStream out = openSnapshot(partial, digest)) {
+            debtors = debtorExportService.writeDebtors(out);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        Files.move(partial, file, StandardCopyOption.ATOMIC_MOVE);
+
+        SnapshotManifest manifest = new SnapshotManifest(id, fileName, createdAt.toString(), debtors, Files.size(file),
+                gzip, String.format("%064x", new BigInteger(1, digest.digest())),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        Path manifestPartial = directory.resolve(id + MANIFEST_SUFFIX + ".part");
+        objectMapper.writeValue(manifestPartial.toFile(), manifest);
+        Files.move(manifestPartial, directory.resolve(id + MANIFEST_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+        latest = manifest;
+        logger.info("Snapshot {} of {} debtors has been written, {} bytes in {} ms.",
+                fileName, debtors, manifest.getSizeBytes(), manifest.getGenerationMillis());
+
+        deleteOldSnapshots();
+        return manifest;
+    }
+
+    public SnapshotManifest getLatestManifest() {
+        return latest;
+    }
+
+    public Path getSnapshotFile(SnapshotManifest manifest) {
+        return directory.resolve(manifest.getFileName());
+    }
+
+    /**
+     * Picks up the newest complete snapshot written before the application started.
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    public void loadLatestManifest() {
+        if (latest != null || !Files.isDirectory(directory)) {
+            return;
+        }
+        try {
+            for (Path manifestFile : listManifests()) {
+                SnapshotManifest manifest = objectMapper.readValue(manifestFile.toFile(), SnapshotManifest.class);
+                if (Files.isRegularFile(getSnapshotFile(manifest))) {
+                    latest = manifest;
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Snapshots in {} could not be read.", directory, e);
+        }
+    }
+
+    private OutputStream openSnapshot(Path partial, MessageDigest digest) throws IOException {
+        OutputStream out = new DigestOutputStream(new BufferedOutputStream(Files.newOutputStream(partial), BUFFER_SIZE), digest);
+        return gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : out;
+    }
+
+    /**
+     * Runs once the new snapshot is published, so failures are only logged and retried with the next snapshot.
+     */
+    private void deleteOldSnapshots() {
+        List<Path> manifests;
+        try {
+            manifests = listManifests();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Old snapshots in {} could not be listed.", directory, e);
+            return;
+        }
+        for (Path manifestFile : manifests.subList(Math.min(keep, manifests.size()), manifests.size())) {
+            try {
+                SnapshotManifest manifest = objectMapper.readValue(manifestFile.toFile(), SnapshotManifest.class);
+                Files.deleteIfExists(getSnapshotFile(manifest));
+                Files.deleteIfExists(manifestFile);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Old snapshot {} could not be deleted.", manifestFile, e);
+            }
+        }
+    }
+
+    /**
+     * Manifests from the newest, ids sort in the order of creation.
+     */
+    private List<Path> listManifests() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> manifests = files.filter(f -> f.getFileName().toString().endsWith(MANIFEST_SUFFIX))
+                    .collect(Collectors.toCollection(ArrayList::new));
+            manifests.sort(Comparator.comparing((Path f) -> f.getFileName().toString()).reversed());
+            return manifests;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package pl.sii.eu.micuenta.service;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import pl.sii.eu.micuenta.repository.DebtorAggregateChangedEvent;
+
+/**
+ * Drops cached views of a changed debtor aggregate in one fixed order. Balance bytes are built from debtors
+ * of the off-heap store, so the store goes first: a balance cached after its own invalidation can only be
+ * built from the fresh aggregate.
+ */
+@Component
+public class DebtorViewInvalidator {
+
+    private final DataDebtorService dataDebtorService;
+    private final BalanceResponseCache balanceResponseCache;
+
+    public DebtorViewInvalidator(DataDebtorService dataDebtorService, BalanceResponseCache balanceResponseCache) {
+        this.dataDebtorService = dataDebtorService;
+        this.balanceResponseCache = balanceResponseCache;
+    }
+
+    @EventListener
+    public void onDebtorAggregateChanged(DebtorAggregateChangedEvent event) {
+        invalidate(event);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMPLETION)
+    public void afterDebtorAggregateChangeCompleted(DebtorAggregateChangedEvent event) {
+        invalidate(event);
+    }
+
+    private void invalidate(DebtorAggregateChangedEvent event) {
+        dataDebtorService.invalidate(event);
+        balanceResponseCache.invalidate(event);
+    }
+}
@@ -0,0 +1,66 @@
+package pl.sii.eu.micuenta.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+
+/**
+ * Recomputes paid-to-date totals of every debt from PAYMENT_ENTITY and reports debts whose
+ * persisted PAID_AMOUNT / REMAINING_AMOUNT have drifted from the payment ledger.
+ */
+@Service
+public class LedgerConsistencyService {
+
+    private static final String SELECT_DRIFTED_DEBTS = "SELECT d.ID, d.UUID, d.PAID_AMOUNT, d.REMAINING_AMOUNT, " +
+            "COALESCE(SUM(p.PAYMENT_AMOUNT), 0) AS LEDGER_PAID_AMOUNT, " +
+            "d.DEBT_AMOUNT - COALESCE(SUM(p.PAYMENT_AMOUNT), 0) AS LEDGER_REMAINING_AMOUNT " +
+            "FROM DEBT_ENTITY d " +
+            "LEFT JOIN PAYMENT_ENTITY p ON (p.DEBT_ENTITY_ID = d.ID) " +
+            "GROUP BY d.ID, d.UUID, d.DEBT_AMOUNT, d.PAID_AMOUNT, d.REMAINING_AMOUNT " +
+            "HAVING d.PAID_AMOUNT IS NULL OR d.REMAINING_AMOUNT IS NULL " +
+            "OR d.PAID_AMOUNT <> COALESCE(SUM(p.PAYMENT_AMOUNT), 0) " +
+            "OR d.REMAINING_AMOUNT <> d.DEBT_AMOUNT - COALESCE(SUM(p.PAYMENT_AMOUNT), 0) " +
+            "ORDER BY d.ID";
+
+    private static final Logger logger = LoggerFactory.getLogger(LedgerConsistencyService.class);
+
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    public LedgerConsistencyService(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Scheduled(initialDelayString = "${micuenta.ledger.consistency-check.interval-ms:3600000}",
+            fixedDelayString = "${micuenta.ledger.consistency-check.interval-ms:3600000}")
+    public void scheduledPaymentTotalsCheck() {
+        findPaymentTotalsDrift();
+    }
+
+    public List<PaymentTotalsDrift> findPaymentTotalsDrift() {
+        List<PaymentTotalsDrift> drifts = jdbcTemplate.query(SELECT_DRIFTED_DEBTS, new MapSqlParameterSource(),
+                (rs, rowNum) -> new PaymentTotalsDrift(
+                        rs.getLong("ID"),
+                        rs.getString("UUID"),
+                        toAmount(rs.getBigDecimal("PAID_AMOUNT")),
+                        toAmount(rs.getBigDecimal("REMAINING_AMOUNT")),
+                        toAmount(rs.getBigDecimal("LEDGER_PAID_AMOUNT")),
+                        toAmount(rs.getBigDecimal("LEDGER_REMAINING_AMOUNT"))));
+
+        for (PaymentTotalsDrift drift : drifts) {
+            logger.warn("Paid-to-date totals of debt {} have drifted from payments ledger: {}.", drift.getUuid(), drift);
+        }
+        logger.info("Ledger consistency check finished, {} debts have drifted.", drifts.size());
+        return drifts;
+    }
+
+    private static BigDecimal toAmount(BigDecimal value) {
+        return value == null ? null : value.setScale(2, RoundingMode.HALF_EVEN);
+    }
+}
@@ -0,0 +1,89 @@
+package pl.sii.eu.micuenta.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+
+/**
+ * Cuts items into chunks, computes every chunk on a fork-join pool and writes the results in the order chunks
+ * were cut. At most twice the parallelism chunks are in flight, adding an item blocks until the oldest chunk
+ * is written when the limit is reached.
+ */
+final class OrderedChunkWriter<T> implements AutoCloseable {
+
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    private final int maxChunksInFlight;
+    private final Function<List<T>, byte[]> computation;
+    private final OutputStream out;
+    private final Deque<ForkJoinTask<byte[]>> inFlight = new ArrayDeque<>();
+    private List<T> chunk = new ArrayList<>();
+    private long items;
+    private long writeNanos;
+
+    OrderedChunkWriter(ForkJoinPool pool, int chunkSize, Function<List<T>, byte[]> computation, OutputStream out) {
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+        this.maxChunksInFlight = 2 * pool.getParallelism();
+        this.computation = computation;
+        this.out = out;
+    }
+
+    void add(T item) throws IOException {
+        chunk.add(item);
+        if (chunk.size() == chunkSize) {
+            submitChunk();
+        }
+    }
+
+    /**
+     * Writes all remaining chunks and returns the number of written items.
+     */
+    long finish() throws IOException {
+        submitChunk();
+        while (!inFlight.isEmpty()) {
+            writeOldestChunk();
+        }
+        out.flush();
+        return items;
+    }
+
+    /**
+     * Time spent waiting for chunks and writing them to the output.
+     */
+    long getWriteNanos() {
+        return writeNanos;
+    }
+
+    @Override
+    public void close() {
+        inFlight.forEach(task -> task.cancel(true));
+        inFlight.clear();
+    }
+
+    private void submitChunk() throws IOException {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<T> submitted = chunk;
+        chunk = new ArrayList<>();
+        items += submitted.size();
+        inFlight.add(pool.submit(() -> computation.apply(submitted)));
+        while (inFlight.size() >= maxChunksInFlight) {
+            writeOldestChunk();
+        }
+    }
+
+    private void writeOldestChunk() throws IOException {
+        long start = System.nanoTime();
+        out.write(inFlight.poll().join());
+        out.flush();
+        writeNanos += System.nanoTime() - start;
+    }
+}
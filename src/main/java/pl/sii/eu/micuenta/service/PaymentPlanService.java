@@ -3,18 +3,24 @@ package pl.sii.eu.micuenta.service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.bind.annotation.RequestBody;
+import pl.sii.eu.micuenta.cache.CoalescingStats;
+import pl.sii.eu.micuenta.cache.SingleFlight;
+import pl.sii.eu.micuenta.model.model_dto.Debt;
+import pl.sii.eu.micuenta.model.model_dto.Debtor;
+import pl.sii.eu.micuenta.model.model_dto.Payment;
 import pl.sii.eu.micuenta.model.model_entity.DebtEntity;
 import pl.sii.eu.micuenta.model.model_entity.DebtorEntity;
 import pl.sii.eu.micuenta.model.model_dto.form.PaymentDeclaration;
 import pl.sii.eu.micuenta.model.model_dto.form.PaymentPlan;
 import pl.sii.eu.micuenta.model.model_dto.form.PlannedPayment;
-import pl.sii.eu.micuenta.repository.AccountsRepository;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static java.util.Collections.emptyList;
 
@@ -22,56 +28,140 @@ import static java.util.Collections.emptyList;
 public class PaymentPlanService {
 
     private DebtCalculatorService debtCalculatorService;
-    private AccountsRepository accountsRepository;
+    private DataDebtorService dataDebtorService;
     private ValidationService validationService;
+    private PaymentPlanStore paymentPlanStore;
+    private final SingleFlight<String, PlanComputation> planComputations = new SingleFlight<>(PlanComputation::copyOf);
 
-    public PaymentPlanService(AccountsRepository accountsRepository,
+    public PaymentPlanService(DataDebtorService dataDebtorService,
                               DebtCalculatorService debtCalculatorService,
-                              ValidationService validationService) {
-        this.accountsRepository = accountsRepository;
+                              ValidationService validationService,
+                              PaymentPlanStore paymentPlanStore) {
+        this.dataDebtorService = dataDebtorService;
         this.debtCalculatorService = debtCalculatorService;
         this.validationService = validationService;
+        this.paymentPlanStore = paymentPlanStore;
     }
 
     private static final Logger logger = LoggerFactory.getLogger(PaymentPlanService.class);
 
     public PaymentPlan getPaymentPlanBasedOnPaymentDeclaration(@RequestBody PaymentDeclaration paymentDeclaration) {
-        BigDecimal paymentAmount = paymentDeclaration.getPaymentAmount().setScale(2, RoundingMode.HALF_EVEN);
         String ssn = paymentDeclaration.getSsn();
         String debtUuid = paymentDeclaration.getDebtUuid();
 
-        if (validationService.notValidPaymentAmount(paymentAmount, ssn)) {
+        if (validationService.notValidPaymentAmount(paymentDeclaration.getPaymentAmount(), ssn)) {
             return new PaymentPlan("Payment amount is not valid.", ssn, emptyList());
         }
+        long paymentAmount = Cents.of(paymentDeclaration.getPaymentAmount());
 
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return register(createPaymentPlan(ssn, debtUuid, paymentAmount), debtUuid, paymentAmount);
+        }
+        String key = ssn + "|" + debtUuid + "|" + paymentAmount;
+        return register(planComputations.execute(key, () -> createPaymentPlan(ssn, debtUuid, paymentAmount)),
+                debtUuid, paymentAmount);
+    }
+
+    /**
+     * Plan for a debtor already loaded by the caller, neither coalesced nor stored for a confirmation.
+     */
+    PaymentPlan computePaymentPlan(PaymentDeclaration paymentDeclaration, DebtorEntity debtorEntity) {
+        String ssn = paymentDeclaration.getSsn();
+        String debtUuid = paymentDeclaration.getDebtUuid() == null ? "" : paymentDeclaration.getDebtUuid();
+
+        if (validationService.notValidPaymentAmount(paymentDeclaration.getPaymentAmount(), ssn)) {
+            return new PaymentPlan("Payment amount is not valid.", ssn, emptyList());
+        }
+        long paymentAmount = Cents.of(paymentDeclaration.getPaymentAmount());
+        if (debtorEntity == null) {
+            return new PaymentPlan("There is no debtor with ssn " + ssn, ssn, emptyList());
+        }
+        return allocatePayment(ssn, debtorEntity, debtUuid, paymentAmount);
+    }
+
+    public CoalescingStats getCoalescingStats() {
+        return planComputations.getStats();
+    }
+
+    /**
+     * The debtor is read through {@link DataDebtorService}, outside a transaction it comes from the off-heap store
+     * loaded by the login or balance request before. The plan is computed on a detached copy of it.
+     */
+    private PlanComputation createPaymentPlan(String ssn, String debtUuid, long paymentAmount) {
+        Debtor debtor = dataDebtorService.getDebtorBySsn(ssn);
+        if (debtor == null) {
+            return new PlanComputation(null, new PaymentPlan("There is no debtor with ssn " + ssn, ssn, emptyList()));
+        }
+        DebtorEntity debtorEntity = toDetachedDebtorEntity(debtor);
+        return new PlanComputation(debtorEntity, allocatePayment(ssn, debtorEntity, debtUuid, paymentAmount));
+    }
+
+    /**
+     * Only the computation is coalesced, every caller stores its own copy of the plan under its own plan id,
+     * so each of them can confirm the plan once.
+     */
+    private PaymentPlan register(PlanComputation computation, String debtUuid, long paymentAmount) {
+        PaymentPlan paymentPlan = computation.paymentPlan;
+        List<PlannedPayment> plannedPaymentList = paymentPlan.getPlannedPaymentList();
+        if (computation.debtorEntity != null && plannedPaymentList != null && !plannedPaymentList.isEmpty()) {
+            paymentPlan.setPlanId(paymentPlanStore.store(computation.debtorEntity, debtUuid, paymentAmount, plannedPaymentList));
+        }
+        return paymentPlan;
+    }
+
+    /**
+     * Debts carry their paid-to-date totals summed from the payments, payments themselves are not needed to plan.
+     */
+    private static DebtorEntity toDetachedDebtorEntity(Debtor debtor) {
+        Set<DebtEntity> debtEntities = new HashSet<>();
+        for (Debt debt : debtor.getDebts()) {
+            DebtEntity debtEntity = new DebtEntity();
+            debtEntity.setId(debt.getId());
+            debtEntity.setUuid(debt.getUuid());
+            debtEntity.setDebtName(debt.getDebtName());
+            debtEntity.setRepaymentDate(debt.getRepaymentDate());
+            debtEntity.setDebtAmount(debt.getDebtAmount());
+            debtEntity.setPaidAmount(debt.getPayments().stream()
+                    .map(Payment::getPaymentAmount)
+                    .reduce(BigDecimal.ZERO, BigDecimal::add));
+            debtEntities.add(debtEntity);
+        }
+        DebtorEntity debtorEntity = new DebtorEntity();
+        debtorEntity.setId(debtor.getId());
+        debtorEntity.setFirstName(debtor.getFirstName());
+        debtorEntity.setLastName(debtor.getLastName());
+        debtorEntity.setSsn(debtor.getSsn());
+        debtorEntity.setDebtEntities(debtEntities);
+        return debtorEntity;
+    }
+
+    private PaymentPlan allocatePayment(String ssn, DebtorEntity debtorEntity, String debtUuid, long paymentAmount) {
         PaymentPlan paymentPlan = new PaymentPlan("There is no debt with uuid " + debtUuid, ssn, emptyList());
-        DebtorEntity debtorEntity = accountsRepository.findFirstBySsn(ssn);
 
         if (debtUuid.isEmpty()) {
             return handlingEmptyDebtId(debtorEntity, paymentAmount);
         }
 
-        for (DebtEntity chosenDebtEntity : debtorEntity.getDebtEntities()) {
-            if (chosenDebtEntity.getUuid().equals(debtUuid)) {
-                return handlingChosenDebtId(chosenDebtEntity, paymentAmount, debtorEntity);
-            }
+        DebtEntity chosenDebtEntity = debtorEntity.findDebtEntityByUuid(debtUuid);
+        if (chosenDebtEntity != null) {
+            return handlingChosenDebtId(chosenDebtEntity, paymentAmount, debtorEntity);
         }
         return paymentPlan;
     }
 
-    private PaymentPlan handlingEmptyDebtId(DebtorEntity debtorEntity, BigDecimal paymentAmount) {
+    private PaymentPlan handlingEmptyDebtId(DebtorEntity debtorEntity, long paymentAmount) {
 
         List<PlannedPayment> plannedPaymentList = new ArrayList<>();
         String ssn = debtorEntity.getSsn();
-        String message = "Your payment amount is " + paymentAmount;
+        String message = "Your payment amount is " + Cents.toAmount(paymentAmount);
         PaymentPlan paymentPlan = new PaymentPlan(message, ssn, plannedPaymentList);
 
-        BigDecimal sumOfDebts = debtCalculatorService.getSumOfDebts(debtorEntity);
+        long sumOfDebts = debtCalculatorService.getSumOfDebts(debtorEntity);
 
         List<DebtEntity> oldestDebtEntities = debtCalculatorService.getListOfOldestDebts(debtorEntity);
 
-        boolean paymentIsNotBiggerThanSumOfDebts = paymentAmount.compareTo(sumOfDebts) <= 0;
-        boolean paymentIsBiggerThanSumOfDebts = paymentAmount.compareTo(sumOfDebts) > 0;
+        boolean paymentIsNotBiggerThanSumOfDebts = paymentAmount <= sumOfDebts;
+        boolean paymentIsBiggerThanSumOfDebts = paymentAmount > sumOfDebts;
 
         if (!oldestDebtEntities.isEmpty() && paymentIsNotBiggerThanSumOfDebts) {
             return payOldestDebts(paymentAmount, paymentPlan, oldestDebtEntities);
@@ -82,18 +172,18 @@ public class PaymentPlanService {
         }
     }
 
-    private PaymentPlan handlingChosenDebtId(DebtEntity chosenDebtEntity, BigDecimal paymentAmount, DebtorEntity debtorEntity) {
+    private PaymentPlan handlingChosenDebtId(DebtEntity chosenDebtEntity, long paymentAmount, DebtorEntity debtorEntity) {
 
         List<PlannedPayment> plannedPaymentList = new ArrayList<>();
         String ssn = debtorEntity.getSsn();
-        String message = "Your payment amount is " + paymentAmount;
+        String message = "Your payment amount is " + Cents.toAmount(paymentAmount);
         PaymentPlan paymentPlan = new PaymentPlan(message, ssn, plannedPaymentList);
 
-        BigDecimal sumOfDebts = debtCalculatorService.getSumOfDebts(debtorEntity);
+        long sumOfDebts = debtCalculatorService.getSumOfDebts(debtorEntity);
         List<DebtEntity> oldestDebtEntities = debtCalculatorService.getListOfOldestDebts(debtorEntity);
 
-        boolean paymentIsNotBiggerThanSumOfDebts = paymentAmount.compareTo(sumOfDebts) <= 0;
-        boolean paymentIsBiggerThanSumOfDebts = paymentAmount.compareTo(sumOfDebts) > 0;
+        boolean paymentIsNotBiggerThanSumOfDebts = paymentAmount <= sumOfDebts;
+        boolean paymentIsBiggerThanSumOfDebts = paymentAmount > sumOfDebts;
 
         if (!oldestDebtEntities.isEmpty() && paymentIsNotBiggerThanSumOfDebts) {
             return createPaymentPlanDependingOnAmount(chosenDebtEntity, paymentAmount, paymentPlan, oldestDebtEntities);
@@ -104,12 +194,12 @@ public class PaymentPlanService {
         }
     }
 
-    private PaymentPlan createPaymentPlanDependingOnAmount(DebtEntity chosenDebtEntity, BigDecimal paymentAmount, PaymentPlan paymentPlan, List<DebtEntity> oldestDebtEntities) {
-        BigDecimal debtLeftToPaid = debtCalculatorService.getDebtLeftToPaid(chosenDebtEntity);
+    private PaymentPlan createPaymentPlanDependingOnAmount(DebtEntity chosenDebtEntity, long paymentAmount, PaymentPlan paymentPlan, List<DebtEntity> oldestDebtEntities) {
+        long debtLeftToPaid = debtCalculatorService.getDebtLeftToPaid(chosenDebtEntity);
 
         logger.info("Payments list for debt {} is ready to be actualized.", chosenDebtEntity.getUuid());
 
-        if (paymentAmount.compareTo(debtLeftToPaid) <= 0) {
+        if (paymentAmount <= debtLeftToPaid) {
             addPaymentToPlan(paymentAmount, paymentPlan, chosenDebtEntity);
             return paymentPlan;
         } else {
@@ -117,11 +207,11 @@ public class PaymentPlanService {
         }
     }
 
-    private PaymentPlan payChosenDebtAndOthersByDate(BigDecimal paymentAmount, PaymentPlan paymentPlan, List<DebtEntity> oldestDebtEntities, DebtEntity chosenDebtEntity) {
+    private PaymentPlan payChosenDebtAndOthersByDate(long paymentAmount, PaymentPlan paymentPlan, List<DebtEntity> oldestDebtEntities, DebtEntity chosenDebtEntity) {
 
-        BigDecimal restAmount = chosenDebtEntity.getDebtAmount().subtract(debtCalculatorService.getSumOfPayments(chosenDebtEntity));
+        long restAmount = debtCalculatorService.getDebtLeftToPaid(chosenDebtEntity);
         addPaymentToPlan(restAmount, paymentPlan, chosenDebtEntity);
-        paymentAmount = paymentAmount.subtract(restAmount);
+        paymentAmount = Cents.subtract(paymentAmount, restAmount);
 
         List<DebtEntity> debtsWithoutChosen = new ArrayList<>();
 
@@ -134,17 +224,17 @@ public class PaymentPlanService {
         return paymentPlan;
     }
 
-    private PaymentPlan payOldestDebts(BigDecimal paymentAmount, PaymentPlan paymentPlan, List<DebtEntity> oldestDebtEntities) {
+    private PaymentPlan payOldestDebts(long paymentAmount, PaymentPlan paymentPlan, List<DebtEntity> oldestDebtEntities) {
 
         logger.info("PaymentPlan for {} has been actualized.", paymentPlan.getSsn());
 
         for (int i = 0; i < oldestDebtEntities.size(); i++) {
             DebtEntity oldestDebtEntity = oldestDebtEntities.get(i);
-            BigDecimal debtLeftToPaid = debtCalculatorService.getDebtLeftToPaid(oldestDebtEntity);
+            long debtLeftToPaid = debtCalculatorService.getDebtLeftToPaid(oldestDebtEntity);
 
             logger.info("Payments list for debt {} is ready to be actualized.", oldestDebtEntity.getUuid());
 
-            if (paymentAmount.compareTo(debtLeftToPaid) <= 0) {
+            if (paymentAmount <= debtLeftToPaid) {
                 addPaymentToPlan(paymentAmount, paymentPlan, oldestDebtEntity);
                 break;
             } else {
@@ -154,31 +244,48 @@ public class PaymentPlanService {
         return paymentPlan;
     }
 
-    private PaymentPlan payAllDebts(DebtorEntity debtorEntity, BigDecimal paymentAmount, List<PlannedPayment> plannedPaymentList, BigDecimal sumOfDebts) {
+    private PaymentPlan payAllDebts(DebtorEntity debtorEntity, long paymentAmount, List<PlannedPayment> plannedPaymentList, long sumOfDebts) {
 
-        logger.info("All debts can been paid. Surplus: {}.", paymentAmount.subtract(sumOfDebts));
+        BigDecimal surplus = Cents.toAmount(Cents.subtract(paymentAmount, sumOfDebts));
+        logger.info("All debts can been paid. Surplus: {}.", surplus);
 
         PaymentPlan paymentPlan = new PaymentPlan
-                ("All debts will be paid. You have " + paymentAmount.subtract(sumOfDebts) + " of surplus.", debtorEntity.getSsn(), plannedPaymentList);
+                ("All debts will be paid. You have " + surplus + " of surplus.", debtorEntity.getSsn(), plannedPaymentList);
         for (DebtEntity d : debtorEntity.getDebtEntities()) {
-            BigDecimal sumOfPayments = debtCalculatorService.getSumOfPayments(d);
-            BigDecimal remainingDebt = d.getDebtAmount().subtract(sumOfPayments);
-            plannedPaymentList.add(new PlannedPayment(d.getUuid(), remainingDebt));
+            long remainingDebt = debtCalculatorService.getDebtLeftToPaid(d);
+            plannedPaymentList.add(new PlannedPayment(d.getUuid(), Cents.toAmount(remainingDebt)));
         }
         return paymentPlan;
     }
 
-    private void addPaymentToPlan(BigDecimal paymentAmount, PaymentPlan paymentPlan, DebtEntity debtEntity) {
+    private void addPaymentToPlan(long paymentAmount, PaymentPlan paymentPlan, DebtEntity debtEntity) {
         List<PlannedPayment> plannedPaymentList = paymentPlan.getPlannedPaymentList();
-        plannedPaymentList.add(new PlannedPayment(debtEntity.getUuid(), paymentAmount));
+        plannedPaymentList.add(new PlannedPayment(debtEntity.getUuid(), Cents.toAmount(paymentAmount)));
         paymentPlan.setPlannedPaymentList(plannedPaymentList);
     }
 
-    private BigDecimal addPaymentToPlanAndGetRemainingPaymentAmount(BigDecimal paymentAmount, PaymentPlan paymentPlan, DebtEntity debtEntity, BigDecimal debtLeftToPaid) {
+    private long addPaymentToPlanAndGetRemainingPaymentAmount(long paymentAmount, PaymentPlan paymentPlan, DebtEntity debtEntity, long debtLeftToPaid) {
         paymentPlan
                 .getPlannedPaymentList()
-                .add(new PlannedPayment(debtEntity.getUuid(), debtLeftToPaid));
-        paymentAmount = paymentAmount.subtract(debtLeftToPaid);
+                .add(new PlannedPayment(debtEntity.getUuid(), Cents.toAmount(debtLeftToPaid)));
+        paymentAmount = Cents.subtract(paymentAmount, debtLeftToPaid);
         return paymentAmount;
     }
-}
\ No newline at end of file
+
+    /**
+     * Computed plan together with the debtor it was computed for, the debtor is only read to version the plan.
+     */
+    private static final class PlanComputation {
+        private final DebtorEntity debtorEntity;
+        private final PaymentPlan paymentPlan;
+
+        private PlanComputation(DebtorEntity debtorEntity, PaymentPlan paymentPlan) {
+            this.debtorEntity = debtorEntity;
+            this.paymentPlan = paymentPlan;
+        }
+
+        private static PlanComputation copyOf(PlanComputation computation) {
+            return new PlanComputation(computation.debtorEntity, PaymentPlan.copyOf(computation.paymentPlan));
+        }
+    }
+}
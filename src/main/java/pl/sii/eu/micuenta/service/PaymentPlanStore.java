@@ -0,0 +1,113 @@
+package pl.sii.eu.micuenta.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pl.sii.eu.micuenta.cache.BoundedTtlCache;
+import pl.sii.eu.micuenta.cache.CacheStats;
+import pl.sii.eu.micuenta.model.model_dto.form.PlannedPayment;
+import pl.sii.eu.micuenta.model.model_entity.DebtEntity;
+import pl.sii.eu.micuenta.model.model_entity.DebtorEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Keeps computed payment plans for a short time, so a confirmation quoting the plan id applies the planned
+ * payments instead of allocating the amount once again. A plan is bound to the version of the debtor aggregate
+ * it was computed from and is handed out at most once.
+ */
+@Service
+public class PaymentPlanStore {
+
+    private final BoundedTtlCache<String, StoredPaymentPlan> plans;
+
+    public PaymentPlanStore(@Value("${micuenta.paymentplan.store.max-size:10000}") int maxSize,
+                            @Value("${micuenta.paymentplan.store.ttl-ms:300000}") long ttlMillis) {
+        this.plans = new BoundedTtlCache<>(maxSize, ttlMillis);
+    }
+
+    String store(DebtorEntity debtorEntity, String debtUuid, long paymentAmount, List<PlannedPayment> plannedPayments) {
+        String planId = UUID.randomUUID().toString();
+        plans.put(planId, new StoredPaymentPlan(debtorEntity.getSsn(), debtUuid, paymentAmount,
+                versionOf(debtorEntity), plannedPayments));
+        return planId;
+    }
+
+    /**
+     * Returns payments of the plan when it was computed for the same declaration from the current version
+     * of the aggregate, null when the plan is unknown, expired or stale.
+     */
+    List<PlannedPayment> takeIfCurrent(String planId, DebtorEntity debtorEntity, String debtUuid, long paymentAmount) {
+        if (planId == null || debtorEntity == null) {
+            return null;
+        }
+        StoredPaymentPlan plan = plans.remove(planId);
+        if (plan == null || !plan.isFor(debtorEntity.getSsn(), debtUuid, paymentAmount)
+                || plan.version != versionOf(debtorEntity)) {
+            return null;
+        }
+        return plan.toPlannedPayments();
+    }
+
+    public CacheStats getStats() {
+        return plans.getStats();
+    }
+
+    /**
+     * Digest of everything the allocation depends on: debts with their amounts left to pay and repayment dates.
+     * Independent of the iteration order of debts.
+     */
+    static long versionOf(DebtorEntity debtorEntity) {
+        long version = 0;
+        for (DebtEntity debtEntity : debtorEntity.getDebtEntities()) {
+            long hash = Objects.hashCode(debtEntity.getUuid());
+            hash = hash * 31 + (debtEntity.getRemainingAmount() == null ? -1 : Cents.of(debtEntity.getRemainingAmount()));
+            hash = hash * 31 + (debtEntity.getRepaymentDate() == null ? -1 : debtEntity.getRepaymentDate().toEpochDay());
+            version += mix64(hash);
+        }
+        return version;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    private static final class StoredPaymentPlan {
+        private final String ssn;
+        private final String debtUuid;
+        private final long paymentAmount;
+        private final long version;
+        private final String[] uuids;
+        private final long[] amounts;
+
+        private StoredPaymentPlan(String ssn, String debtUuid, long paymentAmount, long version,
+                                  List<PlannedPayment> plannedPayments) {
+            this.ssn = ssn;
+            this.debtUuid = debtUuid;
+            this.paymentAmount = paymentAmount;
+            this.version = version;
+            this.uuids = new String[plannedPayments.size()];
+            this.amounts = new long[plannedPayments.size()];
+            for (int i = 0; i < plannedPayments.size(); i++) {
+                uuids[i] = plannedPayments.get(i).getUuid();
+                amounts[i] = Cents.of(plannedPayments.get(i).getAmountOfRepaymentDebt());
+            }
+        }
+
+        private boolean isFor(String ssn, String debtUuid, long paymentAmount) {
+            return Objects.equals(this.ssn, ssn) && Objects.equals(this.debtUuid, debtUuid) && this.paymentAmount == paymentAmount;
+        }
+
+        private List<PlannedPayment> toPlannedPayments() {
+            List<PlannedPayment> plannedPayments = new ArrayList<>(uuids.length);
+            for (int i = 0; i < uuids.length; i++) {
+                plannedPayments.add(new PlannedPayment(uuids[i], Cents.toAmount(amounts[i])));
+            }
+            return plannedPayments;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package pl.sii.eu.micuenta.service;
+
+import java.math.BigDecimal;
+
+public class PaymentTotalsDrift {
+
+    private final Long debtId;
+    private final String uuid;
+    private final BigDecimal storedPaidAmount;
+    private final BigDecimal storedRemainingAmount;
+    private final BigDecimal ledgerPaidAmount;
+    private final BigDecimal ledgerRemainingAmount;
+
+    public PaymentTotalsDrift(Long debtId, String uuid, BigDecimal storedPaidAmount, BigDecimal storedRemainingAmount,
+                              BigDecimal ledgerPaidAmount, BigDecimal ledgerRemainingAmount) {
+        this.debtId = debtId;
+        this.uuid = uuid;
+        this.storedPaidAmount = storedPaidAmount;
+        this.storedRemainingAmount = storedRemainingAmount;
+        this.ledgerPaidAmount = ledgerPaidAmount;
+        this.ledgerRemainingAmount = ledgerRemainingAmount;
+    }
+
+    public Long getDebtId() {
+        return debtId;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public BigDecimal getStoredPaidAmount() {
+        return storedPaidAmount;
+    }
+
+    public BigDecimal getStoredRemainingAmount() {
+        return storedRemainingAmount;
+    }
+
+    public BigDecimal getLedgerPaidAmount() {
+        return ledgerPaidAmount;
+    }
+
+    public BigDecimal getLedgerRemainingAmount() {
+        return ledgerRemainingAmount;
+    }
+
+    @Override
+    public String toString() {
+        return "PaymentTotalsDrift{" +
+                "debtId=" + debtId +
+                ", uuid='" + uuid + '\'' +
+                ", storedPaidAmount=" + storedPaidAmount +
+                ", storedRemainingAmount=" + storedRemainingAmount +
+                ", ledgerPaidAmount=" + ledgerPaidAmount +
+                ", ledgerRemainingAmount=" + ledgerRemainingAmount +
+                '}';
+    }
+}
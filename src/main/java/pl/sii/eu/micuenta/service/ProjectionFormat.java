@@ -0,0 +1,17 @@
+package pl.sii.eu.micuenta.service;
+
+public enum ProjectionFormat {
+
+    CSV("text/csv"),
+    NDJSON("application/x-ndjson");
+
+    private final String contentType;
+
+    ProjectionFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+}
@@ -0,0 +1,73 @@
+package pl.sii.eu.micuenta.service;
+
+/**
+ * Counters and phase timings of the last finished projection. Scan, write and total are wall clock times,
+ * load, project and serialize are summed over all workers of the pool.
+ */
+public class ProjectionStats {
+
+    private final int months;
+    private final long debtors;
+    private final long debts;
+    private final long closedDebts;
+    private final long totalMillis;
+    private final long scanMillis;
+    private final long loadMillis;
+    private final long projectMillis;
+    private final long serializeMillis;
+    private final long writeMillis;
+
+    public ProjectionStats(int months, long debtors, long debts, long closedDebts, long totalMillis, long scanMillis,
+                           long loadMillis, long projectMillis, long serializeMillis, long writeMillis) {
+        this.months = months;
+        this.debtors = debtors;
+        this.debts = debts;
+        this.closedDebts = closedDebts;
+        this.totalMillis = totalMillis;
+        this.scanMillis = scanMillis;
+        this.loadMillis = loadMillis;
+        this.projectMillis = projectMillis;
+        this.serializeMillis = serializeMillis;
+        this.writeMillis = writeMillis;
+    }
+
+    public int getMonths() {
+        return months;
+    }
+
+    public long getDebtors() {
+        return debtors;
+    }
+
+    public long getDebts() {
+        return debts;
+    }
+
+    public long getClosedDebts() {
+        return closedDebts;
+    }
+
+    public long getTotalMillis() {
+        return totalMillis;
+    }
+
+    public long getScanMillis() {
+        return scanMillis;
+    }
+
+    public long getLoadMillis() {
+        return loadMillis;
+    }
+
+    public long getProjectMillis() {
+        return projectMillis;
+    }
+
+    public long getSerializeMillis() {
+        return serializeMillis;
+    }
+
+    public long getWriteMillis() {
+        return writeMillis;
+    }
+}
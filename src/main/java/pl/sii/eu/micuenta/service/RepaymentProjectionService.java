@@ -0,0 +1,227 @@
+package pl.sii.eu.micuenta.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pl.sii.eu.micuenta.conf.BatchConfiguration;
+import pl.sii.eu.micuenta.model.model_dto.form.RepaymentProjectionRequest;
+import pl.sii.eu.micuenta.model.model_entity.DebtEntity;
+import pl.sii.eu.micuenta.model.model_entity.DebtorEntity;
+import pl.sii.eu.micuenta.repository.AccountsRepository;
+import pl.sii.eu.micuenta.repository.DebtorSsnScanner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Projects when every open debt of the portfolio gets closed if each debtor paid the same amount every month,
+ * allocated oldest debt first like a payment plan without chosen debt. Month one is the next calendar month.
+ * <p>
+ * Paying oldest first, a debt is closed in the first month whose cumulated payments cover the debt and all older
+ * debts, so the month is computed directly instead of allocating every month one by one.
+ */
+@Service
+public class RepaymentProjectionService {
+
+    public static final int MAX_MONTHS = 600;
+
+    private static final Logger logger = LoggerFactory.getLogger(RepaymentProjectionService.class);
+    private static final String CSV_HEADER =
+            "ssn,debtUuid,repaymentDate,remainingAmount,closedInMonth,closingMonth,remainingAfterProjection\n";
+
+    private final AccountsRepository accountsRepository;
+    private final DebtCalculatorService debtCalculatorService;
+    private final DebtorSsnScanner debtorSsnScanner;
+    private final JsonFactory jsonFactory;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    private volatile ProjectionStats lastRunStats;
+
+    public RepaymentProjectionService(AccountsRepository accountsRepository,
+                                      DebtCalculatorService debtCalculatorService,
+                                      DebtorSsnScanner debtorSsnScanner,
+                                      ObjectMapper objectMapper,
+                                      @Qualifier(BatchConfiguration.BATCH_POOL) ForkJoinPool pool,
+                                      @Value("${micuenta.projection.chunk-size:500}") int chunkSize) {
+        this.accountsRepository = accountsRepository;
+        this.debtCalculatorService = debtCalculatorService;
+        this.debtorSsnScanner = debtorSsnScanner;
+        this.jsonFactory = objectMapper.getFactory();
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Checked before streaming starts: the monthly payment has to fit into cents and so does everything
+     * paid over the projected months, so the projection itself can not overflow.
+     */
+    public boolean isValidRequest(RepaymentProjectionRequest request) {
+        BigDecimal monthlyPayment = request.getMonthlyPayment();
+        if (monthlyPayment == null || monthlyPayment.signum() <= 0
+                || request.getMonths() < 1 || request.getMonths() > MAX_MONTHS) {
+            return false;
+        }
+        try {
+            return Math.multiplyExact(Cents.of(monthlyPayment), (long) request.getMonths()) > 0;
+        } catch (ArithmeticException e) {
+            return false;
+        }
+    }
+
+    public void writeProjection(RepaymentProjectionRequest request, ProjectionFormat format, OutputStream out) throws IOException {
+        if (!isValidRequest(request)) {
+            throw new IllegalArgumentException("Monthly payment or number of months is not valid.");
+        }
+        Run run = new Run(Cents.of(request.getMonthlyPayment()), request.getMonths(), YearMonth.now().plusMonths(1), format);
+        long start = System.nanoTime();
+        if (format == ProjectionFormat.CSV) {
+            out.write(CSV_HEADER.getBytes(StandardCharsets.UTF_8));
+        }
+        long writeNanos;
+        try (OrderedChunkWriter<String> writer = new OrderedChunkWriter<>(pool, chunkSize, run::projectChunk, out)) {
+            debtorSsnScanner.scan(chunkSize, writer::add);
+            writer.finish();
+            writeNanos = writer.getWriteNanos();
+        }
+        lastRunStats = run.toStats(System.nanoTime() - start, writeNanos);
+        logger.info("Repayment of {} debtors projected for {} months in {} ms.",
+                lastRunStats.getDebtors(), run.months, lastRunStats.getTotalMillis());
+    }
+
+    public ProjectionStats getLastRunStats() {
+        return lastRunStats;
+    }
+
+    private final class Run {
+        private final long monthlyPayment;
+        private final int months;
+        private final long paidInAllMonths;
+        private final YearMonth firstMonth;
+        private final ProjectionFormat format;
+        private final LongAdder debtors = new LongAdder();
+        private final LongAdder debts = new LongAdder();
+        private final LongAdder closedDebts = new LongAdder();
+        private final LongAdder loadNanos = new LongAdder();
+        private final LongAdder projectNanos = new LongAdder();
+        private final LongAdder serializeNanos = new LongAdder();
+
+        private Run(long monthlyPayment, int months, YearMonth firstMonth, ProjectionFormat format) {
+            this.monthlyPayment = monthlyPayment;
+            this.months = months;
+            this.paidInAllMonths = monthlyPayment * months;
+            this.firstMonth = firstMonth;
+            this.format = format;
+        }
+
+        private byte[] projectChunk(List<String> ssns) {
+            long start = System.nanoTime();
+            Map<String, DebtorEntity> loaded = new HashMap<>();
+            accountsRepository.findAllWithDebtsBySsnIn(ssns).forEach(d -> loaded.put(d.getSsn(), d));
+            long loadedAt = System.nanoTime();
+
+            ByteArrayOutputStream rows = new ByteArrayOutputStream(ssns.size() * 128);
+            long serializeTime = 0;
+            try (JsonGenerator generator = jsonFactory.createGenerator(rows)) {
+                generator.setRootValueSeparator(null);
+                for (String ssn : ssns) {
+                    DebtorEntity debtorEntity = loaded.get(ssn);
+                    if (debtorEntity == null) {
+                        continue;
+                    }
+                    debtors.increment();
+                    long cumulatedDebt = 0;
+                    for (DebtEntity debtEntity : debtCalculatorService.getListOfOldestDebts(debtorEntity)) {
+                        long debtLeftToPaid = debtCalculatorService.getDebtLeftToPaid(debtEntity);
+                        long paidBefore = cumulatedDebt;
+                        cumulatedDebt = Cents.add(cumulatedDebt, debtLeftToPaid);
+                        long closedInMonth = cumulatedDebt / monthlyPayment + (cumulatedDebt % monthlyPayment == 0 ? 0 : 1);
+                        long paidAfterProjection = Math.min(cumulatedDebt, paidInAllMonths);
+                        long remainingAfterProjection = cumulatedDebt - Math.max(paidAfterProjection, paidBefore);
+
+                        long serializeStart = System.nanoTime();
+                        writeRow(generator, rows, ssn, debtEntity, debtLeftToPaid,
+                                closedInMonth <= months ? (int) closedInMonth : 0, remainingAfterProjection);
+                        serializeTime += System.nanoTime() - serializeStart;
+
+                        debts.increment();
+                        if (closedInMonth <= months) {
+                            closedDebts.increment();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            loadNanos.add(loadedAt - start);
+            projectNanos.add(System.nanoTime() - loadedAt - serializeTime);
+            serializeNanos.add(serializeTime);
+            return rows.toByteArray();
+        }
+
+        /**
+         * Month of closing is zero for debts which stay open after the projected months.
+         */
+        private void writeRow(JsonGenerator generator, ByteArrayOutputStream rows, String ssn, DebtEntity debtEntity,
+                              long remainingAmount, int closedInMonth, long remainingAfterProjection) throws IOException {
+            String closingMonth = closedInMonth == 0 ? null : firstMonth.plusMonths(closedInMonth - 1).toString();
+            if (format == ProjectionFormat.NDJSON) {
+                generator.writeStartObject();
+                generator.writeStringField("ssn", ssn);
+                generator.writeStringField("debtUuid", debtEntity.getUuid());
+                generator.writeStringField("repaymentDate", String.valueOf(debtEntity.getRepaymentDate()));
+                generator.writeNumberField("remainingAmount", Cents.toAmount(remainingAmount));
+                if (closedInMonth == 0) {
+                    generator.writeNullField("closedInMonth");
+                    generator.writeNullField("closingMonth");
+                } else {
+                    generator.writeNumberField("closedInMonth", closedInMonth);
+                    generator.writeStringField("closingMonth", closingMonth);
+                }
+                generator.writeNumberField("remainingAfterProjection", Cents.toAmount(remainingAfterProjection));
+                generator.writeEndObject();
+                generator.writeRaw('\n');
+                return;
+            }
+            String row = csv(ssn) + ',' + csv(debtEntity.getUuid()) + ',' + debtEntity.getRepaymentDate() + ','
+                    + Cents.toAmount(remainingAmount) + ',' + (closedInMonth == 0 ? "" : String.valueOf(closedInMonth)) + ','
+                    + (closingMonth == null ? "" : closingMonth) + ',' + Cents.toAmount(remainingAfterProjection) + '\n';
+            rows.write(row.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private ProjectionStats toStats(long totalNanos, long writeNanos) {
+            return new ProjectionStats(months, debtors.sum(), debts.sum(), closedDebts.sum(), millis(totalNanos),
+                    millis(totalNanos - writeNanos), millis(loadNanos.sum()), millis(projectNanos.sum()),
+                    millis(serializeNanos.sum()), millis(writeNanos));
+        }
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
@@ -0,0 +1,23 @@
+package pl.sii.eu.micuenta.service;
+
+/**
+ * JSON balance of one debtor together with the entity tag identifying its content.
+ */
+public class SerializedBalance {
+
+    private final byte[] body;
+    private final String eTag;
+
+    public SerializedBalance(byte[] body, String eTag) {
+        this.body = body;
+        this.eTag = eTag;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+}
@@ -0,0 +1,11 @@
+package pl.sii.eu.micuenta.service;
+
+/**
+ * Thrown when a snapshot is requested while another one is being created.
+ */
+public class SnapshotInProgressException extends IllegalStateException {
+
+    public SnapshotInProgressException() {
+        super("Snapshot of debtors is already being created.");
+    }
+}
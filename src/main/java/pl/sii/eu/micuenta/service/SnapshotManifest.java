@@ -0,0 +1,92 @@
+package pl.sii.eu.micuenta.service;
+
+public class SnapshotManifest {
+
+    private String id;
+    private String fileName;
+    private String createdAt;
+    private long debtors;
+    private long sizeBytes;
+    private boolean gzip;
+    private String sha256;
+    private long generationMillis;
+
+    public SnapshotManifest() {
+    }
+
+    public SnapshotManifest(String id, String fileName, String createdAt, long debtors, long sizeBytes, boolean gzip,
+                            String sha256, long generationMillis) {
+        this.id = id;
+        this.fileName = fileName;
+        this.createdAt = createdAt;
+        this.debtors = debtors;
+        this.sizeBytes = sizeBytes;
+        this.gzip = gzip;
+        this.sha256 = sha256;
+        this.generationMillis = generationMillis;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(String createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public long getDebtors() {
+        return debtors;
+    }
+
+    public void setDebtors(long debtors) {
+        this.debtors = debtors;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public void setSizeBytes(long sizeBytes) {
+        this.sizeBytes = sizeBytes;
+    }
+
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    public void setGzip(boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    public void setSha256(String sha256) {
+        this.sha256 = sha256;
+    }
+
+    public long getGenerationMillis() {
+        return generationMillis;
+    }
+
+    public void setGenerationMillis(long generationMillis) {
+        this.generationMillis = generationMillis;
+    }
+}
@@ -2,20 +2,24 @@ package pl.sii.eu.micuenta.service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.bind.annotation.RequestBody;
 import pl.sii.eu.micuenta.model.model_dto.form.PaymentConfirmation;
 import pl.sii.eu.micuenta.model.model_dto.form.PaymentDeclaration;
+import pl.sii.eu.micuenta.model.model_dto.form.PlannedPayment;
 import pl.sii.eu.micuenta.model.model_entity.CreditCardEntity;
 import pl.sii.eu.micuenta.model.model_entity.DebtEntity;
 import pl.sii.eu.micuenta.model.model_entity.DebtorEntity;
 import pl.sii.eu.micuenta.model.model_entity.PaymentEntity;
 import pl.sii.eu.micuenta.repository.AccountsRepository;
+import pl.sii.eu.micuenta.repository.CreditCardVault;
+import pl.sii.eu.micuenta.repository.DebtorAggregateChangedEvent;
+import pl.sii.eu.micuenta.repository.PaymentLedgerRepository;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
+import javax.transaction.Transactional;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
@@ -26,105 +30,146 @@ public class UpdatePaymentService {
     private ValidationService validationService;
     private AccountsRepository accountsRepository;
     private DebtCalculatorService debtCalculatorService;
+    private PaymentLedgerRepository paymentLedgerRepository;
+    private CreditCardVault creditCardVault;
+    private ApplicationEventPublisher eventPublisher;
+    private PaymentPlanStore paymentPlanStore;
 
     public UpdatePaymentService(AccountsRepository accountsRepository,
                                 DebtCalculatorService debtCalculatorService,
-                                ValidationService validationService) {
+                                ValidationService validationService,
+                                PaymentLedgerRepository paymentLedgerRepository,
+                                CreditCardVault creditCardVault,
+                                ApplicationEventPublisher eventPublisher,
+                                PaymentPlanStore paymentPlanStore) {
         this.debtCalculatorService = debtCalculatorService;
         this.accountsRepository = accountsRepository;
         this.validationService = validationService;
+        this.paymentLedgerRepository = paymentLedgerRepository;
+        this.creditCardVault = creditCardVault;
+        this.eventPublisher = eventPublisher;
+        this.paymentPlanStore = paymentPlanStore;
     }
 
     private static final Logger logger = LoggerFactory.getLogger(UpdatePaymentService.class);
 
+    @Transactional
     public ResponseEntity updateDebtsPaymentsBasedOnPaymentConfirmation(@RequestBody PaymentConfirmation paymentConfirmation) {
 
         PaymentDeclaration paymentDeclaration = paymentConfirmation.getPaymentDeclaration();
 
-        BigDecimal paymentAmount = paymentDeclaration.getPaymentAmount().setScale(2, RoundingMode.HALF_EVEN);
         String ssn = paymentDeclaration.getSsn();
         String debtUuid = paymentDeclaration.getDebtUuid();
 
-        if (validationService.notValidPaymentAmount(paymentAmount, ssn)) {
+        if (validationService.notValidPaymentAmount(paymentDeclaration.getPaymentAmount(), ssn)) {
             return new ResponseEntity<String>(HttpStatus.BAD_REQUEST);
         }
+        long paymentAmount = Cents.of(paymentDeclaration.getPaymentAmount());
 
         ResponseEntity<String> responseEntity = new ResponseEntity<>(HttpStatus.NOT_FOUND);
-        DebtorEntity debtorEntity = accountsRepository.findFirstBySsn(ssn);
+        DebtorEntity debtorEntity = accountsRepository.findFirstForPaymentUpdateBySsn(ssn);
+        List<PaymentEntity> pendingPayments = new ArrayList<>();
+
+        String planId = paymentConfirmation.getPlanId();
+        List<PlannedPayment> plannedPayments = paymentPlanStore.takeIfCurrent(planId, debtorEntity, debtUuid, paymentAmount);
+        if (plannedPayments != null) {
+            applyPlannedPayments(debtorEntity, plannedPayments, paymentConfirmation, pendingPayments);
+            logger.info("Payments of plan {} have been applied.", planId);
+            appendPendingPayments(ssn, pendingPayments);
+            return new ResponseEntity<String>(HttpStatus.OK);
+        }
 
         if (debtUuid.isEmpty()) {
-            handlingEmptyDebtId(debtorEntity, paymentConfirmation);
+            handlingEmptyDebtId(debtorEntity, paymentAmount, paymentConfirmation, pendingPayments);
+            appendPendingPayments(ssn, pendingPayments);
             return new ResponseEntity<String>(HttpStatus.OK);
         }
 
-        for (DebtEntity chosenDebtEntity : debtorEntity.getDebtEntities()) {
-            if (chosenDebtEntity.getUuid().equals(debtUuid)) {
-                handlingChosenDebtId(chosenDebtEntity, debtorEntity, paymentConfirmation);
-                return new ResponseEntity<String>(HttpStatus.OK);
-            }
+        DebtEntity chosenDebtEntity = debtorEntity.findDebtEntityByUuid(debtUuid);
+        if (chosenDebtEntity != null) {
+            handlingChosenDebtId(chosenDebtEntity, debtorEntity, paymentAmount, paymentConfirmation, pendingPayments);
+            appendPendingPayments(ssn, pendingPayments);
+            return new ResponseEntity<String>(HttpStatus.OK);
         }
         return responseEntity;
     }
 
-    private void handlingEmptyDebtId(DebtorEntity debtorEntity, PaymentConfirmation paymentConfirmation) {
+    private void appendPendingPayments(String ssn, List<PaymentEntity> pendingPayments) {
+        if (pendingPayments.isEmpty()) {
+            return;
+        }
+        paymentLedgerRepository.appendAll(pendingPayments);
+        eventPublisher.publishEvent(new DebtorAggregateChangedEvent(ssn));
+    }
 
-        BigDecimal paymentAmount = paymentConfirmation.getPaymentDeclaration().getPaymentAmount();
+    private void applyPlannedPayments(DebtorEntity debtorEntity, List<PlannedPayment> plannedPayments,
+                                      PaymentConfirmation paymentConfirmation, List<PaymentEntity> pendingPayments) {
 
-        BigDecimal sumOfDebts = debtCalculatorService.getSumOfDebts(debtorEntity);
+        for (PlannedPayment plannedPayment : plannedPayments) {
+            DebtEntity debtEntity = debtorEntity.findDebtEntityByUuid(plannedPayment.getUuid());
+            long plannedAmount = Cents.of(plannedPayment.getAmountOfRepaymentDebt());
+            if (debtEntity != null && plannedAmount > 0) {
+                addPaymentToDebtsSetOfPayments(plannedAmount, debtEntity, paymentConfirmation, pendingPayments);
+            }
+        }
+    }
+
+    private void handlingEmptyDebtId(DebtorEntity debtorEntity, long paymentAmount, PaymentConfirmation paymentConfirmation, List<PaymentEntity> pendingPayments) {
+
+        long sumOfDebts = debtCalculatorService.getSumOfDebts(debtorEntity);
 
         List<DebtEntity> oldestDebtEntities = debtCalculatorService.getListOfOldestDebts(debtorEntity);
 
-        boolean paymentIsNotBiggerThanSumOfDebts = paymentAmount.compareTo(sumOfDebts) <= 0;
-        boolean paymentIsBiggerThanSumOfDebts = paymentAmount.compareTo(sumOfDebts) > 0;
+        boolean paymentIsNotBiggerThanSumOfDebts = paymentAmount <= sumOfDebts;
+        boolean paymentIsBiggerThanSumOfDebts = paymentAmount > sumOfDebts;
 
         if (!oldestDebtEntities.isEmpty() && paymentIsNotBiggerThanSumOfDebts) {
-            payOldestDebts(paymentAmount, oldestDebtEntities, paymentConfirmation);
+            payOldestDebts(paymentAmount, oldestDebtEntities, paymentConfirmation, pendingPayments);
         } else if (!oldestDebtEntities.isEmpty() && paymentIsBiggerThanSumOfDebts) {
-            payAllDebts(debtorEntity, sumOfDebts, paymentConfirmation);
+            payAllDebts(debtorEntity, paymentAmount, sumOfDebts, paymentConfirmation, pendingPayments);
         }
     }
 
-    private void handlingChosenDebtId(DebtEntity chosenDebtEntity, DebtorEntity debtorEntity, PaymentConfirmation paymentConfirmation) {
-
-        BigDecimal paymentAmount = paymentConfirmation.getPaymentDeclaration().getPaymentAmount();
+    private void handlingChosenDebtId(DebtEntity chosenDebtEntity, DebtorEntity debtorEntity, long paymentAmount,
+                                      PaymentConfirmation paymentConfirmation, List<PaymentEntity> pendingPayments) {
 
-        BigDecimal sumOfDebts = debtCalculatorService.getSumOfDebts(debtorEntity);
+        long sumOfDebts = debtCalculatorService.getSumOfDebts(debtorEntity);
         List<DebtEntity> oldestDebtEntities = debtCalculatorService.getListOfOldestDebts(debtorEntity);
 
-        boolean paymentIsNotBiggerThanSumOfDebts = paymentAmount.compareTo(sumOfDebts) <= 0;
-        boolean paymentIsBiggerThanSumOfDebts = paymentAmount.compareTo(sumOfDebts) > 0;
+        boolean paymentIsNotBiggerThanSumOfDebts = paymentAmount <= sumOfDebts;
+        boolean paymentIsBiggerThanSumOfDebts = paymentAmount > sumOfDebts;
 
         if (!oldestDebtEntities.isEmpty() && paymentIsNotBiggerThanSumOfDebts) {
-            createPaymentPlanDependingOnAmount(chosenDebtEntity, paymentAmount, oldestDebtEntities, paymentConfirmation);
+            createPaymentPlanDependingOnAmount(chosenDebtEntity, paymentAmount, oldestDebtEntities, paymentConfirmation, pendingPayments);
         } else if (!oldestDebtEntities.isEmpty() && paymentIsBiggerThanSumOfDebts) {
-            payAllDebts(debtorEntity, sumOfDebts, paymentConfirmation);
+            payAllDebts(debtorEntity, paymentAmount, sumOfDebts, paymentConfirmation, pendingPayments);
         }
     }
 
     private void createPaymentPlanDependingOnAmount(
             DebtEntity chosenDebtEntity,
-            BigDecimal paymentAmount,
+            long paymentAmount,
             List<DebtEntity> oldestDebtEntities,
-            PaymentConfirmation paymentConfirmation) {
+            PaymentConfirmation paymentConfirmation, List<PaymentEntity> pendingPayments) {
 
-        BigDecimal debtLeftToPaid = debtCalculatorService.getDebtLeftToPaid(chosenDebtEntity);
+        long debtLeftToPaid = debtCalculatorService.getDebtLeftToPaid(chosenDebtEntity);
 
         logger.info("Payments list for debt {} has been actualized.", chosenDebtEntity.getUuid());
 
-        if (paymentAmount.compareTo(debtLeftToPaid) <= 0) {
-            addPaymentToDebtsSetOfPayments(paymentAmount, chosenDebtEntity, paymentConfirmation);
+        if (paymentAmount <= debtLeftToPaid) {
+            addPaymentToDebtsSetOfPayments(paymentAmount, chosenDebtEntity, paymentConfirmation, pendingPayments);
         } else {
-            payChosenDebtAndOthersByDate(paymentAmount, oldestDebtEntities, chosenDebtEntity, paymentConfirmation);
+            payChosenDebtAndOthersByDate(paymentAmount, oldestDebtEntities, chosenDebtEntity, paymentConfirmation, pendingPayments);
         }
     }
 
-    private void payChosenDebtAndOthersByDate(BigDecimal paymentAmount, List<DebtEntity> oldestDebtEntities,
-                                              DebtEntity chosenDebtEntity, PaymentConfirmation paymentConfirmation) {
+    private void payChosenDebtAndOthersByDate(long paymentAmount, List<DebtEntity> oldestDebtEntities,
+                                              DebtEntity chosenDebtEntity, PaymentConfirmation paymentConfirmation, List<PaymentEntity> pendingPayments) {
 
-        if (debtCalculatorService.getSumOfPayments(chosenDebtEntity).compareTo(chosenDebtEntity.getDebtAmount()) < 0) {
-            BigDecimal restAmount = chosenDebtEntity.getDebtAmount().subtract(debtCalculatorService.getSumOfPayments(chosenDebtEntity));
-            addPaymentToDebtsSetOfPayments(restAmount, chosenDebtEntity, paymentConfirmation);
-            paymentAmount = paymentAmount.subtract(restAmount);
+        if (!debtCalculatorService.isPaidOff(chosenDebtEntity)) {
+            long restAmount = debtCalculatorService.getDebtLeftToPaid(chosenDebtEntity);
+            addPaymentToDebtsSetOfPayments(restAmount, chosenDebtEntity, paymentConfirmation, pendingPayments);
+            paymentAmount = Cents.subtract(paymentAmount, restAmount);
         }
 
         List<DebtEntity> debtsWithoutChosen = new ArrayList<>();
@@ -133,32 +178,32 @@ public class UpdatePaymentService {
                 debtsWithoutChosen.add(d);
             }
         }
-        payOldestDebts(paymentAmount, debtsWithoutChosen, paymentConfirmation);
+        payOldestDebts(paymentAmount, debtsWithoutChosen, paymentConfirmation, pendingPayments);
     }
 
-    private void payOldestDebts(BigDecimal paymentAmount, List<DebtEntity> oldestDebtEntities,
-                                PaymentConfirmation paymentConfirmation) {
+    private void payOldestDebts(long paymentAmount, List<DebtEntity> oldestDebtEntities,
+                                PaymentConfirmation paymentConfirmation, List<PaymentEntity> pendingPayments) {
 
         for (int i = 0; i < oldestDebtEntities.size(); i++) {
             DebtEntity oldestDebtEntity = oldestDebtEntities.get(i);
-            BigDecimal debtLeftToPaid = debtCalculatorService.getDebtLeftToPaid(oldestDebtEntity);
+            long debtLeftToPaid = debtCalculatorService.getDebtLeftToPaid(oldestDebtEntity);
 
             logger.info("Payments list for debt {} has been actualized.", oldestDebtEntity.getUuid());
 
-            if (paymentAmount.compareTo(debtLeftToPaid) <= 0) {
-                addPaymentToDebtsSetOfPayments(paymentAmount, oldestDebtEntity, paymentConfirmation);
+            if (paymentAmount <= debtLeftToPaid) {
+                addPaymentToDebtsSetOfPayments(paymentAmount, oldestDebtEntity, paymentConfirmation, pendingPayments);
                 break;
             } else {
                 paymentAmount = addPaymentToDebtsSetOfPaymentsAndGetRemainingPaymentAmount(
-                        paymentAmount, oldestDebtEntity, debtLeftToPaid, paymentConfirmation);
+                        paymentAmount, oldestDebtEntity, debtLeftToPaid, paymentConfirmation, pendingPayments);
             }
         }
     }
 
-    private void payAllDebts(DebtorEntity debtorEntity, BigDecimal sumOfDebts, PaymentConfirmation paymentConfirmation) {
+    private void payAllDebts(DebtorEntity debtorEntity, long paymentAmount, long sumOfDebts,
+                             PaymentConfirmation paymentConfirmation, List<PaymentEntity> pendingPayments) {
 
-        logger.info("All debts has been paid. Surplus: {}.",
-                paymentConfirmation.getPaymentDeclaration().getPaymentAmount().subtract(sumOfDebts));
+        logger.info("All debts has been paid. Surplus: {}.", Cents.toAmount(Cents.subtract(paymentAmount, sumOfDebts)));
 
         List<DebtEntity> listOfDebtEntities = new ArrayList<>();
         debtorEntity.getDebtEntities().forEach(d -> listOfDebtEntities.add(d));
@@ -167,37 +212,38 @@ public class UpdatePaymentService {
             DebtEntity debtEntity = listOfDebtEntities.get(i);
             addNewPaymentToDebtsPayments(debtEntity, new PaymentEntity(
                     LocalDate.now(),
-                    debtEntity.getDebtAmount().subtract(debtCalculatorService.getSumOfPayments(debtEntity)),
-                    CreditCardEntity.convertFromCreditCard(paymentConfirmation.getCreditCard()),
-                    paymentConfirmation.getClientId()));
+                    Cents.toAmount(debtCalculatorService.getDebtLeftToPaid(debtEntity)),
+                    creditCardVault.resolve(CreditCardEntity.convertFromCreditCard(paymentConfirmation.getCreditCard())),
+                    paymentConfirmation.getClientId()), pendingPayments);
         }
     }
 
-    private void addPaymentToDebtsSetOfPayments(BigDecimal paymentAmount, DebtEntity debtEntity,
-                                                PaymentConfirmation paymentConfirmation) {
+    private void addPaymentToDebtsSetOfPayments(long paymentAmount, DebtEntity debtEntity,
+                                                PaymentConfirmation paymentConfirmation, List<PaymentEntity> pendingPayments) {
 
-        PaymentEntity paymentEntity = new PaymentEntity(LocalDate.now(), paymentAmount,
-                CreditCardEntity.convertFromCreditCard(paymentConfirmation.getCreditCard()), paymentConfirmation.getClientId());
+        PaymentEntity paymentEntity = new PaymentEntity(LocalDate.now(), Cents.toAmount(paymentAmount),
+                creditCardVault.resolve(CreditCardEntity.convertFromCreditCard(paymentConfirmation.getCreditCard())), paymentConfirmation.getClientId());
 
-        addNewPaymentToDebtsPayments(debtEntity, paymentEntity);
+        addNewPaymentToDebtsPayments(debtEntity, paymentEntity, pendingPayments);
     }
 
-    private BigDecimal addPaymentToDebtsSetOfPaymentsAndGetRemainingPaymentAmount(
-            BigDecimal paymentAmount, DebtEntity debtEntity, BigDecimal debtLeftToPaid, PaymentConfirmation paymentConfirmation) {
+    private long addPaymentToDebtsSetOfPaymentsAndGetRemainingPaymentAmount(
+            long paymentAmount, DebtEntity debtEntity, long debtLeftToPaid, PaymentConfirmation paymentConfirmation, List<PaymentEntity> pendingPayments) {
 
-        PaymentEntity paymentEntity = new PaymentEntity(LocalDate.now(), debtLeftToPaid,
-                CreditCardEntity.convertFromCreditCard(paymentConfirmation.getCreditCard()), paymentConfirmation.getClientId());
+        PaymentEntity paymentEntity = new PaymentEntity(LocalDate.now(), Cents.toAmount(debtLeftToPaid),
+                creditCardVault.resolve(CreditCardEntity.convertFromCreditCard(paymentConfirmation.getCreditCard())), paymentConfirmation.getClientId());
 
-        addNewPaymentToDebtsPayments(debtEntity, paymentEntity);
+        addNewPaymentToDebtsPayments(debtEntity, paymentEntity, pendingPayments);
 
-        paymentAmount = paymentAmount.subtract(debtLeftToPaid);
+        paymentAmount = Cents.subtract(paymentAmount, debtLeftToPaid);
         return paymentAmount;
     }
 
-    private void addNewPaymentToDebtsPayments(DebtEntity debtEntity, PaymentEntity paymentEntity) {
-        if (debtCalculatorService.getSumOfPayments(debtEntity).compareTo(debtEntity.getDebtAmount()) < 0) {
-            debtEntity.addToSetOfPaymentEntities(paymentEntity);
-            accountsRepository.save(debtEntity.getDebtorEntity());
+    private void addNewPaymentToDebtsPayments(DebtEntity debtEntity, PaymentEntity paymentEntity, List<PaymentEntity> pendingPayments) {
+        if (!debtCalculatorService.isPaidOff(debtEntity)) {
+            if (debtEntity.addToSetOfPaymentEntities(paymentEntity)) {
+                pendingPayments.add(paymentEntity);
+            }
         }
     }
 }
@@ -5,21 +5,30 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 
 @Service
 public class ValidationService {
 
     private static final Logger logger = LoggerFactory.getLogger(ValidationService.class);
 
+    /**
+     * Checks the amount before it is converted to cents: it has to be present, positive in cents
+     * and fit into {@code long} cents.
+     */
     boolean notValidPaymentAmount(BigDecimal paymentAmount, String ssn) {
-        if (paymentAmount.compareTo(BigDecimal.ZERO) > 0) {
-            logger.info("Received payment: {} for user with ssn {}.",
-                    paymentAmount.setScale(2, RoundingMode.HALF_EVEN), ssn);
+        long paymentAmountInCents;
+        try {
+            paymentAmountInCents = paymentAmount == null ? 0 : Cents.of(paymentAmount);
+        } catch (ArithmeticException e) {
+            logger.info("Not valid payment amount, out of range.");
+            return true;
+        }
+        if (paymentAmountInCents > 0) {
+            logger.info("Received payment: {} for user with ssn {}.", Cents.toAmount(paymentAmountInCents), ssn);
             return false;
         } else {
             logger.info("Not valid payment amount.");
             return true;
         }
     }
-}
\ No newline at end of file
+}
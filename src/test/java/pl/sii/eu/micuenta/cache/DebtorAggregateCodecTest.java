@@ -0,0 +1,82 @@
+package pl.sii.eu.micuenta.cache;
+
+import org.junit.Test;
+import pl.sii.eu.micuenta.model.model_dto.CreditCard;
+import pl.sii.eu.micuenta.model.model_dto.Debt;
+import pl.sii.eu.micuenta.model.model_dto.Debtor;
+import pl.sii.eu.micuenta.model.model_dto.Payment;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DebtorAggregateCodecTest {
+
+    private final DebtorAggregateCodec codec = new DebtorAggregateCodec();
+
+    @Test
+    public void shouldKeepOnlyMaskedCardNumberWithoutCvv() {
+
+        //given
+        Debtor debtor = debtorWithDebt("Santander", "4916338506082832", "123");
+
+        //when
+        byte[] encoded = codec.encode(debtor);
+        Debtor decoded = codec.decode(ByteBuffer.wrap(encoded));
+
+        //then
+        String raw = new String(encoded, StandardCharsets.ISO_8859_1);
+        assertThat(raw).doesNotContain("4916338506082832").doesNotContain("123");
+        CreditCard creditCard = decoded.getDebts().iterator().next().getPayments().iterator().next().getCreditCard();
+        assertThat(creditCard.getCcNumber()).isEqualTo("************2832");
+        assertThat(creditCard.getCvv()).isNull();
+    }
+
+    @Test
+    public void shouldStartDictionaryOverOnceFull() {
+
+        //given
+        for (int i = 0; i < DebtorAggregateCodec.MAX_DICTIONARY_SIZE; i++) {
+            codec.encode(debtorWithDebt("creditor-" + i, null, null));
+        }
+        long generation = codec.getDictionaryGeneration();
+
+        //when
+        boolean restarted = codec.restartDictionaryIfFull();
+        byte[] encoded = codec.encode(debtorWithDebt("Santander", null, null));
+
+        //then
+        assertThat(restarted).isTrue();
+        assertThat(codec.getDictionaryGeneration()).isEqualTo(generation + 1);
+        assertThat(codec.getDictionarySize()).isEqualTo(1);
+        assertThat(codec.decode(ByteBuffer.wrap(encoded)).getDebts().iterator().next().getDebtName()).isEqualTo("Santander");
+        assertThat(codec.restartDictionaryIfFull()).isFalse();
+    }
+
+    private static Debtor debtorWithDebt(String debtName, String ccNumber, String cvv) {
+        Payment payment = new Payment();
+        payment.setPaymentAmount(new BigDecimal("10.00"));
+        payment.setPaymentDate(LocalDate.of(2018, 5, 1));
+        if (ccNumber != null) {
+            CreditCard creditCard = new CreditCard();
+            creditCard.setCcNumber(ccNumber);
+            creditCard.setCvv(cvv);
+            creditCard.setIssuingNetwork("VISA");
+            payment.setCreditCard(creditCard);
+        }
+
+        Debt debt = new Debt();
+        debt.setDebtAmount(new BigDecimal("100.00"));
+        debt.setDebtName(debtName);
+        debt.setPayments(Collections.singleton(payment));
+
+        Debtor debtor = new Debtor();
+        debtor.setSsn("980-122-111");
+        debtor.setDebts(Collections.singleton(debt));
+        return debtor;
+    }
+}
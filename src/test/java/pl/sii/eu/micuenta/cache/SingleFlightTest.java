@@ -0,0 +1,111 @@
+package pl.sii.eu.micuenta.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SingleFlightTest {
+
+    @Test
+    public void shouldShareOneComputationBetweenConcurrentCallers() throws Exception {
+
+        //given
+        CountDownLatch waiting = new CountDownLatch(1);
+        SingleFlight<String, Object> singleFlight = awaitedSingleFlight(UnaryOperator.identity(), waiting);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger computations = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        //when
+        Future<Object> first = executor.submit(() -> singleFlight.execute("980-122-111", () -> {
+            computations.incrementAndGet();
+            started.countDown();
+            awaitQuietly(release);
+            return new Object();
+        }));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        Future<Object> second = executor.submit(() -> singleFlight.execute("980-122-111", Object::new));
+        assertThat(waiting.await(5, TimeUnit.SECONDS)).isTrue();
+        release.countDown();
+
+        //then
+        assertThat(second.get(5, TimeUnit.SECONDS)).isSameAs(first.get(5, TimeUnit.SECONDS));
+        assertThat(computations.get()).isEqualTo(1);
+        assertThat(singleFlight.getStats().getExecutions()).isEqualTo(1L);
+        assertThat(singleFlight.getStats().getCoalesced()).isEqualTo(1L);
+        assertThat(singleFlight.getStats().getInFlight()).isEqualTo(0);
+        executor.shutdown();
+    }
+
+    @Test
+    public void shouldHandCopyOfSharedResultToWaitingCaller() throws Exception {
+
+        //given
+        CountDownLatch waiting = new CountDownLatch(1);
+        SingleFlight<String, List<String>> singleFlight = awaitedSingleFlight(ArrayList::new, waiting);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        //when
+        Future<List<String>> first = executor.submit(() -> singleFlight.execute("980-122-111", () -> {
+            started.countDown();
+            awaitQuietly(release);
+            return new ArrayList<>(Collections.singletonList("plan"));
+        }));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        Future<List<String>> second = executor.submit(() -> singleFlight.execute("980-122-111", ArrayList::new));
+        assertThat(waiting.await(5, TimeUnit.SECONDS)).isTrue();
+        release.countDown();
+
+        //then
+        List<String> computed = first.get(5, TimeUnit.SECONDS);
+        List<String> copy = second.get(5, TimeUnit.SECONDS);
+        assertThat(copy).isNotSameAs(computed).isEqualTo(computed);
+        executor.shutdown();
+    }
+
+    @Test
+    public void shouldComputeAgainOnceFinished() {
+
+        //given
+        SingleFlight<String, Object> singleFlight = new SingleFlight<>();
+        Object first = singleFlight.execute("980-122-111", Object::new);
+
+        //when
+        Object second = singleFlight.execute("980-122-111", Object::new);
+
+        //then
+        assertThat(second).isNotSameAs(first);
+        assertThat(singleFlight.getStats().getCoalesced()).isEqualTo(0L);
+    }
+
+    private static <V> SingleFlight<String, V> awaitedSingleFlight(UnaryOperator<V> copyForWaiter, CountDownLatch waiting) {
+        return new SingleFlight<String, V>(copyForWaiter) {
+            @Override
+            void waiting(String key) {
+                waiting.countDown();
+            }
+        };
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package pl.sii.eu.micuenta.conf;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.junit4.SpringRunner;
+import pl.sii.eu.micuenta.model.model_entity.DebtorEntity;
+import pl.sii.eu.micuenta.model.model_entity.PooledSequenceGenerator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {AppConfig.class})
+public class IdSequenceMigrationTest {
+
+    @Autowired
+    private IdSequenceMigration idSequenceMigration;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldRestartSequencePastRowsInsertedWithoutIt() {
+
+        //given
+        long maxId = nextValue() + 10L * PooledSequenceGenerator.DEFAULT_ALLOCATION_SIZE;
+        jdbcTemplate.update("INSERT INTO DEBTOR_ENTITY (ID, FIRST_NAME, LAST_NAME, SSN) VALUES (?, ?, ?, ?)",
+                maxId, "Sylvanas", "Windrunner", "123-456-789");
+
+        //when
+        idSequenceMigration.migrate();
+
+        //then
+        assertThat(nextValue()).isGreaterThan(maxId);
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldNotMoveSequenceWhichIsAlreadyPastExistingRows() {
+
+        //given
+        jdbcTemplate.update("INSERT INTO DEBTOR_ENTITY (ID, FIRST_NAME, LAST_NAME, SSN) VALUES (?, ?, ?, ?)",
+                nextValue(), "Sylvanas", "Windrunner", "123-456-789");
+        idSequenceMigration.migrate();
+        long valueAfterFirstRun = nextValue();
+
+        //when
+        idSequenceMigration.migrate();
+
+        //then
+        assertThat(nextValue()).isEqualTo(valueAfterFirstRun + PooledSequenceGenerator.DEFAULT_ALLOCATION_SIZE);
+    }
+
+    private long nextValue() {
+        return jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR " + DebtorEntity.SEQUENCE_NAME, Long.class);
+    }
+}
@@ -0,0 +1,110 @@
+package pl.sii.eu.micuenta.conf;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SchemaMigrationRunnerTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private List<Integer> appliedVersions;
+
+    @Before
+    public void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", ""));
+        appliedVersions = new ArrayList<>();
+    }
+
+    @Test
+    public void shouldApplyMigrationsInVersionOrder() {
+
+        //given
+        SchemaMigrationRunner runner = new SchemaMigrationRunner(jdbcTemplate,
+                Arrays.asList(migration(3), migration(1), migration(2)));
+
+        //when
+        runner.migrate();
+
+        //then
+        assertThat(appliedVersions).containsExactly(1, 2, 3);
+        assertThat(recordedVersions()).containsExactly(1, 2, 3);
+    }
+
+    @Test
+    public void shouldApplyEveryMigrationOnlyOnce() {
+
+        //given
+        new SchemaMigrationRunner(jdbcTemplate, Arrays.asList(migration(1), migration(2))).migrate();
+        appliedVersions.clear();
+
+        //when
+        new SchemaMigrationRunner(jdbcTemplate, Arrays.asList(migration(1), migration(2), migration(3))).migrate();
+
+        //then
+        assertThat(appliedVersions).containsExactly(3);
+        assertThat(recordedVersions()).containsExactly(1, 2, 3);
+    }
+
+    @Test
+    public void shouldNotRecordFailedMigration() {
+
+        //given
+        SchemaMigration failing = new TestMigration(2) {
+            @Override
+            public void migrate() {
+                throw new IllegalStateException("broken migration");
+            }
+        };
+        SchemaMigrationRunner runner = new SchemaMigrationRunner(jdbcTemplate, Arrays.asList(migration(1), failing, migration(3)));
+
+        //when
+        assertThatThrownBy(runner::migrate).isInstanceOf(IllegalStateException.class);
+        new SchemaMigrationRunner(jdbcTemplate, Collections.singletonList(migration(2))).migrate();
+
+        //then
+        assertThat(appliedVersions).containsExactly(1, 2);
+        assertThat(recordedVersions()).containsExactly(1, 2);
+    }
+
+    private List<Integer> recordedVersions() {
+        return jdbcTemplate.queryForList("SELECT VERSION FROM SCHEMA_VERSION ORDER BY VERSION", Integer.class);
+    }
+
+    private SchemaMigration migration(int version) {
+        return new TestMigration(version);
+    }
+
+    private class TestMigration implements SchemaMigration {
+        private final int version;
+
+        private TestMigration(int version) {
+            this.version = version;
+        }
+
+        @Override
+        public int getVersion() {
+            return version;
+        }
+
+        @Override
+        public String getDescription() {
+            return "Test migration " + version;
+        }
+
+        @Override
+        public void migrate() {
+            appliedVersions.add(version);
+        }
+    }
+}
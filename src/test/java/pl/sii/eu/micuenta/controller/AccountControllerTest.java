@@ -0,0 +1,193 @@
+package pl.sii.eu.micuenta.controller;
+
+import com.jayway.jsonpath.JsonPath;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import pl.sii.eu.micuenta.conf.AppConfig;
+import pl.sii.eu.micuenta.cache.CacheStats;
+import pl.sii.eu.micuenta.conf.DataCreator;
+import pl.sii.eu.micuenta.model.model_entity.DebtorEntity;
+import pl.sii.eu.micuenta.repository.AccountsRepository;
+import pl.sii.eu.micuenta.service.BalanceResponseCache;
+import pl.sii.eu.micuenta.service.DataDebtorService;
+import pl.sii.eu.micuenta.service.PaymentPlanStore;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {AppConfig.class})
+public class AccountControllerTest {
+
+    @Autowired
+    private AccountController accountController;
+
+    @Autowired
+    private AccountsRepository accountsRepository;
+
+    @Autowired
+    private BalanceResponseCache balanceResponseCache;
+
+    @Autowired
+    private DataDebtorService dataDebtorService;
+
+    @Autowired
+    private PaymentPlanStore paymentPlanStore;
+
+    @PersistenceUnit
+    private EntityManagerFactory entityManagerFactory;
+
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() {
+        mockMvc = MockMvcBuilders.standaloneSetup(accountController).build();
+        balanceResponseCache.invalidateAll();
+        dataDebtorService.invalidateOffHeapStore();
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldLoadDebtorAtMostTwiceDuringLoginBalancePaymentPlanAndConfirmationSession() throws Exception {
+
+        //given
+        accountsRepository.save(DataCreator.createDebtor());
+        dataDebtorService.invalidateOffHeapStore();
+        long debtorLoadsBefore = debtorLoadCount();
+        CacheStats cacheBefore = dataDebtorService.getCacheStats();
+        CacheStats plansBefore = paymentPlanStore.getStats();
+
+        //when
+        perform(post("/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"firstName\": \"Jaime\", \"lastName\": \"Karren\", \"ssn\": \"980-122-111\"}"))
+                .andExpect(status().isOk());
+        perform(get("/balance/980-122-111"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.debts", hasSize(4)));
+        String paymentPlan = perform(post("/paymentplan")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"paymentAmount\": 2043, \"ssn\": \"980-122-111\", \"debtUuid\": \"\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        String planId = JsonPath.read(paymentPlan, "$.planId");
+        perform(post("/paymentmethods/creditcard")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"paymentDeclaration\": {\"paymentAmount\": 2043, \"ssn\": \"980-122-111\", \"debtUuid\": \"\"},"
+                        + " \"clientId\": \"Horde\", \"planId\": \"" + planId + "\","
+                        + " \"creditCard\": {\"ccNumber\": \"1234567890123456\", \"cvv\": \"809\","
+                        + " \"firstName\": \"Sylvanas\", \"lastName\": \"Windrunner\", \"issuingNetwork\": \"MasterCard\"}}"))
+                .andExpect(status().isOk());
+
+        //then
+        CacheStats cacheAfter = dataDebtorService.getCacheStats();
+        CacheStats plansAfter = paymentPlanStore.getStats();
+        assertThat(planId).isNotNull();
+        assertThat(debtorLoadCount() - debtorLoadsBefore).isLessThanOrEqualTo(2L);
+        assertThat(cacheAfter.getMisses() - cacheBefore.getMisses()).isEqualTo(1L);
+        assertThat(cacheAfter.getHits() - cacheBefore.getHits()).isGreaterThanOrEqualTo(2L);
+        assertThat(plansAfter.getHits() - plansBefore.getHits()).isEqualTo(1L);
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldStreamFoundDebtorsOfBatchBalanceRequest() throws Exception {
+
+        //given
+        accountsRepository.save(DataCreator.createDebtor());
+
+        //when
+        MvcResult result = mockMvc.perform(post("/balance/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[\"980-122-111\", \"000-000-000\", \"980-122-111\"]"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        //then
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].ssn").value("980-122-111"))
+                .andExpect(jsonPath("$[0].debts", hasSize(4)));
+    }
+
+    @Test
+    public void shouldRejectBatchBalanceRequestAboveMaximumNumberOfSsns() throws Exception {
+
+        //given
+        String ssns = IntStream.rangeClosed(0, 1000)
+                .mapToObj(i -> "\"" + i + "\"")
+                .collect(Collectors.joining(",", "[", "]"));
+
+        //when
+        mockMvc.perform(post("/balance/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(ssns))
+
+                //then
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldAnswerNotModifiedWhenAnyListedETagMatchesWeakly() throws Exception {
+
+        //given
+        accountsRepository.save(DataCreator.createDebtor());
+        String eTag = balanceResponseCache.getETag("980-122-111");
+
+        //when
+        MvcResult result = mockMvc.perform(get("/balance/980-122-111")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"outdated\", W/" + eTag))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        //then
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, eTag))
+                .andExpect(content().bytes(new byte[0]));
+    }
+
+    private ResultActions perform(MockHttpServletRequestBuilder requestBuilder) throws Exception {
+        MvcResult result = mockMvc.perform(requestBuilder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(result));
+    }
+
+    private long debtorLoadCount() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        return statistics.getEntityStatistics(DebtorEntity.class.getName()).getLoadCount();
+    }
+}
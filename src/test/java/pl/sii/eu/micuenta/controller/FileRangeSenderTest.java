@@ -0,0 +1,135 @@
+package pl.sii.eu.micuenta.controller;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileRangeSenderTest {
+
+    private static final String ETAG = "\"abc\"";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldSendRequestedRange() throws Exception {
+
+        //given
+        Path file = createFile("0123456789");
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/export/snapshots/latest/file");
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        //when
+        FileRangeSender.send(file, "application/x-ndjson", ETAG, request, response);
+
+        //then
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 2-5/10");
+        assertThat(response.getContentAsString()).isEqualTo("2345");
+    }
+
+    @Test
+    public void shouldSendWholeFileWhenIfRangeDoesNotMatch() throws Exception {
+
+        //given
+        Path file = createFile("0123456789");
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/export/snapshots/latest/file");
+        request.addHeader(HttpHeaders.RANGE, "bytes=-3");
+        request.addHeader(HttpHeaders.IF_RANGE, "\"previous\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        //when
+        FileRangeSender.send(file, "application/x-ndjson", ETAG, request, response);
+
+        //then
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsString()).isEqualTo("0123456789");
+    }
+
+    @Test
+    public void shouldRejectRangeOutsideOfFile() throws Exception {
+
+        //given
+        Path file = createFile("0123456789");
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/export/snapshots/latest/file");
+        request.addHeader(HttpHeaders.RANGE, "bytes=10-");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        //when
+        FileRangeSender.send(file, "application/x-ndjson", ETAG, request, response);
+
+        //then
+        assertThat(response.getStatus()).isEqualTo(416);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */10");
+    }
+
+    @Test
+    public void shouldHandTransferOverToSendfileWhenSupported() throws Exception {
+
+        //given
+        Path file = createFile("0123456789");
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/export/snapshots/latest/file");
+        request.setAttribute(FileRangeSender.SENDFILE_SUPPORT, Boolean.TRUE);
+        request.addHeader(HttpHeaders.RANGE, "bytes=-3");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        //when
+        FileRangeSender.send(file, "application/x-ndjson", ETAG, request, response);
+
+        //then
+        assertThat(request.getAttribute(FileRangeSender.SENDFILE_START)).isEqualTo(7L);
+        assertThat(request.getAttribute(FileRangeSender.SENDFILE_END)).isEqualTo(10L);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_LENGTH)).isEqualTo("3");
+        assertThat(response.getContentAsByteArray()).isEmpty();
+    }
+
+    @Test
+    public void shouldAnswerNotModifiedWhenAnyListedETagMatchesWeakly() throws Exception {
+
+        //given
+        Path file = createFile("0123456789");
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/export/snapshots/latest/file");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"previous\", W/\"abc\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        //when
+        FileRangeSender.send(file, "application/x-ndjson", ETAG, request, response);
+
+        //then
+        assertThat(response.getStatus()).isEqualTo(304);
+        assertThat(response.getContentAsByteArray()).isEmpty();
+    }
+
+    @Test
+    public void shouldSendWholeFileWhenNoListedETagMatches() throws Exception {
+
+        //given
+        Path file = createFile("0123456789");
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/export/snapshots/latest/file");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"previous\", W/\"abcd\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        //when
+        FileRangeSender.send(file, "application/x-ndjson", ETAG, request, response);
+
+        //then
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsString()).isEqualTo("0123456789");
+    }
+
+    private Path createFile(String content) throws Exception {
+        Path file = temporaryFolder.newFile("debtors.ndjson").toPath();
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,71 @@
+package pl.sii.eu.micuenta.controller;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class RequestExecutorTest {
+
+    @Test
+    public void shouldRejectWorkWhenQueueIsFull() throws Exception {
+
+        //given
+        RequestExecutor requestExecutor = new RequestExecutor("write", 1, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> running = requestExecutor.submit(() -> {
+            started.countDown();
+            awaitQuietly(release);
+            return "running";
+        });
+        started.await(5, TimeUnit.SECONDS);
+        CompletableFuture<String> queued = requestExecutor.submit(() -> "queued");
+
+        //when
+        CompletableFuture<String> rejected = requestExecutor.submit(() -> "rejected");
+        RequestExecutorStats statsWhenFull = requestExecutor.getStats();
+        release.countDown();
+
+        //then
+        assertThat(rejected.isCompletedExceptionally()).isTrue();
+        assertThat(catchThrowable(rejected::get)).isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(RejectedExecutionException.class);
+        assertThat(statsWhenFull.getQueueDepth()).isEqualTo(1);
+        assertThat(statsWhenFull.getRejected()).isEqualTo(1L);
+        assertThat(running.get(5, TimeUnit.SECONDS)).isEqualTo("running");
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isEqualTo("queued");
+        requestExecutor.shutdown();
+    }
+
+    @Test
+    public void shouldCompleteWithExceptionThrownByWork() {
+
+        //given
+        RequestExecutor requestExecutor = new RequestExecutor("read", 1, 1);
+
+        //when
+        CompletableFuture<String> result = requestExecutor.submit(() -> {
+            throw new IllegalStateException("Balance can not be serialized.");
+        });
+
+        //then
+        assertThat(catchThrowable(() -> result.get(5, TimeUnit.SECONDS))).hasCauseExactlyInstanceOf(IllegalStateException.class);
+        assertThat(requestExecutor.getStats().getFailed()).isEqualTo(1L);
+        requestExecutor.shutdown();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
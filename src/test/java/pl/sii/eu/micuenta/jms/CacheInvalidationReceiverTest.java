@@ -0,0 +1,83 @@
+package pl.sii.eu.micuenta.jms;
+
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.junit4.SpringRunner;
+import pl.sii.eu.micuenta.cache.OffHeapStoreStats;
+import pl.sii.eu.micuenta.conf.AppConfig;
+import pl.sii.eu.micuenta.conf.DataCreator;
+import pl.sii.eu.micuenta.jms.receiver.CacheInvalidationReceiver;
+import pl.sii.eu.micuenta.jms.receiver.InvalidationBusStats;
+import pl.sii.eu.micuenta.jms.sender.CacheInvalidationSender;
+import pl.sii.eu.micuenta.repository.AccountsRepository;
+import pl.sii.eu.micuenta.service.DataDebtorService;
+
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {AppConfig.class})
+public class CacheInvalidationReceiverTest {
+
+    @Autowired
+    private AccountsRepository accountsRepository;
+
+    @Autowired
+    private DataDebtorService dataDebtorService;
+
+    @Autowired
+    private CacheInvalidationReceiver cacheInvalidationReceiver;
+
+    @Autowired
+    private JmsTemplate jmsTemplate;
+
+    @After
+    public void clearCache() {
+        dataDebtorService.invalidateOffHeapStore();
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldDropCachedDebtorChangedOnOtherNode() throws InterruptedException {
+
+        //given
+        accountsRepository.save(DataCreator.createDebtor());
+        dataDebtorService.getDebtorBySsn("980-122-111");
+        long received = cacheInvalidationReceiver.getStats().getReceived();
+
+        //when
+        for (int attempt = 0; attempt < 50 && cacheInvalidationReceiver.getStats().getReceived() == received; attempt++) {
+            sendInvalidationFromOtherNode("980-122-111");
+            Thread.sleep(100);
+        }
+
+        OffHeapStoreStats before = dataDebtorService.getOffHeapStats();
+        dataDebtorService.getDebtorBySsn("980-122-111");
+
+        //then
+        InvalidationBusStats stats = cacheInvalidationReceiver.getStats();
+        assertThat(stats.getReceived()).isGreaterThan(received);
+        assertThat(stats.getMaxLagMillis()).isGreaterThanOrEqualTo(0L);
+        assertThat(dataDebtorService.getOffHeapStats().getMisses() - before.getMisses()).isEqualTo(1L);
+    }
+
+    private void sendInvalidationFromOtherNode(String ssn) {
+        jmsTemplate.send(new ActiveMQTopic(CacheInvalidationSender.TOPIC), (Session session) -> {
+            TextMessage textMessage = new ActiveMQTextMessage();
+            textMessage.setText(ssn);
+            textMessage.setStringProperty(CacheInvalidationSender.ORIGIN_PROPERTY, "other-node");
+            textMessage.setLongProperty(CacheInvalidationSender.SENT_AT_PROPERTY, System.currentTimeMillis());
+            return textMessage;
+        });
+    }
+}
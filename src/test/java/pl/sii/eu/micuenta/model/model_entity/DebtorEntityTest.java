@@ -0,0 +1,47 @@
+package pl.sii.eu.micuenta.model.model_entity;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class DebtorEntityTest {
+
+    @Test
+    public void shouldDropPaidOffDebtFromRepaymentOrderWithoutChangingEarlierSnapshot() {
+
+        //given
+        DebtEntity older = new DebtEntity(new BigDecimal("100.00"), LocalDate.of(2018, 1, 1), Collections.emptySet(), "OLD/1", "Santander");
+        DebtEntity newer = new DebtEntity(new BigDecimal("50.00"), LocalDate.of(2018, 6, 1), Collections.emptySet(), "NEW/1", "Santander");
+        DebtorEntity debtorEntity = new DebtorEntity("Jaime", "Karren", "980-122-111", new HashSet<>(Arrays.asList(older, newer)));
+        List<DebtEntity> before = debtorEntity.getOpenDebtsByRepaymentDate();
+
+        //when
+        older.addToSetOfPaymentEntities(new PaymentEntity(LocalDate.of(2018, 7, 1), new BigDecimal("100.00"), null, "client"));
+
+        //then
+        assertThat(before).containsExactly(older, newer);
+        assertThat(debtorEntity.getOpenDebtsByRepaymentDate()).containsExactly(newer);
+        assertThat(debtorEntity.findDebtEntityByUuid("OLD/1")).isSameAs(older);
+    }
+
+    @Test
+    public void shouldRejectDebtWithoutRemainingAmount() {
+
+        //given
+        DebtEntity debtEntity = new DebtEntity();
+
+        //when
+        Throwable thrown = catchThrowable(debtEntity::isPaidOff);
+
+        //then
+        assertThat(thrown).isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,68 @@
+package pl.sii.eu.micuenta.model.model_entity;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.Rollback;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.junit4.SpringRunner;
+import pl.sii.eu.micuenta.conf.AppConfig;
+import pl.sii.eu.micuenta.repository.AccountsRepository;
+
+import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {AppConfig.class})
+@Transactional
+@Rollback
+public class PooledSequenceGeneratorTest {
+
+    @Autowired
+    private AccountsRepository accountsRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void shouldCreateSequencesWithConfiguredAllocationSize() {
+
+        //when
+        Long increment = jdbcTemplate.queryForObject(
+                "SELECT INCREMENT FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME = ?", Long.class, DebtorEntity.SEQUENCE_NAME);
+
+        //then
+        assertThat(increment).isEqualTo(PooledSequenceGenerator.DEFAULT_ALLOCATION_SIZE);
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldHandOutIdsFromMemoryWithAtMostOneSequenceCall() {
+
+        //given
+        long sequenceBefore = currentValue();
+        List<Long> ids = new ArrayList<>();
+
+        //when
+        for (int i = 0; i < 3; i++) {
+            DebtorEntity debtorEntity = new DebtorEntity("Sylvanas", "Windrunner", "123-456-78" + i, new HashSet<>());
+            accountsRepository.save(debtorEntity);
+            ids.add(debtorEntity.getId());
+        }
+
+        //then
+        assertThat(ids).doesNotContainNull().isSorted().doesNotHaveDuplicates();
+        assertThat(currentValue() - sequenceBefore).isIn(0L, (long) PooledSequenceGenerator.DEFAULT_ALLOCATION_SIZE);
+    }
+
+    private long currentValue() {
+        return jdbcTemplate.queryForObject(
+                "SELECT CURRENT_VALUE FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME = ?", Long.class, DebtorEntity.SEQUENCE_NAME);
+    }
+}
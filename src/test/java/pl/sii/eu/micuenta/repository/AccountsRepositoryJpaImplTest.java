@@ -1,5 +1,6 @@
 package pl.sii.eu.micuenta.repository;
 
+import org.hibernate.Session;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -7,15 +8,30 @@ import org.springframework.test.annotation.Rollback;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.IllegalTransactionStateException;
 import pl.sii.eu.micuenta.conf.AppConfig;
 import pl.sii.eu.micuenta.conf.DataCreator;
+import pl.sii.eu.micuenta.model.model_entity.CreditCardEntity;
+import pl.sii.eu.micuenta.model.model_entity.DebtEntity;
 import pl.sii.eu.micuenta.model.model_entity.DebtorEntity;
+import pl.sii.eu.micuenta.model.model_entity.PaymentEntity;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceUnitUtil;
 import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 
@@ -30,6 +46,8 @@ public class AccountsRepositoryJpaImplTest {
     AccountsRepository accountsRepository;
     @Autowired
     AccountsRepositoryJpaImpl accountRepositorySQL;
+    @PersistenceContext
+    EntityManager em;
 
     @Test
     @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
@@ -75,4 +93,86 @@ public class AccountsRepositoryJpaImplTest {
         //than
         assertThat(actual, is(Optional.empty()));
     }
-}
\ No newline at end of file
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldFindAllDebtorsBySsnsAcrossChunks() {
+        //given
+        DebtorEntity expected = dataCreator.createDebtor();
+        accountsRepository.save(expected);
+        List<String> ssns = new ArrayList<>();
+        for (int i = 0; i < AccountsRepository.SSN_CHUNK_SIZE + 10; i++) {
+            ssns.add("000-000-" + i);
+        }
+        ssns.add(expected.getSsn());
+        ssns.add(expected.getSsn());
+
+        //when
+        List<DebtorEntity> actual = accountRepositorySQL.findAllBySsnIn(ssns);
+
+        //then
+        assertThat(actual, is(Collections.singletonList(expected)));
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldStreamAllDebtorsInOrderOfIds() {
+        //given
+        DebtorEntity withDebts = dataCreator.createDebtor();
+        DebtorEntity withoutDebts = new DebtorEntity("Sylvanas", "Windrunner", "123-456-789", new HashSet<>());
+        accountsRepository.save(withDebts);
+        accountsRepository.save(withoutDebts);
+
+        //when
+        List<DebtorEntity> actual;
+        try (Stream<DebtorEntity> debtors = accountRepositorySQL.streamAll()) {
+            actual = debtors.collect(Collectors.toList());
+        }
+
+        //then
+        assertThat(actual, is(Arrays.asList(withDebts, withoutDebts)));
+        assertThat(actual.get(0).getDebtEntities().size(), is(4));
+    }
+
+    @Test
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public void shouldRefuseToStreamDebtorsOutsideTransaction() {
+        //when
+        RuntimeException thrown = null;
+        try {
+            accountRepositorySQL.streamAll();
+        } catch (IllegalTransactionStateException e) {
+            thrown = e;
+        }
+
+        //then
+        assertThat(thrown, is(notNullValue()));
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldLoadDebtsWithoutPaymentsAndCardsForPaymentUpdate() {
+        //given
+        DebtorEntity saved = dataCreator.createDebtor();
+        accountsRepository.saveAndFlush(saved);
+        em.clear();
+        PersistenceUnitUtil persistenceUnitUtil = em.getEntityManagerFactory().getPersistenceUnitUtil();
+
+        //when
+        DebtorEntity actual = accountRepositorySQL.findFirstForPaymentUpdateBySsn(saved.getSsn());
+
+        //then
+        assertThat(persistenceUnitUtil.isLoaded(actual, "debtEntities"), is(true));
+        assertThat(actual.getDebtEntities().size(), is(4));
+        for (DebtEntity debtEntity : actual.getDebtEntities()) {
+            assertThat(persistenceUnitUtil.isLoaded(debtEntity, "paymentEntities"), is(false));
+            assertThat(debtEntity.getPaidAmount(), equalTo(saved.findDebtEntityByUuid(debtEntity.getUuid()).getPaidAmount()));
+        }
+        assertThat(em.unwrap(Session.class).getStatistics().getEntityKeys().stream()
+                .noneMatch(key -> key.getEntityName().equals(PaymentEntity.class.getName())
+                        || key.getEntityName().equals(CreditCardEntity.class.getName())), is(true));
+    }
+}
@@ -3,18 +3,32 @@ package pl.sii.eu.micuenta.repository;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.test.annotation.Rollback;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.context.junit4.SpringRunner;
 import pl.sii.eu.micuenta.conf.AppConfig;
 import pl.sii.eu.micuenta.conf.DataCreator;
+import pl.sii.eu.micuenta.model.model_entity.DebtEntity;
 import pl.sii.eu.micuenta.model.model_entity.DebtorEntity;
+import pl.sii.eu.micuenta.model.model_entity.PaymentEntity;
 
+import javax.sql.DataSource;
 import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 @Transactional
@@ -28,6 +42,8 @@ public class AccountsRepositoryNativeImplTest {
     AccountsRepository accountsRepository;
     @Autowired
     AccountsRepositoryNativeImpl accountRepositoryNativeSQL;
+    @Autowired
+    DataSource dataSource;
 
     @Test
     @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
@@ -37,7 +53,7 @@ public class AccountsRepositoryNativeImplTest {
         DebtorEntity expected = dataCreator.createDebtor();
 
         //when
-        accountsRepository.save(expected);
+        accountsRepository.saveAndFlush(expected);
 
         //than
         DebtorEntity actual = accountRepositoryNativeSQL.findFirstBySsn(expected.getSsn());
@@ -50,7 +66,7 @@ public class AccountsRepositoryNativeImplTest {
     public void shouldReturnDebtorBySsnFirstNameLastName() {
         //given
         DebtorEntity expected = dataCreator.createDebtor();
-        accountsRepository.save(expected);
+        accountsRepository.saveAndFlush(expected);
 
         //when
         Optional<DebtorEntity> actual = accountRepositoryNativeSQL
@@ -58,4 +74,152 @@ public class AccountsRepositoryNativeImplTest {
         //than
         assertThat(expected, equalTo(actual.get()));
     }
-}
\ No newline at end of file
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldLoadWholeDebtorGraphInSingleQuery() {
+        //given
+        DebtorEntity expected = dataCreator.createDebtor();
+        accountsRepository.saveAndFlush(expected);
+        QueryCountingJdbcTemplate jdbcTemplate = new QueryCountingJdbcTemplate(dataSource);
+        AccountsRepositoryNativeImpl repository = new AccountsRepositoryNativeImpl(jdbcTemplate);
+
+        //when
+        DebtorEntity actual = repository.findFirstBySsn(expected.getSsn());
+
+        //then
+        assertThat(expected, equalTo(actual));
+        assertThat(jdbcTemplate.queryCount, is(1));
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldLoadDebtorGraphWithQueryPerDebtWhenJoinedFetchIsDisabled() {
+        //given
+        DebtorEntity expected = dataCreator.createDebtor();
+        accountsRepository.saveAndFlush(expected);
+        QueryCountingJdbcTemplate jdbcTemplate = new QueryCountingJdbcTemplate(dataSource);
+        AccountsRepositoryNativeImpl repository = new AccountsRepositoryNativeImpl(jdbcTemplate);
+        repository.setJoinedFetch(false);
+
+        //when
+        DebtorEntity actual = repository.findFirstBySsn(expected.getSsn());
+
+        //then
+        assertThat(expected, equalTo(actual));
+        assertThat(jdbcTemplate.queryCount, is(2 + expected.getDebtEntities().size()));
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldFindAllDebtorsBySsnsAcrossChunks() {
+        //given
+        DebtorEntity expected = dataCreator.createDebtor();
+        accountsRepository.saveAndFlush(expected);
+        List<String> ssns = new ArrayList<>();
+        for (int i = 0; i < AccountsRepository.SSN_CHUNK_SIZE + 10; i++) {
+            ssns.add("000-000-" + i);
+        }
+        ssns.add(expected.getSsn());
+        ssns.add(expected.getSsn());
+
+        //when
+        List<DebtorEntity> actual = accountRepositoryNativeSQL.findAllBySsnIn(ssns);
+
+        //then
+        assertThat(actual, is(Collections.singletonList(expected)));
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldStreamAllDebtorsInOrderOfIds() {
+        //given
+        DebtorEntity withDebts = dataCreator.createDebtor();
+        DebtorEntity withoutDebts = new DebtorEntity("Sylvanas", "Windrunner", "123-456-789", new HashSet<>());
+        accountsRepository.saveAndFlush(withDebts);
+        accountsRepository.saveAndFlush(withoutDebts);
+
+        //when
+        List<DebtorEntity> actual;
+        try (Stream<DebtorEntity> debtors = accountRepositoryNativeSQL.streamAll()) {
+            actual = debtors.collect(Collectors.toList());
+        }
+
+        //then
+        assertThat(actual.stream().map(DebtorEntity::getSsn).collect(Collectors.toList()),
+                is(Arrays.asList(withDebts.getSsn(), withoutDebts.getSsn())));
+        assertThat(actual.get(0).getDebtEntities().size(), is(4));
+        assertThat(actual.get(1).getDebtEntities().isEmpty(), is(true));
+        for (DebtEntity debtEntity : actual.get(0).getDebtEntities()) {
+            DebtEntity saved = withDebts.findDebtEntityByUuid(debtEntity.getUuid());
+            assertThat(debtEntity.getPaidAmount(), equalTo(saved.getPaidAmount()));
+            assertThat(debtEntity.getPaymentEntities().size(), is(saved.getPaymentEntities().size()));
+            for (PaymentEntity paymentEntity : debtEntity.getPaymentEntities()) {
+                assertThat(paymentEntity.getCreditCardEntity() == null, is(true));
+            }
+        }
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldLoadDebtsWithoutPaymentsForPaymentUpdate() {
+        //given
+        DebtorEntity expected = dataCreator.createDebtor();
+        accountsRepository.saveAndFlush(expected);
+        QueryCountingJdbcTemplate jdbcTemplate = new QueryCountingJdbcTemplate(dataSource);
+        AccountsRepositoryNativeImpl repository = new AccountsRepositoryNativeImpl(jdbcTemplate);
+
+        //when
+        DebtorEntity actual = repository.findFirstForPaymentUpdateBySsn(expected.getSsn());
+
+        //then
+        assertThat(jdbcTemplate.queryCount, is(2));
+        assertThat(actual.getDebtEntities().size(), is(4));
+        for (DebtEntity debtEntity : actual.getDebtEntities()) {
+            assertThat(debtEntity.getPaymentEntities().isEmpty(), is(true));
+            assertThat(debtEntity.getPaidAmount(), equalTo(expected.findDebtEntityByUuid(debtEntity.getUuid()).getPaidAmount()));
+        }
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldLoadDebtsWithoutPaymentsOfAllDebtorsBySsns() {
+        //given
+        DebtorEntity expected = dataCreator.createDebtor();
+        accountsRepository.saveAndFlush(expected);
+        QueryCountingJdbcTemplate jdbcTemplate = new QueryCountingJdbcTemplate(dataSource);
+        AccountsRepositoryNativeImpl repository = new AccountsRepositoryNativeImpl(jdbcTemplate);
+
+        //when
+        List<DebtorEntity> actual = repository.findAllWithDebtsBySsnIn(Arrays.asList(expected.getSsn(), "000-000-000"));
+
+        //then
+        assertThat(jdbcTemplate.queryCount, is(2));
+        assertThat(actual.size(), is(1));
+        assertThat(actual.get(0).getDebtEntities().size(), is(4));
+        for (DebtEntity debtEntity : actual.get(0).getDebtEntities()) {
+            assertThat(debtEntity.getPaymentEntities().isEmpty(), is(true));
+            assertThat(debtEntity.getRemainingCents(), is(expected.findDebtEntityByUuid(debtEntity.getUuid()).getRemainingCents()));
+        }
+    }
+
+    private static class QueryCountingJdbcTemplate extends NamedParameterJdbcTemplate {
+        private int queryCount;
+
+        QueryCountingJdbcTemplate(DataSource dataSource) {
+            super(dataSource);
+        }
+
+        @Override
+        protected PreparedStatementCreator getPreparedStatementCreator(String sql, SqlParameterSource paramSource) {
+            queryCount++;
+            return super.getPreparedStatementCreator(sql, paramSource);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package pl.sii.eu.micuenta.repository;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.Rollback;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.sii.eu.micuenta.conf.AppConfig;
+import pl.sii.eu.micuenta.model.model_entity.CreditCardEntity;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.transaction.Transactional;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@Transactional
+@Rollback
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {AppConfig.class})
+public class CreditCardVaultTest {
+    @Autowired
+    CreditCardVault creditCardVault;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @PersistenceContext
+    EntityManager em;
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldStoreEqualCardsAsOneRow() {
+        //given
+        LocalDate expDate = LocalDate.of(2025, 2, 14);
+        CreditCardEntity cardOne = new CreditCardEntity("5199863120932752", "109", "Andy", "Larkin", "MasterCard", expDate);
+        CreditCardEntity cardTwo = new CreditCardEntity("5199863120932752", "109", "Andy", "Larkin", "MasterCard", expDate);
+        CreditCardEntity otherCard = new CreditCardEntity("4556611605570880", "235", "Stanley", "Ipkins", "VISA", expDate);
+
+        //when
+        CreditCardEntity vaultCardOne = creditCardVault.resolve(cardOne);
+        CreditCardEntity vaultCardTwo = creditCardVault.resolve(cardTwo);
+        CreditCardEntity vaultOtherCard = creditCardVault.resolve(otherCard);
+        em.flush();
+
+        //then
+        Integer cards = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM CREDIT_CARD_ENTITY", Integer.class);
+        assertThat(cards, is(2));
+        assertThat(vaultCardTwo, sameInstance(vaultCardOne));
+        assertThat(vaultOtherCard.getId(), not(vaultCardOne.getId()));
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldFindCardStoredBeforeByFingerprint() {
+        //given
+        CreditCardEntity storedCard = new CreditCardEntity("5199863120932752", "109", "Andy", "Larkin", "MasterCard", LocalDate.of(2025, 2, 14));
+        em.persist(storedCard);
+        em.flush();
+        em.clear();
+        CreditCardEntity sameCard = new CreditCardEntity("5199863120932752", "109", "Andy", "Larkin", "MasterCard", LocalDate.of(2025, 2, 14));
+
+        //when
+        CreditCardEntity vaultCard = creditCardVault.resolve(sameCard);
+
+        //then
+        assertThat(vaultCard.getId(), is(storedCard.getId()));
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldIdentifyCardByCardNumberOnly() {
+        //given
+        LocalDate expDate = LocalDate.of(2025, 2, 14);
+        CreditCardEntity card = new CreditCardEntity("5199863120932752", "109", "Andy", "Larkin", "MasterCard", expDate);
+        CreditCardEntity sameNumber = new CreditCardEntity("5199863120932752", "412", "Andy", "Larkin", "MasterCard", expDate.plusYears(3));
+
+        //when
+        CreditCardEntity vaultCard = creditCardVault.resolve(card);
+        CreditCardEntity vaultCardOfSameNumber = creditCardVault.resolve(sameNumber);
+
+        //then
+        assertThat(vaultCardOfSameNumber, sameInstance(vaultCard));
+        assertThat(sameNumber.computeFingerprint(), is(card.computeFingerprint()));
+        assertThat(card.computeFingerprint().contains(card.getCcNumber()), is(false));
+    }
+
+    @Test
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldHandOutCachedCardAfterCommit() {
+        //given
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        Long storedId = transactionTemplate.execute(status -> creditCardVault.resolve(
+                new CreditCardEntity("4916338506082832", "331", "Anduin", "Wrynn", "VISA", LocalDate.of(2026, 4, 1))).getId());
+        long hitsBefore = creditCardVault.getStats().getHits();
+
+        //when
+        Long cachedId = transactionTemplate.execute(status -> creditCardVault.resolve(
+                new CreditCardEntity("4916338506082832", "331", "Anduin", "Wrynn", "VISA", LocalDate.of(2026, 4, 1))).getId());
+
+        //then
+        assertThat(cachedId, is(storedId));
+        assertThat(creditCardVault.getStats().getHits(), is(hitsBefore + 1));
+    }
+
+    @Test
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldStoreSameNewCardResolvedConcurrentlyOnce() throws Exception {
+        //given
+        int payments = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(payments);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        List<Future<Long>> cardIds = new ArrayList<>();
+
+        //when
+        try {
+            for (int i = 0; i < payments; i++) {
+                cardIds.add(executor.submit(() -> {
+                    start.await();
+                    return transactionTemplate.execute(status -> creditCardVault.resolve(
+                            new CreditCardEntity("4929420589541052", "782", "Jaina", "Proudmoore", "VISA", LocalDate.of(2027, 1, 1))).getId());
+                }));
+            }
+            start.countDown();
+
+            //then
+            Set<Long> distinctIds = new HashSet<>();
+            for (Future<Long> cardId : cardIds) {
+                distinctIds.add(cardId.get(10, TimeUnit.SECONDS));
+            }
+            Integer cards = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM CREDIT_CARD_ENTITY", Integer.class);
+            assertThat(distinctIds.size(), is(1));
+            assertThat(cards, is(1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package pl.sii.eu.micuenta.repository;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.sii.eu.micuenta.conf.AppConfig;
+import pl.sii.eu.micuenta.conf.DataCreator;
+import pl.sii.eu.micuenta.model.model_entity.CreditCardEntity;
+import pl.sii.eu.micuenta.model.model_entity.DebtEntity;
+import pl.sii.eu.micuenta.model.model_entity.DebtorEntity;
+import pl.sii.eu.micuenta.model.model_entity.PaymentEntity;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {AppConfig.class})
+public class CreditorTotalsStoreTest {
+
+    @Autowired
+    private AccountsRepository accountsRepository;
+
+    @Autowired
+    private PaymentLedgerRepository paymentLedgerRepository;
+
+    @Autowired
+    private CreditorTotalsStore creditorTotalsStore;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldAddCommittedPaymentToCreditorAndClientTotals() {
+
+        //given
+        DebtorEntity debtorEntity = accountsRepository.save(DataCreator.createDebtor());
+        creditorTotalsStore.refresh();
+        DebtEntity debtEntity = debtorEntity.findDebtEntityByUuid("ADWR/595501");
+        CreditCardEntity creditCardEntity = new CreditCardEntity("1234567890123456", "809", "Sylvanas", "Windrunner", "MasterCard", LocalDate.now());
+
+        //when
+        paymentLedgerRepository.append(debtEntity.getId(),
+                new PaymentEntity(LocalDate.now(), BigDecimal.valueOf(10000, 2), creditCardEntity, "Horde"));
+        CreditorTotals fromCounters = creditorTotalsStore.getTotals();
+        creditorTotalsStore.refresh();
+        CreditorTotals fromTables = creditorTotalsStore.getTotals();
+
+        //then
+        for (CreditorTotals totals : new CreditorTotals[]{fromCounters, fromTables}) {
+            CreditorTotal oppLoans = totals.getCreditors().stream()
+                    .filter(c -> c.getDebtName().equals("Opp Loans")).findFirst().orElseThrow(AssertionError::new);
+            assertThat(oppLoans.getDebts(), is(1L));
+            assertThat(oppLoans.getPaidAmount(), is(new BigDecimal("771.00")));
+            assertThat(oppLoans.getOutstandingAmount(), is(new BigDecimal("34229.00")));
+            ClientPaymentTotal horde = totals.getClients().stream()
+                    .filter(c -> c.getClientId().equals("Horde")).findFirst().orElseThrow(AssertionError::new);
+            assertThat(horde.getPayments(), is(1L));
+            assertThat(horde.getPaidAmount(), is(new BigDecimal("100.00")));
+        }
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldMarkTotalsStaleOnlyOnceWriteCommitted() {
+
+        //given
+        creditorTotalsStore.refresh();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        //when
+        boolean staleBeforeCommit = transactionTemplate.execute(status -> {
+            accountsRepository.save(DataCreator.createDebtor());
+            return creditorTotalsStore.isStale();
+        });
+
+        //then
+        assertThat(staleBeforeCommit, is(false));
+        assertThat(creditorTotalsStore.isStale(), is(true));
+    }
+}
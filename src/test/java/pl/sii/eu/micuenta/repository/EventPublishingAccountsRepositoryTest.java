@@ -0,0 +1,86 @@
+package pl.sii.eu.micuenta.repository;
+
+import org.hibernate.Hibernate;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.junit4.SpringRunner;
+import pl.sii.eu.micuenta.cache.OffHeapStoreStats;
+import pl.sii.eu.micuenta.conf.AppConfig;
+import pl.sii.eu.micuenta.conf.DataCreator;
+import pl.sii.eu.micuenta.model.model_entity.DebtorEntity;
+import pl.sii.eu.micuenta.service.DataDebtorService;
+
+import java.util.Optional;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {AppConfig.class})
+public class EventPublishingAccountsRepositoryTest {
+    @Autowired
+    AccountsRepository accountsRepository;
+    @Autowired
+    DataDebtorService dataDebtorService;
+
+    @After
+    public void clearCache() {
+        dataDebtorService.invalidateOffHeapStore();
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldLoginWithoutLoadingDebts() {
+        //given
+        accountsRepository.save(DataCreator.createDebtor());
+
+        //when
+        Optional<DebtorEntity> loggedIn = accountsRepository.findFirstBySsnAndFirstNameAndLastName("980-122-111", "Jaime", "Karren");
+
+        //then
+        assertThat(loggedIn.isPresent(), is(true));
+        assertThat(Hibernate.isInitialized(loggedIn.get().getDebtEntities()), is(false));
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldHandOutSeparateEntitiesToEveryCaller() {
+        //given
+        accountsRepository.save(DataCreator.createDebtor());
+
+        //when
+        DebtorEntity balance = accountsRepository.findFirstBySsn("980-122-111");
+        DebtorEntity plan = accountsRepository.findFirstBySsn("980-122-111");
+
+        //then
+        assertThat(plan, is(not(sameInstance(balance))));
+        assertThat(plan, is(balance));
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldDropCachedDebtorViewWhenDebtorSaved() {
+        //given
+        DebtorEntity debtorEntity = accountsRepository.save(DataCreator.createDebtor());
+        dataDebtorService.getDebtorBySsn("980-122-111");
+        OffHeapStoreStats before = dataDebtorService.getOffHeapStats();
+
+        //when
+        accountsRepository.save(debtorEntity);
+        dataDebtorService.getDebtorBySsn("980-122-111");
+
+        //then
+        OffHeapStoreStats after = dataDebtorService.getOffHeapStats();
+        assertThat(after.getMisses() - before.getMisses(), is(1L));
+        assertThat(after.getHits() - before.getHits(), is(0L));
+    }
+}
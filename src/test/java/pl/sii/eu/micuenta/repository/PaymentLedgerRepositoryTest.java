@@ -0,0 +1,194 @@
+package pl.sii.eu.micuenta.repository;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.annotation.Rollback;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.sii.eu.micuenta.conf.AppConfig;
+import pl.sii.eu.micuenta.conf.DataCreator;
+import pl.sii.eu.micuenta.model.model_entity.CreditCardEntity;
+import pl.sii.eu.micuenta.model.model_entity.DebtEntity;
+import pl.sii.eu.micuenta.model.model_entity.DebtorEntity;
+import pl.sii.eu.micuenta.model.model_entity.PaymentEntity;
+
+import javax.transaction.Transactional;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@Transactional
+@Rollback
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {AppConfig.class})
+public class PaymentLedgerRepositoryTest {
+    @Autowired
+    DataCreator dataCreator;
+    @Autowired
+    AccountsRepository accountsRepository;
+    @Autowired
+    PaymentLedgerRepository paymentLedgerRepository;
+    @Autowired
+    NamedParameterJdbcTemplate jdbcTemplate;
+    @Autowired
+    CreditCardVault creditCardVault;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldInsertPaymentAndBumpDebtTotals() {
+        //given
+        DebtorEntity debtorEntity = dataCreator.createDebtor();
+        accountsRepository.saveAndFlush(debtorEntity);
+        DebtEntity debtEntity = debtorEntity.getDebtEntities().iterator().next();
+        BigDecimal paidBefore = debtEntity.getPaidAmount();
+        int paymentsBefore = debtEntity.getPaymentEntities().size();
+        BigDecimal paymentAmount = BigDecimal.valueOf(100).setScale(2, RoundingMode.HALF_EVEN);
+        CreditCardEntity creditCardEntity = new CreditCardEntity("1234567890123456", "809", "Sylvanas", "Windrunner", "MasterCard", LocalDate.now());
+
+        //when
+        paymentLedgerRepository.append(debtEntity.getId(),
+                new PaymentEntity(LocalDate.now(), paymentAmount, creditCardEntity, "Horde"));
+
+        //then
+        MapSqlParameterSource paramSource = new MapSqlParameterSource();
+        paramSource.addValue("id", debtEntity.getId());
+        Integer payments = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM PAYMENT_ENTITY WHERE DEBT_ENTITY_ID = :id", paramSource, Integer.class);
+        BigDecimal paidAmount = jdbcTemplate.queryForObject(
+                "SELECT PAID_AMOUNT FROM DEBT_ENTITY WHERE ID = :id", paramSource, BigDecimal.class);
+        BigDecimal remainingAmount = jdbcTemplate.queryForObject(
+                "SELECT REMAINING_AMOUNT FROM DEBT_ENTITY WHERE ID = :id", paramSource, BigDecimal.class);
+
+        assertThat(payments, is(paymentsBefore + 1));
+        assertThat(paidAmount, equalTo(paidBefore.add(paymentAmount)));
+        assertThat(remainingAmount, equalTo(debtEntity.getDebtAmount().subtract(paidBefore).subtract(paymentAmount)));
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldAppendPaymentsForSeveralDebtsInOneCall() {
+        //given
+        DebtorEntity debtorEntity = dataCreator.createDebtor();
+        accountsRepository.saveAndFlush(debtorEntity);
+        BigDecimal paymentAmount = BigDecimal.valueOf(10).setScale(2, RoundingMode.HALF_EVEN);
+
+        List<PaymentEntity> pendingPayments = new ArrayList<>();
+        for (DebtEntity debtEntity : debtorEntity.getDebtEntities()) {
+            PaymentEntity paymentEntity = new PaymentEntity(LocalDate.now(), paymentAmount, creditCardVault.resolve(
+                    new CreditCardEntity("1234567890123456", "809", "Sylvanas", "Windrunner", "MasterCard", LocalDate.now())),
+                    "Horde");
+            debtEntity.addToSetOfPaymentEntities(paymentEntity);
+            pendingPayments.add(paymentEntity);
+        }
+
+        //when
+        paymentLedgerRepository.appendAll(pendingPayments);
+
+        //then
+        for (DebtEntity debtEntity : debtorEntity.getDebtEntities()) {
+            MapSqlParameterSource paramSource = new MapSqlParameterSource();
+            paramSource.addValue("id", debtEntity.getId());
+            BigDecimal paidAmount = jdbcTemplate.queryForObject(
+                    "SELECT PAID_AMOUNT FROM DEBT_ENTITY WHERE ID = :id", paramSource, BigDecimal.class);
+            Integer payments = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM PAYMENT_ENTITY WHERE DEBT_ENTITY_ID = :id", paramSource, Integer.class);
+
+            assertThat(paidAmount, equalTo(debtEntity.getPaidAmount()));
+            assertThat(payments, is(debtEntity.getPaymentEntities().size()));
+        }
+    }
+
+    @Test
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldKeepPaymentsOfConcurrentTransactionsToTheSameDebt() throws Exception {
+        //given
+        DebtorEntity debtorEntity = dataCreator.createDebtor();
+        accountsRepository.saveAndFlush(debtorEntity);
+        DebtEntity debtEntity = debtorEntity.getOpenDebtsByRepaymentDate().get(0);
+        BigDecimal paymentAmount = BigDecimal.valueOf(10).setScale(2, RoundingMode.HALF_EVEN);
+        CountDownLatch bothLoaded = new CountDownLatch(2);
+        CountDownLatch firstCommitted = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        //when
+        try {
+            Future<?> first = executor.submit(() -> {
+                payAfterBothLoaded(debtorEntity.getSsn(), debtEntity.getUuid(), paymentAmount, bothLoaded, new CountDownLatch(0));
+                firstCommitted.countDown();
+            });
+            Future<?> second = executor.submit(() ->
+                    payAfterBothLoaded(debtorEntity.getSsn(), debtEntity.getUuid(), paymentAmount, bothLoaded, firstCommitted));
+            first.get(10, TimeUnit.SECONDS);
+            second.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        //then
+        MapSqlParameterSource paramSource = new MapSqlParameterSource();
+        paramSource.addValue("id", debtEntity.getId());
+        BigDecimal paidAmount = jdbcTemplate.queryForObject(
+                "SELECT PAID_AMOUNT FROM DEBT_ENTITY WHERE ID = :id", paramSource, BigDecimal.class);
+        BigDecimal remainingAmount = jdbcTemplate.queryForObject(
+                "SELECT REMAINING_AMOUNT FROM DEBT_ENTITY WHERE ID = :id", paramSource, BigDecimal.class);
+
+        BigDecimal bothPayments = paymentAmount.add(paymentAmount);
+        assertThat(paidAmount, equalTo(debtEntity.getPaidAmount().add(bothPayments)));
+        assertThat(remainingAmount, equalTo(debtEntity.getRemainingAmount().subtract(bothPayments)));
+    }
+
+    /**
+     * Loads the debt, waits until the other transaction has loaded it as well and appends a payment once it is its turn,
+     * so both transactions start from the same paid-to-date total.
+     */
+    private void payAfterBothLoaded(String ssn, String uuid, BigDecimal paymentAmount,
+                                    CountDownLatch bothLoaded, CountDownLatch turn) {
+        new TransactionTemplate(transactionManager).execute(status -> {
+            DebtEntity debtEntity = accountsRepository.findFirstForPaymentUpdateBySsn(ssn).findDebtEntityByUuid(uuid);
+            bothLoaded.countDown();
+            await(bothLoaded);
+            await(turn);
+            PaymentEntity paymentEntity = new PaymentEntity(LocalDate.now(), paymentAmount, creditCardVault.resolve(
+                    new CreditCardEntity("1234567890123456", "809", "Sylvanas", "Windrunner", "MasterCard", LocalDate.now())),
+                    "Horde");
+            debtEntity.addToSetOfPaymentEntities(paymentEntity);
+            paymentLedgerRepository.appendAll(Collections.singletonList(paymentEntity));
+            return null;
+        });
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(10, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Timed out waiting for the other transaction");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package pl.sii.eu.micuenta.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.junit4.SpringRunner;
+import pl.sii.eu.micuenta.conf.AppConfig;
+import pl.sii.eu.micuenta.conf.DataCreator;
+import pl.sii.eu.micuenta.repository.AccountsRepository;
+import pl.sii.eu.micuenta.repository.DebtorAggregateChangedEvent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {AppConfig.class})
+public class BalanceResponseCacheTest {
+
+    @Autowired
+    private AccountsRepository accountsRepository;
+
+    @Autowired
+    private BalanceResponseCache balanceResponseCache;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @After
+    public void clearCache() {
+        balanceResponseCache.invalidateAll();
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldServeRepeatedPollFromCachedBytes() throws JsonProcessingException {
+
+        //given
+        accountsRepository.save(DataCreator.createDebtor());
+        SerializedBalance first = balanceResponseCache.getBalance("980-122-111");
+
+        //when
+        SerializedBalance second = balanceResponseCache.getBalance("980-122-111");
+
+        //then
+        assertThat(second).isSameAs(first);
+        assertThat(first.getETag()).startsWith("\\"").endsWith("\\"");
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldSerializeAgainWithSameETagAfterAggregateChangedWithoutNewContent() throws JsonProcessingException {
+
+        //given
+        accountsRepository.save(DataCreator.createDebtor());
+        SerializedBalance cached = balanceResponseCache.getBalance("980-122-111");
+
+        //when
+        eventPublisher.publishEvent(new DebtorAggregateChangedEvent("980-122-111"));
+        SerializedBalance reloaded = balanceResponseCache.getBalance("980-122-111");
+
+        //then
+        assertThat(reloaded).isNotSameAs(cached);
+        assertThat(reloaded.getETag()).isEqualTo(cached.getETag());
+        assertThat(reloaded.getBody()).isEqualTo(cached.getBody());
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldTellETagOfUncachedBalanceWithoutSerializingIt() throws JsonProcessingException {
+
+        //given
+        accountsRepository.save(DataCreator.createDebtor());
+
+        //when
+        String eTag = balanceResponseCache.getETag("980-122-111");
+
+        //then
+        assertThat(balanceResponseCache.getStats().getSize()).isEqualTo(0);
+        assertThat(balanceResponseCache.getBalance("980-122-111").getETag()).isEqualTo(eTag);
+    }
+}
@@ -0,0 +1,110 @@
+package pl.sii.eu.micuenta.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.junit4.SpringRunner;
+import pl.sii.eu.micuenta.conf.AppConfig;
+import pl.sii.eu.micuenta.conf.DataCreator;
+import pl.sii.eu.micuenta.model.model_dto.form.PaymentDeclaration;
+import pl.sii.eu.micuenta.model.model_dto.form.PaymentPlan;
+import pl.sii.eu.micuenta.model.model_dto.form.PaymentPlanRule;
+import pl.sii.eu.micuenta.repository.AccountsRepository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {AppConfig.class})
+public class BatchPaymentPlanServiceTest {
+
+    @Autowired
+    private AccountsRepository accountsRepository;
+
+    @Autowired
+    private BatchPaymentPlanService batchPaymentPlanService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldWritePaymentPlansInOrderOfDeclarations() throws IOException {
+
+        //given
+        accountsRepository.save(DataCreator.createDebtor());
+        List<PaymentDeclaration> paymentDeclarations = Arrays.asList(
+                new PaymentDeclaration(BigDecimal.valueOf(2043), "980-122-111", ""),
+                new PaymentDeclaration(BigDecimal.valueOf(100), "000-000-000", ""),
+                new PaymentDeclaration(BigDecimal.ZERO, "980-122-111", ""),
+                new PaymentDeclaration(new BigDecimal("1e30"), "980-122-111", ""),
+                new PaymentDeclaration(BigDecimal.valueOf(100), "980-122-111", "PLWT/871422"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        //when
+        batchPaymentPlanService.writePaymentPlans(paymentDeclarations.iterator(), out);
+
+        //then
+        List<PaymentPlan> result = readLines(out);
+        assertThat(result).extracting(PaymentPlan::getMessage).containsExactly(
+                "Your payment amount is 2043.00",
+                "There is no debtor with ssn 000-000-000",
+                "Payment amount is not valid.",
+                "Payment amount is not valid.",
+                "Your payment amount is 100.00");
+        assertThat(result.get(0).getPlannedPaymentList()).extracting("uuid").containsExactly("ADWR/595501");
+        assertThat(result.get(4).getPlannedPaymentList()).extracting("uuid").containsExactly("PLWT/871422");
+        assertThat(result).extracting(PaymentPlan::getPlanId).containsOnlyNulls();
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldWritePaymentPlanOfEveryDebtorForRule() throws IOException {
+
+        //given
+        accountsRepository.save(DataCreator.createDebtor());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        //when
+        batchPaymentPlanService.writePaymentPlans(new PaymentPlanRule(BigDecimal.valueOf(500)), out);
+
+        //then
+        List<PaymentPlan> result = readLines(out);
+        assertThat(result).extracting(PaymentPlan::getSsn).containsExactly("980-122-111");
+        assertThat(batchPaymentPlanService.getStats().getRuns()).isPositive();
+    }
+
+    @Test
+    public void shouldRejectRuleWithAmountOutOfRange() {
+
+        //given
+        PaymentPlanRule paymentPlanRule = new PaymentPlanRule(new BigDecimal("1e30"));
+
+        //when
+        boolean valid = batchPaymentPlanService.isValidPaymentPlanRule(paymentPlanRule);
+
+        //then
+        assertThat(valid).isFalse();
+        assertThat(batchPaymentPlanService.isValidPaymentPlanRule(new PaymentPlanRule(BigDecimal.valueOf(500)))).isTrue();
+    }
+
+    private List<PaymentPlan> readLines(ByteArrayOutputStream out) throws IOException {
+        List<PaymentPlan> paymentPlans = new ArrayList<>();
+        for (String line : new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n")) {
+            paymentPlans.add(objectMapper.readValue(line, PaymentPlan.class));
+        }
+        return paymentPlans;
+    }
+}
@@ -0,0 +1,36 @@
+package pl.sii.eu.micuenta.service;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CentsTest {
+
+    @Test
+    public void shouldConvertAmountRoundedHalfEvenToCentsAndBack() {
+
+        //given
+        BigDecimal amount = new BigDecimal("2043.125");
+
+        //when
+        long cents = Cents.of(amount);
+
+        //then
+        assertThat(cents).isEqualTo(204312L);
+        assertThat(Cents.toAmount(cents)).isEqualTo(new BigDecimal("2043.12"));
+    }
+
+    @Test
+    public void shouldFailInsteadOfOverflowing() {
+
+        //given
+        long cents = Long.MAX_VALUE;
+
+        //when //then
+        assertThatThrownBy(() -> Cents.add(cents, 1)).isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> Cents.of(new BigDecimal("1e30"))).isInstanceOf(ArithmeticException.class);
+    }
+}
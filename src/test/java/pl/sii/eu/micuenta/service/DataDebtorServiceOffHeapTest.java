@@ -0,0 +1,106 @@
+package pl.sii.eu.micuenta.service;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.junit4.SpringRunner;
+import pl.sii.eu.micuenta.cache.OffHeapStoreStats;
+import pl.sii.eu.micuenta.conf.AppConfig;
+import pl.sii.eu.micuenta.conf.DataCreator;
+import pl.sii.eu.micuenta.model.model_dto.CreditCard;
+import pl.sii.eu.micuenta.model.model_dto.Debtor;
+import pl.sii.eu.micuenta.model.model_dto.Payment;
+import pl.sii.eu.micuenta.repository.AccountsRepository;
+import pl.sii.eu.micuenta.repository.DebtorAggregateChangedEvent;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {AppConfig.class})
+public class DataDebtorServiceOffHeapTest {
+
+    @Autowired
+    private AccountsRepository accountsRepository;
+
+    @Autowired
+    private DataDebtorService dataDebtorService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @After
+    public void clearStore() {
+        dataDebtorService.invalidateOffHeapStore();
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldDecodeSameDebtorFromOffHeapStore() {
+
+        //given
+        accountsRepository.save(DataCreator.createDebtor());
+        Debtor loaded = dataDebtorService.getDebtorBySsn("980-122-111");
+        OffHeapStoreStats before = dataDebtorService.getOffHeapStats();
+
+        //when
+        Debtor decoded = dataDebtorService.getDebtorBySsn("980-122-111");
+
+        //then
+        OffHeapStoreStats after = dataDebtorService.getOffHeapStats();
+        assertThat(decoded).isNotSameAs(loaded);
+        assertThat(decoded).isEqualTo(loaded);
+        assertThat(decoded.getDebts()).isEqualTo(loaded.getDebts());
+        assertThat(after.getHits() - before.getHits()).isEqualTo(1L);
+        assertThat(after.getEntries()).isEqualTo(1);
+        assertThat(after.getLiveBytes()).isPositive();
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldReturnUnmaskedCardsOfDebtorDecodedFromOffHeapStore() {
+
+        //given
+        accountsRepository.save(DataCreator.createDebtor());
+        dataDebtorService.getDebtorBySsn("980-122-111");
+        OffHeapStoreStats before = dataDebtorService.getOffHeapStats();
+
+        //when
+        Debtor decoded = dataDebtorService.getDebtorBySsn("980-122-111");
+
+        //then
+        List<CreditCard> creditCards = decoded.getDebts().stream()
+                .flatMap(d -> d.getPayments().stream())
+                .map(Payment::getCreditCard)
+                .collect(Collectors.toList());
+        assertThat(dataDebtorService.getOffHeapStats().getHits() - before.getHits()).isEqualTo(1L);
+        assertThat(creditCards).extracting(CreditCard::getCcNumber).contains("5199863120932752", "4556611605570880");
+        assertThat(creditCards).extracting(CreditCard::getCvv).contains("109", "235");
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldDropDebtorFromOffHeapStoreAfterAggregateChanged() {
+
+        //given
+        accountsRepository.save(DataCreator.createDebtor());
+        dataDebtorService.getDebtorBySsn("980-122-111");
+
+        //when
+        eventPublisher.publishEvent(new DebtorAggregateChangedEvent("980-122-111"));
+
+        //then
+        OffHeapStoreStats stats = dataDebtorService.getOffHeapStats();
+        assertThat(stats.getEntries()).isEqualTo(0);
+        assertThat(stats.getLiveBytes()).isEqualTo(0L);
+    }
+}
@@ -1,11 +1,17 @@
 package pl.sii.eu.micuenta.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.Rollback;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.jdbc.Sql;
@@ -15,8 +21,14 @@ import pl.sii.eu.micuenta.conf.DataCreator;
 import pl.sii.eu.micuenta.model.model_dto.Debtor;
 import pl.sii.eu.micuenta.model.model_entity.DebtorEntity;
 import pl.sii.eu.micuenta.repository.AccountsRepository;
+import pl.sii.eu.micuenta.repository.KnownSsnFilter;
 
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnit;
 import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -27,6 +39,9 @@ import static org.assertj.core.api.Assertions.assertThat;
 @SpringBootTest
 public class DataDebtorServiceTest {
 
+    private static final Logger logger = LoggerFactory.getLogger(DataDebtorServiceTest.class);
+    private static final int LOGIN_BURST = 5000;
+
     @Autowired
     private DataCreator dataCreator;
 
@@ -36,6 +51,18 @@ public class DataDebtorServiceTest {
     @Autowired
     private DataDebtorService dataDebtorService;
 
+    @Autowired
+    private KnownSsnFilter knownSsnFilter;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PersistenceUnit
+    private EntityManagerFactory entityManagerFactory;
+
     @Test
     @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
     @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
@@ -90,4 +117,126 @@ public class DataDebtorServiceTest {
         assertThat(result.getFirstName().equals(userFirstName));
         assertThat(result.getLastName().equals(userLastName));
     }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldRejectNeverExistingSsnByKnownSsnFilter() {
+
+        //given
+        Debtor debtor = new Debtor();
+        debtor.setSsn("000-000-001");
+        debtor.setFirstName("Jakub");
+        debtor.setLastName("Watus");
+        long definiteMisses = knownSsnFilter.getStats().getDefiniteMisses();
+        long queries = statistics().getQueryExecutionCount();
+
+        //when
+        ResponseEntity result = dataDebtorService.validateDebtorsData(debtor);
+
+        //then
+        assertThat(result).isEqualTo(new ResponseEntity(HttpStatus.NOT_FOUND));
+        assertThat(knownSsnFilter.getStats().getDefiniteMisses()).isEqualTo(definiteMisses + 1);
+        assertThat(statistics().getQueryExecutionCount()).isEqualTo(queries);
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldLoginDebtorInsertedPastKnownSsnFilterOnceFilterRebuilt() {
+
+        //given
+        jdbcTemplate.update("INSERT INTO DEBTOR_ENTITY (ID, FIRST_NAME, LAST_NAME, SSN) VALUES (?, ?, ?, ?)",
+                900001L, "Sylvanas", "Windrunner", "000-000-002");
+        Debtor debtor = new Debtor();
+        debtor.setSsn("000-000-002");
+        debtor.setFirstName("Sylvanas");
+        debtor.setLastName("Windrunner");
+        ResponseEntity beforeRebuild = dataDebtorService.validateDebtorsData(debtor);
+
+        //when
+        knownSsnFilter.rebuild();
+        ResponseEntity result = dataDebtorService.validateDebtorsData(debtor);
+
+        //then
+        assertThat(beforeRebuild).isEqualTo(new ResponseEntity(HttpStatus.NOT_FOUND));
+        assertThat(result).isEqualTo(new ResponseEntity(HttpStatus.OK));
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldLoginDebtorInsertedPastKnownSsnFilterWithoutShortCircuit() {
+
+        //given
+        jdbcTemplate.update("INSERT INTO DEBTOR_ENTITY (ID, FIRST_NAME, LAST_NAME, SSN) VALUES (?, ?, ?, ?)",
+                900002L, "Arthas", "Menethil", "000-000-003");
+        Debtor debtor = new Debtor();
+        debtor.setSsn("000-000-003");
+        debtor.setFirstName("Arthas");
+        debtor.setLastName("Menethil");
+
+        //when
+        ResponseEntity result = serviceWithoutShortCircuit().validateDebtorsData(debtor);
+
+        //then
+        assertThat(result).isEqualTo(new ResponseEntity(HttpStatus.OK));
+        assertThat(knownSsnFilter.mightContain("000-000-003")).isTrue();
+    }
+
+    /**
+     * Benchmark of a credential stuffing burst: 99 of every 100 logins are for SSNs that never existed.
+     * Throughput with and without the short circuit is logged, only the number of queries is asserted.
+     */
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldQueryOnlyPossiblyKnownSsnsOfMissHeavyLoginBurst() {
+
+        //given
+        accountsRepository.save(DataCreator.createDebtor());
+        List<Debtor> logins = new ArrayList<>();
+        for (int i = 0; i < LOGIN_BURST; i++) {
+            Debtor login = new Debtor();
+            login.setSsn(i % 100 == 0 ? "980-122-111" : String.format("999-%03d-%03d", i / 1000, i % 1000));
+            login.setFirstName("Jaime");
+            login.setLastName("Karren");
+            logins.add(login);
+        }
+        long possiblyKnown = logins.stream().filter(d -> knownSsnFilter.mightContain(d.getSsn())).count();
+
+        //when
+        long shortCircuitQueries = runLoginBurst("Short circuit", dataDebtorService, logins);
+        long fallThroughQueries = runLoginBurst("Fall through", serviceWithoutShortCircuit(), logins);
+
+        //then
+        assertThat(possiblyKnown).isGreaterThanOrEqualTo(LOGIN_BURST / 100);
+        assertThat(shortCircuitQueries).isEqualTo(possiblyKnown);
+        assertThat(fallThroughQueries).isEqualTo(LOGIN_BURST);
+    }
+
+    private long runLoginBurst(String name, DataDebtorService service, List<Debtor> logins) {
+        long queries = statistics().getQueryExecutionCount();
+        long authorized = 0;
+        long start = System.nanoTime();
+        for (Debtor login : logins) {
+            if (service.validateDebtorsData(login).getStatusCode() == HttpStatus.OK) {
+                authorized++;
+            }
+        }
+        long elapsedNanos = Math.max(1, System.nanoTime() - start);
+        logger.info("{}: {} logins, {} authorized, in {} ms, {} logins/s.", name, logins.size(), authorized,
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos), logins.size() * TimeUnit.SECONDS.toNanos(1) / elapsedNanos);
+        assertThat(authorized).isEqualTo(LOGIN_BURST / 100);
+        return statistics().getQueryExecutionCount() - queries;
+    }
+
+    private DataDebtorService serviceWithoutShortCircuit() {
+        return new DataDebtorService(accountsRepository, knownSsnFilter, false, objectMapper,
+                1000, 1 << 20, 1, 300000L, 1000);
+    }
+
+    private Statistics statistics() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
 }
@@ -0,0 +1,67 @@
+package pl.sii.eu.micuenta.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.junit4.SpringRunner;
+import pl.sii.eu.micuenta.conf.AppConfig;
+import pl.sii.eu.micuenta.conf.DataCreator;
+import pl.sii.eu.micuenta.model.model_entity.DebtorEntity;
+import pl.sii.eu.micuenta.repository.AccountsRepository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {AppConfig.class})
+public class DebtorExportServiceTest {
+
+    @Autowired
+    private AccountsRepository accountsRepository;
+
+    @Autowired
+    private DebtorExportService debtorExportService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldWriteOneLinePerDebtorWithoutCreditCards() throws IOException {
+
+        //given
+        accountsRepository.save(DataCreator.createDebtor());
+        accountsRepository.save(new DebtorEntity("Sylvanas", "Windrunner", "123-456-789", new HashSet<>()));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        //when
+        long written = debtorExportService.writeDebtors(out);
+
+        //then
+        String export = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        String[] lines = export.split("\n");
+        assertThat(written).isEqualTo(2L);
+        assertThat(lines).hasSize(2);
+        JsonNode first = objectMapper.readTree(lines[0]);
+        assertThat(first.get("ssn").asText()).isEqualTo("980-122-111");
+        assertThat(first.get("debts")).hasSize(4);
+        int payments = 0;
+        for (JsonNode debt : first.get("debts")) {
+            payments += debt.get("payments").size();
+        }
+        assertThat(payments).isEqualTo(6);
+        JsonNode second = objectMapper.readTree(lines[1]);
+        assertThat(second.get("ssn").asText()).isEqualTo("123-456-789");
+        assertThat(second.get("debts")).isEmpty();
+        assertThat(export).doesNotContain("5199863120932752");
+    }
+}
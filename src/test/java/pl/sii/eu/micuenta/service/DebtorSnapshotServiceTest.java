@@ -0,0 +1,146 @@
+package pl.sii.eu.micuenta.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.junit4.SpringRunner;
+import pl.sii.eu.micuenta.conf.AppConfig;
+import pl.sii.eu.micuenta.conf.DataCreator;
+import pl.sii.eu.micuenta.repository.AccountsRepository;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {AppConfig.class})
+public class DebtorSnapshotServiceTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Autowired
+    private AccountsRepository accountsRepository;
+
+    @Autowired
+    private DebtorExportService debtorExportService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldWriteGzipSnapshotWithManifest() throws Exception {
+
+        //given
+        accountsRepository.save(DataCreator.createDebtor());
+        String directory = temporaryFolder.getRoot().getAbsolutePath();
+        DebtorSnapshotService debtorSnapshotService = new DebtorSnapshotService(debtorExportService, objectMapper, directory, true, 3);
+
+        //when
+        SnapshotManifest manifest = debtorSnapshotService.createSnapshot();
+
+        //then
+        Path file = debtorSnapshotService.getSnapshotFile(manifest);
+        assertThat(manifest.getDebtors()).isEqualTo(1L);
+        assertThat(manifest.getSizeBytes()).isEqualTo(Files.size(file));
+        assertThat(manifest.getSha256())
+                .isEqualTo(String.format("%064x", new BigInteger(1, MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file)))));
+        assertThat(readLines(file)).hasSize(1).allMatch(line -> line.contains("\"ssn\":\"980-122-111\""));
+        assertThat(temporaryFolder.getRoot().list()).containsExactlyInAnyOrder(manifest.getFileName(),
+                manifest.getId() + DebtorSnapshotService.MANIFEST_SUFFIX);
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldKeepNewestSnapshotsAndFindLatestAfterRestart() throws Exception {
+
+        //given
+        String directory = temporaryFolder.getRoot().getAbsolutePath();
+        DebtorSnapshotService debtorSnapshotService = new DebtorSnapshotService(debtorExportService, objectMapper, directory, false, 2);
+        debtorSnapshotService.createSnapshot();
+        Thread.sleep(2);
+        debtorSnapshotService.createSnapshot();
+        Thread.sleep(2);
+        SnapshotManifest newest = debtorSnapshotService.createSnapshot();
+
+        //when
+        DebtorSnapshotService restarted = new DebtorSnapshotService(debtorExportService, objectMapper, directory, false, 2);
+        restarted.loadLatestManifest();
+
+        //then
+        assertThat(restarted.getLatestManifest().getId()).isEqualTo(newest.getId());
+        assertThat(temporaryFolder.getRoot().list()).hasSize(4);
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldRefuseSnapshotWhileAnotherIsBeingCreated() throws Exception {
+
+        //given
+        String directory = temporaryFolder.getRoot().getAbsolutePath();
+        CountDownLatch exporting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        DebtorExportService blockingExport = new DebtorExportService(accountsRepository, objectMapper) {
+            @Override
+            public long writeDebtors(OutputStream out) throws IOException {
+                exporting.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return debtorExportService.writeDebtors(out);
+            }
+        };
+        DebtorSnapshotService debtorSnapshotService = new DebtorSnapshotService(blockingExport, objectMapper, directory, false, 2);
+        CompletableFuture<SnapshotManifest> first = CompletableFuture.supplyAsync(() -> {
+            try {
+                return debtorSnapshotService.createSnapshot();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        assertThat(exporting.await(5, TimeUnit.SECONDS)).isTrue();
+
+        //when
+        Throwable thrown = catchThrowable(debtorSnapshotService::createSnapshot);
+        release.countDown();
+
+        //then
+        assertThat(thrown).isInstanceOf(SnapshotInProgressException.class);
+        assertThat(first.get(5, TimeUnit.SECONDS).getDebtors()).isZero();
+        assertThat(debtorSnapshotService.isCreatingSnapshot()).isFalse();
+    }
+
+    private List<String> readLines(Path file) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+            return reader.lines().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package pl.sii.eu.micuenta.service;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.annotation.Rollback;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.junit4.SpringRunner;
+import pl.sii.eu.micuenta.conf.AppConfig;
+import pl.sii.eu.micuenta.conf.DataCreator;
+import pl.sii.eu.micuenta.model.model_entity.DebtEntity;
+import pl.sii.eu.micuenta.model.model_entity.DebtorEntity;
+import pl.sii.eu.micuenta.repository.AccountsRepository;
+
+import javax.transaction.Transactional;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {AppConfig.class})
+@Transactional
+@Rollback
+@SpringBootTest
+public class LedgerConsistencyServiceTest {
+
+    @Autowired
+    private LedgerConsistencyService ledgerConsistencyService;
+    @Autowired
+    private AccountsRepository accountsRepository;
+    @Autowired
+    private DataCreator dataCreator;
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldNotReportDriftForTotalsMaintainedByEntity() {
+
+        //given
+        DebtorEntity debtorEntity = dataCreator.createDebtor();
+        accountsRepository.saveAndFlush(debtorEntity);
+
+        //when
+        List<PaymentTotalsDrift> drifts = ledgerConsistencyService.findPaymentTotalsDrift();
+
+        //then
+        assertThat(drifts).isEmpty();
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldReportDebtWhosePaidAmountDriftedFromPayments() {
+
+        //given
+        DebtorEntity debtorEntity = dataCreator.createDebtor();
+        accountsRepository.saveAndFlush(debtorEntity);
+        DebtEntity debtEntity = debtorEntity.getDebtEntities().iterator().next();
+
+        MapSqlParameterSource paramSource = new MapSqlParameterSource();
+        paramSource.addValue("id", debtEntity.getId());
+        jdbcTemplate.update("UPDATE DEBT_ENTITY SET PAID_AMOUNT = PAID_AMOUNT + 1 WHERE ID = :id", paramSource);
+
+        //when
+        List<PaymentTotalsDrift> drifts = ledgerConsistencyService.findPaymentTotalsDrift();
+
+        //then
+        assertThat(drifts).hasSize(1);
+        assertThat(drifts.get(0).getUuid()).isEqualTo(debtEntity.getUuid());
+        assertThat(drifts.get(0).getLedgerPaidAmount())
+                .isEqualTo(debtEntity.getPaidAmount().setScale(2, RoundingMode.HALF_EVEN));
+        assertThat(drifts.get(0).getStoredPaidAmount())
+                .isEqualTo(debtEntity.getPaidAmount().add(BigDecimal.ONE).setScale(2, RoundingMode.HALF_EVEN));
+    }
+}
@@ -23,6 +23,11 @@ import java.util.ArrayList;
 import static java.util.Collections.emptyList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -39,6 +44,10 @@ public class PaymentPlanServiceTest {
     private AccountsRepository accountsRepository;
     @Autowired
     private DataCreator dataCreator;
+    @Autowired
+    private DataDebtorService dataDebtorService;
+    @Autowired
+    private PaymentPlanStore paymentPlanStore;
 
     @Test
     @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
@@ -58,6 +67,22 @@ public class PaymentPlanServiceTest {
         assertThat(expected.getMessage()).isEqualTo(result.getMessage());
     }
 
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldGetProperMessageWhenPaymentAmountDoesNotFitIntoCents() {
+
+        //given
+        PaymentDeclaration paymentDeclaration = new PaymentDeclaration(new BigDecimal("1e30"), "980-122-111", "");
+
+        //when
+        PaymentPlan result = paymentPlanService.getPaymentPlanBasedOnPaymentDeclaration(paymentDeclaration);
+
+        //then
+        assertThat(result.getMessage()).isEqualTo("Payment amount is not valid.");
+        assertThat(result.getPlannedPaymentList()).isEmpty();
+    }
+
     @Test
     @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
     @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
@@ -176,4 +201,46 @@ public class PaymentPlanServiceTest {
         assertThat(expected.getMessage()).isEqualTo(result.getMessage());
         assertThat(expected.getSsn()).isEqualTo(result.getSsn());
     }
+
+    @Test
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldRegisterSeparatePlanIdForEveryCallerOfCoalescedPaymentPlan() throws Exception {
+
+        //given
+        DebtorEntity debtorEntity = dataCreator.createDebtor();
+        accountsRepository.save(debtorEntity);
+        PaymentDeclaration paymentDeclaration = new PaymentDeclaration(BigDecimal.valueOf(2043), "980-122-111", "");
+        int callers = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        CyclicBarrier start = new CyclicBarrier(callers);
+        long coalescedBefore = paymentPlanService.getCoalescingStats().getCoalesced();
+        List<PaymentPlan> result = new ArrayList<>();
+
+        //when
+        for (int round = 0; round < 20 && paymentPlanService.getCoalescingStats().getCoalesced() == coalescedBefore; round++) {
+            dataDebtorService.invalidateOffHeapStore();
+            List<Future<PaymentPlan>> plans = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                plans.add(executor.submit(() -> {
+                    start.await(5, TimeUnit.SECONDS);
+                    return paymentPlanService.getPaymentPlanBasedOnPaymentDeclaration(paymentDeclaration);
+                }));
+            }
+            for (Future<PaymentPlan> plan : plans) {
+                result.add(plan.get(5, TimeUnit.SECONDS));
+            }
+        }
+        executor.shutdown();
+
+        //then
+        assertThat(paymentPlanService.getCoalescingStats().getCoalesced()).isGreaterThan(coalescedBefore);
+        assertThat(result).extracting(PaymentPlan::getPlanId).doesNotContainNull().doesNotHaveDuplicates();
+        for (PaymentPlan paymentPlan : result) {
+            assertThat(paymentPlanStore.takeIfCurrent(paymentPlan.getPlanId(), debtorEntity, "", 204300))
+                    .extracting(PlannedPayment::getUuid)
+                    .containsExactly("ADWR/595501");
+        }
+    }
 }
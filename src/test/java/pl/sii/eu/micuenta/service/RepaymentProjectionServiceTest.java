@@ -0,0 +1,81 @@
+package pl.sii.eu.micuenta.service;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.junit4.SpringRunner;
+import pl.sii.eu.micuenta.conf.AppConfig;
+import pl.sii.eu.micuenta.conf.DataCreator;
+import pl.sii.eu.micuenta.model.model_dto.form.RepaymentProjectionRequest;
+import pl.sii.eu.micuenta.repository.AccountsRepository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.YearMonth;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {AppConfig.class})
+public class RepaymentProjectionServiceTest {
+
+    @Autowired
+    private AccountsRepository accountsRepository;
+
+    @Autowired
+    private RepaymentProjectionService repaymentProjectionService;
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldProjectClosingMonthsOfDebtsOldestFirst() throws IOException {
+
+        //given
+        accountsRepository.save(DataCreator.createDebtor());
+        RepaymentProjectionRequest request = new RepaymentProjectionRequest(BigDecimal.valueOf(10000), 12);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        YearMonth firstMonth = YearMonth.now().plusMonths(1);
+
+        //when
+        repaymentProjectionService.writeProjection(request, ProjectionFormat.CSV, out);
+
+        //then
+        String[] rows = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertThat(rows).containsExactly(
+                "ssn,debtUuid,repaymentDate,remainingAmount,closedInMonth,closingMonth,remainingAfterProjection",
+                "980-122-111,ADWR/595501,1974-06-06,34329.00,4," + firstMonth.plusMonths(3) + ",0.00",
+                "980-122-111,PLWT/871422,1999-12-01,3850.00,4," + firstMonth.plusMonths(3) + ",0.00",
+                "980-122-111,CRTP/909088,2017-11-16,48800.00,9," + firstMonth.plusMonths(8) + ",0.00",
+                "980-122-111,KIGT/116256,2018-02-06,58600.00,,,25579.00");
+
+        ProjectionStats stats = repaymentProjectionService.getLastRunStats();
+        assertThat(stats.getDebtors()).isEqualTo(1);
+        assertThat(stats.getDebts()).isEqualTo(4);
+        assertThat(stats.getClosedDebts()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldRejectProjectionOverflowingCentsBeforeStreaming() {
+
+        //given
+        RepaymentProjectionRequest overflowingPayment = new RepaymentProjectionRequest(new BigDecimal("1e30"), 12);
+        RepaymentProjectionRequest overflowingTotal = new RepaymentProjectionRequest(new BigDecimal("90000000000000000"), 600);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        //when
+        Throwable thrown = catchThrowable(() -> repaymentProjectionService.writeProjection(overflowingTotal, ProjectionFormat.CSV, out));
+
+        //then
+        assertThat(repaymentProjectionService.isValidRequest(overflowingPayment)).isFalse();
+        assertThat(repaymentProjectionService.isValidRequest(overflowingTotal)).isFalse();
+        assertThat(repaymentProjectionService.isValidRequest(new RepaymentProjectionRequest(new BigDecimal("0.001"), 12))).isFalse();
+        assertThat(repaymentProjectionService.isValidRequest(new RepaymentProjectionRequest(BigDecimal.valueOf(10000), 12))).isTrue();
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class);
+        assertThat(out.size()).isZero();
+    }
+}
@@ -8,6 +8,7 @@ import org.springframework.test.annotation.Rollback;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.context.junit4.SpringRunner;
+import pl.sii.eu.micuenta.cache.CacheStats;
 import pl.sii.eu.micuenta.conf.AppConfig;
 import pl.sii.eu.micuenta.conf.DataCreator;
 import pl.sii.eu.micuenta.model.model_dto.CreditCard;
@@ -16,12 +17,15 @@ import pl.sii.eu.micuenta.model.model_entity.DebtEntity;
 import pl.sii.eu.micuenta.model.model_entity.DebtorEntity;
 import pl.sii.eu.micuenta.model.model_dto.form.PaymentConfirmation;
 import pl.sii.eu.micuenta.model.model_dto.form.PaymentDeclaration;
+import pl.sii.eu.micuenta.model.model_dto.form.PaymentPlan;
+import pl.sii.eu.micuenta.model.model_dto.form.PlannedPayment;
 import pl.sii.eu.micuenta.repository.AccountsRepository;
 
 import javax.transaction.Transactional;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -40,6 +44,10 @@ public class UpdatePaymentServiceTest {
     private AccountsRepository accountsRepository;
     @Autowired
     private DataCreator dataCreator;
+    @Autowired
+    private PaymentPlanService paymentPlanService;
+    @Autowired
+    private PaymentPlanStore paymentPlanStore;
 
     @Test
     @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
@@ -160,13 +168,13 @@ public class UpdatePaymentServiceTest {
 
         for (DebtEntity d : debtorEntity.getDebtEntities()) {
             if (d.getUuid().equals("PLWT/871422"))
-                resultPaymentsSizeOfDebtOne = debtCalculatorService.getSumOfPayments(d).setScale(2, RoundingMode.HALF_EVEN);
+                resultPaymentsSizeOfDebtOne = d.getPaidAmount().setScale(2, RoundingMode.HALF_EVEN);
             else if (d.getUuid().equals("ADWR/595501"))
-                resultPaymentsSizeOfDebtTwo = debtCalculatorService.getSumOfPayments(d).setScale(2, RoundingMode.HALF_EVEN);
+                resultPaymentsSizeOfDebtTwo = d.getPaidAmount().setScale(2, RoundingMode.HALF_EVEN);
             else if (d.getUuid().equals("CRTP/909088"))
-                resultPaymentsSizeOfDebtThree = debtCalculatorService.getSumOfPayments(d).setScale(2, RoundingMode.HALF_EVEN);
+                resultPaymentsSizeOfDebtThree = d.getPaidAmount().setScale(2, RoundingMode.HALF_EVEN);
             else
-                resultPaymentsSizeOfDebtFour = debtCalculatorService.getSumOfPayments(d).setScale(2, RoundingMode.HALF_EVEN);
+                resultPaymentsSizeOfDebtFour = d.getPaidAmount().setScale(2, RoundingMode.HALF_EVEN);
         }
 
         assertThat(expectedPaymentsSizeOfDebtOne).isEqualTo(resultPaymentsSizeOfDebtOne);
@@ -212,13 +220,13 @@ public class UpdatePaymentServiceTest {
 
         for (DebtEntity d : debtorEntity.getDebtEntities()) {
             if (d.getUuid().equals("PLWT/871422"))
-                resultPaymentsSizeOfDebtOne = debtCalculatorService.getSumOfPayments(d).setScale(2, RoundingMode.HALF_EVEN);
+                resultPaymentsSizeOfDebtOne = d.getPaidAmount().setScale(2, RoundingMode.HALF_EVEN);
             else if (d.getUuid().equals("ADWR/595501"))
-                resultPaymentsSizeOfDebtTwo = debtCalculatorService.getSumOfPayments(d).setScale(2, RoundingMode.HALF_EVEN);
+                resultPaymentsSizeOfDebtTwo = d.getPaidAmount().setScale(2, RoundingMode.HALF_EVEN);
             else if (d.getUuid().equals("CRTP/909088"))
-                resultPaymentsSizeOfDebtThree = debtCalculatorService.getSumOfPayments(d).setScale(2, RoundingMode.HALF_EVEN);
+                resultPaymentsSizeOfDebtThree = d.getPaidAmount().setScale(2, RoundingMode.HALF_EVEN);
             else
-                resultPaymentsSizeOfDebtFour = debtCalculatorService.getSumOfPayments(d).setScale(2, RoundingMode.HALF_EVEN);
+                resultPaymentsSizeOfDebtFour = d.getPaidAmount().setScale(2, RoundingMode.HALF_EVEN);
         }
 
         assertThat(expectedPaymentsSizeOfDebtOne).isEqualTo(resultPaymentsSizeOfDebtOne);
@@ -256,13 +264,13 @@ public class UpdatePaymentServiceTest {
 
         for (DebtEntity d : debtorEntity.getDebtEntities()) {
             if (d.getUuid().equals("PLWT/871422"))
-                resultPaymentsSizeOfDebtOne = debtCalculatorService.getSumOfPayments(d).setScale(2, RoundingMode.HALF_EVEN);
+                resultPaymentsSizeOfDebtOne = d.getPaidAmount().setScale(2, RoundingMode.HALF_EVEN);
             else if (d.getUuid().equals("ADWR/595501"))
-                resultPaymentsSizeOfDebtTwo = debtCalculatorService.getSumOfPayments(d).setScale(2, RoundingMode.HALF_EVEN);
+                resultPaymentsSizeOfDebtTwo = d.getPaidAmount().setScale(2, RoundingMode.HALF_EVEN);
             else if (d.getUuid().equals("CRTP/909088"))
-                resultPaymentsSizeOfDebtThree = debtCalculatorService.getSumOfPayments(d).setScale(2, RoundingMode.HALF_EVEN);
+                resultPaymentsSizeOfDebtThree = d.getPaidAmount().setScale(2, RoundingMode.HALF_EVEN);
             else
-                resultPaymentsSizeOfDebtFour = debtCalculatorService.getSumOfPayments(d).setScale(2, RoundingMode.HALF_EVEN);
+                resultPaymentsSizeOfDebtFour = d.getPaidAmount().setScale(2, RoundingMode.HALF_EVEN);
         }
 
         assertThat(expectedPaymentsSizeOfDebtOne).isEqualTo(resultPaymentsSizeOfDebtOne);
@@ -270,4 +278,84 @@ public class UpdatePaymentServiceTest {
         assertThat(expectedPaymentsSizeOfDebtThree).isEqualTo(resultPaymentsSizeOfDebtThree);
         assertThat(expectedPaymentsSizeOfDebtFour).isEqualTo(resultPaymentsSizeOfDebtFour);
     }
-}
\ No newline at end of file
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldDropPaidOffDebtFromOpenDebtsOfLoadedDebtor() {
+
+        //given
+        DebtorEntity debtorEntity = dataCreator.createDebtor();
+        accountsRepository.save(debtorEntity);
+
+        CreditCardEntity creditCardEntity = new CreditCardEntity("1234567890123456", "809", "Sylvanas", "Windrunner", "MasterCard", LocalDate.now());
+        PaymentDeclaration paymentDeclaration = new PaymentDeclaration(BigDecimal.valueOf(34329), "980-122-111", "ADWR/595501");
+        PaymentConfirmation paymentConfirmation = new PaymentConfirmation(paymentDeclaration, "Horde", CreditCard.convertFromCreditCardEntity(creditCardEntity));
+
+        //when
+        updatePaymentService.updateDebtsPaymentsBasedOnPaymentConfirmation(paymentConfirmation);
+
+        //then
+        assertThat(debtorEntity.getOpenDebtsByRepaymentDate())
+                .extracting(DebtEntity::getUuid)
+                .containsExactly("PLWT/871422", "CRTP/909088", "KIGT/116256");
+        assertThat(debtorEntity.findDebtEntityByUuid("ADWR/595501").isPaidOff()).isTrue();
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldApplyStoredPaymentPlanOnlyOnce() {
+
+        //given
+        DebtorEntity debtorEntity = dataCreator.createDebtor();
+        accountsRepository.save(debtorEntity);
+
+        CreditCardEntity creditCardEntity = new CreditCardEntity("1234567890123456", "809", "Sylvanas", "Windrunner", "MasterCard", LocalDate.now());
+        PaymentDeclaration paymentDeclaration = new PaymentDeclaration(BigDecimal.valueOf(2043), "980-122-111", "");
+        PaymentPlan paymentPlan = paymentPlanService.getPaymentPlanBasedOnPaymentDeclaration(paymentDeclaration);
+        PaymentConfirmation paymentConfirmation = new PaymentConfirmation(paymentDeclaration, "Horde",
+                CreditCard.convertFromCreditCardEntity(creditCardEntity), paymentPlan.getPlanId());
+        CacheStats before = paymentPlanStore.getStats();
+
+        //when
+        updatePaymentService.updateDebtsPaymentsBasedOnPaymentConfirmation(paymentConfirmation);
+        CacheStats applied = paymentPlanStore.getStats();
+        List<PlannedPayment> takenAgain = paymentPlanStore.takeIfCurrent(paymentPlan.getPlanId(), debtorEntity, "", 204300);
+
+        //then
+        CacheStats after = paymentPlanStore.getStats();
+        assertThat(paymentPlan.getPlanId()).isNotNull();
+        assertThat(debtorEntity.findDebtEntityByUuid("ADWR/595501").getPaymentEntities()).hasSize(2);
+        assertThat(applied.getHits() - before.getHits()).isEqualTo(1L);
+        assertThat(applied.getSize()).isEqualTo(before.getSize() - 1);
+        assertThat(takenAgain).isNull();
+        assertThat(after.getHits()).isEqualTo(applied.getHits());
+        assertThat(after.getMisses() - applied.getMisses()).isEqualTo(1L);
+    }
+
+    @Test
+    @Sql(scripts = "/sql_scripts/initial_db_state.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+    @Sql(scripts = "/sql_scripts/clean_db.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void shouldAllocatePaymentAgainWhenDebtsChangedSincePaymentPlan() {
+
+        //given
+        DebtorEntity debtorEntity = dataCreator.createDebtor();
+        accountsRepository.save(debtorEntity);
+
+        CreditCard creditCard = CreditCard.convertFromCreditCardEntity(
+                new CreditCardEntity("1234567890123456", "809", "Sylvanas", "Windrunner", "MasterCard", LocalDate.now()));
+        PaymentDeclaration plannedDeclaration = new PaymentDeclaration(BigDecimal.valueOf(2043), "980-122-111", "PLWT/871422");
+        PaymentPlan paymentPlan = paymentPlanService.getPaymentPlanBasedOnPaymentDeclaration(plannedDeclaration);
+        PaymentDeclaration closingDeclaration = new PaymentDeclaration(BigDecimal.valueOf(3850), "980-122-111", "PLWT/871422");
+        updatePaymentService.updateDebtsPaymentsBasedOnPaymentConfirmation(new PaymentConfirmation(closingDeclaration, "Horde", creditCard));
+
+        //when
+        updatePaymentService.updateDebtsPaymentsBasedOnPaymentConfirmation(
+                new PaymentConfirmation(plannedDeclaration, "Horde", creditCard, paymentPlan.getPlanId()));
+
+        //then
+        assertThat(debtorEntity.findDebtEntityByUuid("PLWT/871422").getPaymentEntities()).hasSize(2);
+        assertThat(debtorEntity.findDebtEntityByUuid("ADWR/595501").getPaymentEntities()).hasSize(2);
+    }
+}